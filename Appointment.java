@@ -1,29 +1,46 @@
 package model;
 
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+
 /**
  * Appointment model.
- * Mirrors appointments.csv columns exactly (kept as Strings for now).
+ * Mirrors appointments.csv columns exactly.
  *
  * appointments.csv columns:
  * appointment_id, patient_id, clinician_id, facility_id, appointment_date, appointment_time,
  * duration_minutes, appointment_type, status, reason_for_visit, notes, created_date, last_modified
+ *
+ * Date, time, duration and status are parsed ONCE in the constructor and kept as primitives/enum
+ * (epoch day, minute of day, minutes, AppointmentStatus), so comparisons never re-parse.
+ * The String getters rebuild the original text; values that are not in canonical form
+ * (e.g. "9:30", "015", an unknown status) are kept verbatim so nothing is lost on write-back.
  */
-public class Appointment {
+public class Appointment implements AppointmentRecord {
+
+    /** Sentinels for blank (or non-canonical) values. */
+    public static final int NO_DATE = Integer.MIN_VALUE;
+    public static final short NO_TIME = -1;
+    public static final short NO_DURATION = -1;
 
     private final String appointmentId;
     private final String patientId;
     private final String clinicianId;
     private final String facilityId;
-    private final String appointmentDate;   // e.g., 2025-01-10
-    private final String appointmentTime;   // e.g., 09:30
-    private final String durationMinutes;
+    private final int epochDay;             // e.g., 2025-01-10 -> 20098
+    private final short minuteOfDay;        // e.g., 09:30 -> 570
+    private final short durationMinutes;
     private final String appointmentType;
-    private final String status;            // Scheduled / Cancelled etc.
+    private final AppointmentStatus status; // Scheduled / Cancelled etc.
     private final String reasonForVisit;
     private final String notes;
     private final String createdDate;
     private final String lastModified;
 
+    // Original text of date/time/duration/status when it is not canonical (null = all canonical)
+    private final String[] raw;
+
     public Appointment(
             String appointmentId,
             String patientId,
@@ -43,40 +60,150 @@ public class Appointment {
         this.patientId = patientId;
         this.clinicianId = clinicianId;
         this.facilityId = facilityId;
-        this.appointmentDate = appointmentDate;
-        this.appointmentTime = appointmentTime;
-        this.durationMinutes = durationMinutes;
+        this.epochDay = parseDate(appointmentDate);
+        this.minuteOfDay = parseTime(appointmentTime);
+        this.durationMinutes = parseDuration(durationMinutes);
         this.appointmentType = appointmentType;
-        this.status = status;
+        this.status = AppointmentStatus.fromLabel(status);
         this.reasonForVisit = reasonForVisit;
         this.notes = notes;
         this.createdDate = createdDate;
         this.lastModified = lastModified;
+
+        String[] r = null;
+        if (epochDay == NO_DATE && !isBlank(appointmentDate)) r = keep(r, 0, appointmentDate);
+        if (minuteOfDay == NO_TIME && !isBlank(appointmentTime)) r = keep(r, 1, appointmentTime);
+        if (this.durationMinutes == NO_DURATION && !isBlank(durationMinutes)) r = keep(r, 2, durationMinutes);
+        if (status != null && !status.equals(this.status.getLabel())) r = keep(r, 3, status);
+        this.raw = r;
     }
 
+    // ------------------- String getters (compatibility) -------------------
+
     public String getAppointmentId() { return appointmentId; }
     public String getPatientId() { return patientId; }
     public String getClinicianId() { return clinicianId; }
     public String getFacilityId() { return facilityId; }
-    public String getAppointmentDate() { return appointmentDate; }
-    public String getAppointmentTime() { return appointmentTime; }
-    public String getDurationMinutes() { return durationMinutes; }
     public String getAppointmentType() { return appointmentType; }
-    public String getStatus() { return status; }
     public String getReasonForVisit() { return reasonForVisit; }
     public String getNotes() { return notes; }
     public String getCreatedDate() { return createdDate; }
     public String getLastModified() { return lastModified; }
 
+    public String getAppointmentDate() {
+        if (raw != null && raw[0] != null) return raw[0];
+        return formatDate(epochDay);
+    }
+
+    public String getAppointmentTime() {
+        if (raw != null && raw[1] != null) return raw[1];
+        return formatTime(minuteOfDay);
+    }
+
+    public String getDurationMinutes() {
+        if (raw != null && raw[2] != null) return raw[2];
+        return durationMinutes == NO_DURATION ? "" : Integer.toString(durationMinutes);
+    }
+
+    public String getStatus() {
+        if (raw != null && raw[3] != null) return raw[3];
+        return status.getLabel();
+    }
+
+    // ------------------- typed getters -------------------
+
+    @Override public int getEpochDay() { return epochDay; }
+    @Override public short getMinuteOfDay() { return minuteOfDay; }
+    @Override public short getDuration() { return durationMinutes; }
+    @Override public AppointmentStatus getStatusCode() { return status; }
+
+    /** Typed date/time (null if the stored text was not yyyy-MM-dd / HH:mm). */
+    public LocalDate getDate() {
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    public LocalTime getTime() {
+        return minuteOfDay == NO_TIME ? null : LocalTime.of(minuteOfDay / 60, minuteOfDay % 60);
+    }
+
+    // ------------------- parsing (canonical forms only) -------------------
+
+    /** yyyy-MM-dd -> epoch day, else NO_DATE. */
+    public static int parseDate(String v) {
+        if (v == null || v.length() != 10 || v.charAt(4) != '-' || v.charAt(7) != '-') return NO_DATE;
+        int y = digits(v, 0, 4);
+        int m = digits(v, 5, 2);
+        int d = digits(v, 8, 2);
+        if (y < 0 || m < 0 || d < 0) return NO_DATE;
+        try {
+            return (int) LocalDate.of(y, m, d).toEpochDay();
+        } catch (DateTimeException e) {
+            return NO_DATE;
+        }
+    }
+
+    /** HH:mm -> minute of day, else NO_TIME. */
+    public static short parseTime(String v) {
+        if (v == null || v.length() != 5 || v.charAt(2) != ':') return NO_TIME;
+        int h = digits(v, 0, 2);
+        int m = digits(v, 3, 2);
+        if (h < 0 || h > 23 || m < 0 || m > 59) return NO_TIME;
+        return (short) (h * 60 + m);
+    }
+
+    /** Canonical non-negative integer that fits a short, else NO_DURATION. */
+    public static short parseDuration(String v) {
+        if (v == null || v.isEmpty() || v.length() > 5) return NO_DURATION;
+        if (v.length() > 1 && v.charAt(0) == '0') return NO_DURATION;
+        int n = digits(v, 0, v.length());
+        return (n < 0 || n > Short.MAX_VALUE) ? NO_DURATION : (short) n;
+    }
+
+    /** Epoch day -> yyyy-MM-dd ("" for NO_DATE). */
+    public static String formatDate(int epochDay) {
+        return epochDay == NO_DATE ? "" : LocalDate.ofEpochDay(epochDay).toString();
+    }
+
+    /** Minute of day -> HH:mm ("" for NO_TIME). */
+    public static String formatTime(short minuteOfDay) {
+        if (minuteOfDay == NO_TIME) return "";
+        int h = minuteOfDay / 60;
+        int m = minuteOfDay % 60;
+        return new String(new char[]{
+                (char) ('0' + h / 10), (char) ('0' + h % 10), ':',
+                (char) ('0' + m / 10), (char) ('0' + m % 10)});
+    }
+
+    /** Value of count ASCII digits at from, or -1. */
+    private static int digits(String v, int from, int count) {
+        int n = 0;
+        for (int i = from; i < from + count; i++) {
+            char c = v.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            n = n * 10 + (c - '0');
+        }
+        return n;
+    }
+
+    private static boolean isBlank(String v) {
+        return v == null || v.isEmpty();
+    }
+
+    private static String[] keep(String[] r, int slot, String value) {
+        if (r == null) r = new String[4];
+        r[slot] = value;
+        return r;
+    }
+
     @Override
     public String toString() {
         return "Appointment{" +
                 "appointmentId='" + appointmentId + '\'' +
                 ", patientId='" + patientId + '\'' +
                 ", clinicianId='" + clinicianId + '\'' +
-                ", appointmentDate='" + appointmentDate + '\'' +
-                ", appointmentTime='" + appointmentTime + '\'' +
-                ", status='" + status + '\'' +
+                ", appointmentDate='" + getAppointmentDate() + '\'' +
+                ", appointmentTime='" + getAppointmentTime() + '\'' +
+                ", status='" + getStatus() + '\'' +
                 '}';
     }
 }
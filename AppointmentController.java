@@ -2,31 +2,41 @@ package controller;
 
 import model.Appointment;
 import repository.AppointmentRepository;
+import repository.DataContext;
+import repository.VersionConflictException;
 import view.AppointmentTableFrame;
 import service.AppointmentService;
 
 import javax.swing.JOptionPane;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
 
 /**
  * AppointmentController:
  * - Loads appointments into view
- * - Handles Refresh + Cancel Selected
+ * - Handles Refresh + Cancel Selected (one or many rows)
  * - Handles Create Appointment
  * - Handles Load Selected -> Form
  * - Handles Update Selected
  */
 public class AppointmentController {
 
+    private final DataContext data;
     private final AppointmentRepository appointmentRepository;
     private final AppointmentTableFrame appointmentView;
 
     // Business rules
     private final AppointmentService appointmentService = new AppointmentService();
 
-    public AppointmentController(AppointmentRepository appointmentRepository, AppointmentTableFrame appointmentView) {
-        this.appointmentRepository = appointmentRepository;
+    // Row loaded into the form and its version, so Update Selected can detect concurrent edits
+    private String editingId;
+    private long editingVersion;
+
+    public AppointmentController(DataContext data, AppointmentTableFrame appointmentView) {
+        this.data = data;
+        this.appointmentRepository = data.getAppointmentRepository();
         this.appointmentView = appointmentView;
         wireActions();
     }
@@ -48,8 +58,27 @@ public class AppointmentController {
 
     private void refresh() {
         try {
-            appointmentView.setAppointments(appointmentRepository.loadAll());
-            appointmentView.setStatus("Loaded appointments from CSV");
+            String from = appointmentView.getFromDateInput();
+            String to = appointmentView.getToDateInput();
+            if (from.isEmpty() && to.isEmpty()) {
+                appointmentView.setAppointments(data.appointmentTable());
+                appointmentView.setStatus("Loaded appointments from CSV");
+                return;
+            }
+
+            // Date-filtered: read straight from the repository (partitioned: only those months are opened)
+            LocalDate fromDate = from.isEmpty() ? LocalDate.of(1, 1, 1) : LocalDate.parse(from);
+            LocalDate toDate = to.isEmpty() ? LocalDate.of(9999, 12, 31) : LocalDate.parse(to);
+            List<Appointment> rows = appointmentRepository.loadBetween(fromDate, toDate, AppointmentRepository.TABLE_COLUMNS);
+            appointmentView.setAppointments(rows);
+            appointmentView.setStatus("Loaded " + rows.size() + " appointments from " + fromDate + " to " + toDate);
+        } catch (DateTimeParseException e) {
+            JOptionPane.showMessageDialog(
+                    appointmentView,
+                    "Date filter must be yyyy-MM-dd.",
+                    "Invalid date",
+                    JOptionPane.WARNING_MESSAGE
+            );
         } catch (Exception e) {
             JOptionPane.showMessageDialog(
                     appointmentView,
@@ -61,8 +90,8 @@ public class AppointmentController {
     }
 
     private void cancelSelected() {
-        String id = appointmentView.getSelectedAppointmentId();
-        if (id == null) {
+        List<String> ids = appointmentView.getSelectedAppointmentIds();
+        if (ids.isEmpty()) {
             JOptionPane.showMessageDialog(
                     appointmentView,
                     "Please select an appointment row first.",
@@ -72,22 +101,32 @@ public class AppointmentController {
             return;
         }
 
+        String what = ids.size() == 1 ? "appointment " + ids.get(0) : ids.size() + " appointments";
         int confirm = JOptionPane.showConfirmDialog(
                 appointmentView,
-                "Cancel appointment " + id + "?",
+                "Cancel " + what + "?",
                 "Confirm cancel",
                 JOptionPane.YES_NO_OPTION
         );
         if (confirm != JOptionPane.YES_OPTION) return;
 
         try {
-            boolean ok = appointmentRepository.cancelAppointment(id);
-            if (ok) {
-                appointmentView.setStatus("Cancelled appointment: " + id);
-                refresh();
-            } else {
-                appointmentView.setStatus("Cancel failed: appointment not found (" + id + ")");
+            if (ids.size() == 1) {
+                // Single row: patched in place
+                String id = ids.get(0);
+                if (appointmentRepository.cancelAppointment(id)) {
+                    appointmentView.setStatus("Cancelled appointment: " + id);
+                    refresh();
+                } else {
+                    appointmentView.setStatus("Cancel failed: appointment not found (" + id + ")");
+                }
+                return;
             }
+
+            // Several rows: one batch (one read + one write)
+            int cancelled = appointmentRepository.cancelAll(ids);
+            appointmentView.setStatus("Cancelled " + cancelled + " of " + ids.size() + " selected appointments");
+            refresh();
         } catch (Exception ex) {
             JOptionPane.showMessageDialog(
                     appointmentView,
@@ -127,12 +166,13 @@ public class AppointmentController {
     }
 
     /**
-     * NEW: Load selected row values into form for editing.
-     * Notes are not in the table, so we set notes empty by default.
+     * NEW: Load selected appointment into form for editing.
+     * Fields (and the version Update Selected checks against) come from the current row in the
+     * repository, not the table, so the form never shows older data than the version it carries.
      */
     private void loadSelectedIntoForm() {
-        String[] row = appointmentView.getSelectedRowValues();
-        if (row == null) {
+        String appointmentId = appointmentView.getSelectedAppointmentId();
+        if (appointmentId == null) {
             JOptionPane.showMessageDialog(
                     appointmentView,
                     "Please select an appointment row first.",
@@ -142,21 +182,42 @@ public class AppointmentController {
             return;
         }
 
-        // row mapping from view:
-        // [0]=appointmentId [1]=patientId [2]=clinicianId [3]=facilityId
-        // [4]=date [5]=time [6]=duration [7]=type [8]=status [9]=reason
+        Appointment current;
+        try {
+            current = appointmentRepository.findById(appointmentId);
+        } catch (Exception ex) {
+            editingId = null;
+            JOptionPane.showMessageDialog(
+                    appointmentView,
+                    "Failed to load appointment:\n" + ex.getMessage(),
+                    "Error",
+                    JOptionPane.ERROR_MESSAGE
+            );
+            return;
+        }
+        if (current == null) {
+            editingId = null;
+            appointmentView.setStatus("Appointment no longer exists: " + appointmentId);
+            refresh();
+            return;
+        }
+
         appointmentView.setFormFields(
-                row[1], // patientId
-                row[2], // clinicianId
-                row[3], // facilityId
-                row[4], // date
-                row[5], // time
-                row[6], // duration
-                row[7], // type
-                row[9], // reason
-                ""      // notes (not in table)
+                current.getPatientId(),
+                current.getClinicianId(),
+                current.getFacilityId(),
+                current.getAppointmentDate(),
+                current.getAppointmentTime(),
+                current.getDurationMinutes(),
+                current.getAppointmentType(),
+                current.getReasonForVisit(),
+                current.getNotes()
         );
 
+        // Remember the version we are editing (optimistic concurrency on Update Selected)
+        editingId = appointmentId;
+        editingVersion = appointmentRepository.versionOf(current);
+
         appointmentView.setStatus("Loaded selected appointment into form. Now edit and click Update Selected.");
     }
 
@@ -176,6 +237,17 @@ public class AppointmentController {
                 return;
             }
 
+            // Only a row loaded through the form can be updated: its version guards the write
+            if (!appointmentId.equals(editingId)) {
+                JOptionPane.showMessageDialog(
+                        appointmentView,
+                        "Load the selected appointment into the form (Load Selected) before updating it.",
+                        "Not loaded",
+                        JOptionPane.WARNING_MESSAGE
+                );
+                return;
+            }
+
             // Build candidate using SAME appointment_id (so repository updates correct row)
             Appointment candidate = buildCandidateAppointmentFromForm(appointmentId);
 
@@ -186,8 +258,10 @@ public class AppointmentController {
                 return;
             }
 
-            boolean ok = appointmentRepository.updateAppointment(candidate);
+            // Only write if nobody changed the row since it was loaded
+            boolean ok = appointmentRepository.updateIfVersion(candidate, editingVersion);
             if (ok) {
+                editingId = null;
                 appointmentView.setStatus("Updated appointment: " + appointmentId);
                 appointmentView.clearCreateForm();
                 refresh();
@@ -195,6 +269,15 @@ public class AppointmentController {
                 appointmentView.setStatus("Update failed: appointment not found (" + appointmentId + ")");
             }
 
+        } catch (VersionConflictException ex) {
+            editingId = null;
+            JOptionPane.showMessageDialog(
+                    appointmentView,
+                    ex.getMessage() + ".\nRefresh, load it into the form again and re-apply your changes.",
+                    "Update conflict",
+                    JOptionPane.WARNING_MESSAGE
+            );
+            refresh();
         } catch (Exception ex) {
             JOptionPane.showMessageDialog(
                     appointmentView,
@@ -264,13 +347,11 @@ public class AppointmentController {
      * - no clinician double-booking
      */
     private String validateCandidateForCreate(Appointment candidate) throws Exception {
-        LocalDate date = LocalDate.parse(candidate.getAppointmentDate());
-        LocalTime time = LocalTime.parse(candidate.getAppointmentTime());
-
-        String err1 = appointmentService.validateNotInPast(date, time);
+        String err1 = appointmentService.validateNotInPast(candidate);
         if (err1 != null) return err1;
 
-        var existing = appointmentRepository.loadAll();
+        // Only bookings whose time range overlaps the candidate (per-clinician interval tree)
+        var existing = appointmentRepository.findOverlapping(candidate);
         return appointmentService.validateNoClinicianDoubleBooking(existing, candidate);
     }
 
@@ -280,27 +361,11 @@ public class AppointmentController {
      * - no clinician double-booking EXCEPT itself (same appointment_id)
      */
     private String validateCandidateForUpdate(Appointment candidate, String appointmentId) throws Exception {
-        LocalDate date = LocalDate.parse(candidate.getAppointmentDate());
-        LocalTime time = LocalTime.parse(candidate.getAppointmentTime());
-
-        String err1 = appointmentService.validateNotInPast(date, time);
+        String err1 = appointmentService.validateNotInPast(candidate);
         if (err1 != null) return err1;
 
-        var existing = appointmentRepository.loadAll();
-
-        // Double-booking check but ignore the appointment being updated
-        for (Appointment a : existing) {
-            if (a.getAppointmentId().equals(appointmentId)) continue;
-
-            if (a.getClinicianId().equals(candidate.getClinicianId())
-                    && a.getAppointmentDate().equals(candidate.getAppointmentDate())
-                    && a.getAppointmentTime().equals(candidate.getAppointmentTime())
-                    && !a.getStatus().equalsIgnoreCase("Cancelled")) {
-                return "Clinician is already booked at " + candidate.getAppointmentDate() +
-                        " " + candidate.getAppointmentTime() + ".";
-            }
-        }
-
-        return null;
+        // candidate carries appointmentId, so the index and the service skip the row being updated
+        var existing = appointmentRepository.findOverlapping(candidate);
+        return appointmentService.validateNoClinicianDoubleBooking(existing, candidate);
     }
 }
@@ -0,0 +1,169 @@
+package repository;
+
+import model.Appointment;
+import model.AppointmentRecord;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * AppointmentIndex (in-memory secondary indexes, owned by AppointmentRepository)
+ * - byId                      : appointment_id -> Appointment
+ * - byPatient / byClinician / byFacility : key -> (epoch day -> appointments that day)
+ * - byDate                    : epoch day -> appointments that day (sorted, for range queries)
+ * - calendars                 : clinician_id -> IntervalTree of [start, start + duration) for
+ *                               every non-cancelled appointment (overlap checks in O(log n))
+ *
+ * Every secondary index is a TreeMap by day, so "clinician X between two dates" is a
+ * map lookup plus a subMap: cost depends on the result size, not on years of history.
+ * put()/remove() keep everything in step when a single appointment is created/updated/cancelled.
+ *
+ * Not thread-safe on its own; AppointmentRepository guards it.
+ */
+final class AppointmentIndex {
+
+    private final Map<String, Appointment> byId = new HashMap<>();
+    private final Map<String, TreeMap<Integer, List<Appointment>>> byPatient = new HashMap<>();
+    private final Map<String, TreeMap<Integer, List<Appointment>>> byClinician = new HashMap<>();
+    private final Map<String, TreeMap<Integer, List<Appointment>>> byFacility = new HashMap<>();
+    private final TreeMap<Integer, List<Appointment>> byDate = new TreeMap<>();
+    private final Map<String, IntervalTree<Appointment>> calendars = new HashMap<>();
+
+    AppointmentIndex(List<Appointment> all) {
+        for (Appointment a : all) put(a);
+    }
+
+    // ------------------- maintenance -------------------
+
+    /** Adds or replaces (same appointment_id) an appointment. */
+    void put(Appointment a) {
+        Appointment old = byId.put(a.getAppointmentId(), a);
+        if (old != null) unlink(old);
+
+        add(byPatient, a.getPatientId(), a);
+        add(byClinician, a.getClinicianId(), a);
+        add(byFacility, a.getFacilityId(), a);
+        addToDay(byDate, a);
+
+        if (onCalendar(a)) {
+            calendars.computeIfAbsent(a.getClinicianId(), k -> new IntervalTree<>())
+                    .insert(start(a), end(a), a.getAppointmentId(), a);
+        }
+    }
+
+    Appointment remove(String appointmentId) {
+        Appointment old = byId.remove(appointmentId);
+        if (old != null) unlink(old);
+        return old;
+    }
+
+    private void unlink(Appointment a) {
+        remove(byPatient, a.getPatientId(), a);
+        remove(byClinician, a.getClinicianId(), a);
+        remove(byFacility, a.getFacilityId(), a);
+        removeFromDay(byDate, a);
+
+        IntervalTree<Appointment> cal = calendars.get(a.getClinicianId());
+        if (cal != null && onCalendar(a)) {
+            cal.remove(start(a), a.getAppointmentId());
+            if (cal.isEmpty()) calendars.remove(a.getClinicianId());
+        }
+    }
+
+    // ------------------- queries -------------------
+
+    Appointment byId(String appointmentId) {
+        return byId.get(appointmentId);
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    List<Appointment> byPatient(String patientId, int fromDay, int toDay) {
+        return range(byPatient.get(patientId), fromDay, toDay);
+    }
+
+    List<Appointment> byClinician(String clinicianId, int fromDay, int toDay) {
+        return range(byClinician.get(clinicianId), fromDay, toDay);
+    }
+
+    List<Appointment> byFacility(String facilityId, int fromDay, int toDay) {
+        return range(byFacility.get(facilityId), fromDay, toDay);
+    }
+
+    List<Appointment> byDate(int fromDay, int toDay) {
+        return range(byDate, fromDay, toDay);
+    }
+
+    /**
+     * Non-cancelled appointments of the clinician whose [start, end) overlaps [start, end)
+     * (absolute minutes, see start()/end()). excludeId is skipped (the appointment being edited).
+     */
+    List<Appointment> overlapping(String clinicianId, long start, long end, String excludeId) {
+        IntervalTree<Appointment> cal = calendars.get(clinicianId);
+        return cal == null ? Collections.emptyList() : cal.overlapping(start, end, excludeId);
+    }
+
+    // ------------------- calendar intervals -------------------
+
+    static final int MINUTES_PER_DAY = 24 * 60;
+
+    /** Only bookings that block time: not cancelled, with a parsed date and time. */
+    static boolean onCalendar(AppointmentRecord a) {
+        return !a.isCancelled() && a.hasDate() && a.hasTime();
+    }
+
+    /** Start in absolute minutes (epoch day * 1440 + minute of day). */
+    static long start(AppointmentRecord a) {
+        return (long) a.getEpochDay() * MINUTES_PER_DAY + a.getMinuteOfDay();
+    }
+
+    /** End (exclusive); a missing/zero duration still blocks its start minute. */
+    static long end(AppointmentRecord a) {
+        return start(a) + Math.max(1, (int) a.getDuration());
+    }
+
+    /** Appointments of the given days (inclusive), ordered by day then time. */
+    private static List<Appointment> range(TreeMap<Integer, List<Appointment>> days, int fromDay, int toDay) {
+        if (days == null || fromDay > toDay) return Collections.emptyList();
+
+        NavigableMap<Integer, List<Appointment>> sub = days.subMap(fromDay, true, toDay, true);
+        List<Appointment> out = new ArrayList<>();
+        for (List<Appointment> day : sub.values()) out.addAll(day);
+        return out;
+    }
+
+    // ------------------- helpers -------------------
+
+    private static void add(Map<String, TreeMap<Integer, List<Appointment>>> index, String key, Appointment a) {
+        addToDay(index.computeIfAbsent(key, k -> new TreeMap<>()), a);
+    }
+
+    private static void remove(Map<String, TreeMap<Integer, List<Appointment>>> index, String key, Appointment a) {
+        TreeMap<Integer, List<Appointment>> days = index.get(key);
+        if (days == null) return;
+        removeFromDay(days, a);
+        if (days.isEmpty()) index.remove(key);
+    }
+
+    /** Inserts keeping each day's list ordered by start time. */
+    private static void addToDay(TreeMap<Integer, List<Appointment>> days, Appointment a) {
+        List<Appointment> day = days.computeIfAbsent(a.getEpochDay(), d -> new ArrayList<>(2));
+        int i = day.size();
+        while (i > 0 && day.get(i - 1).getMinuteOfDay() > a.getMinuteOfDay()) i--;
+        day.add(i, a);
+    }
+
+    private static void removeFromDay(TreeMap<Integer, List<Appointment>> days, Appointment a) {
+        List<Appointment> day = days.get(a.getEpochDay());
+        if (day == null) return;
+        day.remove(a);
+        if (day.isEmpty()) days.remove(a.getEpochDay());
+    }
+}
@@ -0,0 +1,39 @@
+package model;
+
+/**
+ * AppointmentRecord:
+ * - The read API of an appointment (the getters of Appointment).
+ * - Implemented by Appointment itself and by the flyweight rows of repository.AppointmentStore,
+ *   so views and services work with either.
+ */
+public interface AppointmentRecord {
+
+    String getAppointmentId();
+    String getPatientId();
+    String getClinicianId();
+    String getFacilityId();
+    String getAppointmentDate();
+    String getAppointmentTime();
+    String getDurationMinutes();
+    String getAppointmentType();
+    String getStatus();
+    String getReasonForVisit();
+    String getNotes();
+    String getCreatedDate();
+    String getLastModified();
+
+    /** Days since 1970-01-01, or Appointment.NO_DATE. */
+    int getEpochDay();
+
+    /** Minutes since midnight, or Appointment.NO_TIME. */
+    short getMinuteOfDay();
+
+    /** Duration in minutes, or Appointment.NO_DURATION. */
+    short getDuration();
+
+    AppointmentStatus getStatusCode();
+
+    default boolean hasDate() { return getEpochDay() != Appointment.NO_DATE; }
+    default boolean hasTime() { return getMinuteOfDay() != Appointment.NO_TIME; }
+    default boolean isCancelled() { return getStatusCode() == AppointmentStatus.CANCELLED; }
+}
@@ -1,98 +1,650 @@
 package repository;
 
 import model.Appointment;
+import model.AppointmentRecord;
+import model.AppointmentStatus;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
 
 /**
  * AppointmentRepository:
  * - Reads appointments.csv into Appointment objects
- * - Updates/cancels appointments by overwriting the CSV (no database allowed)
+ * - Updates/cancels appointments by patching single rows in the CSV (no database allowed)
+ * - Batch updates/cancels (cancelAll, updateAll, cancelAllForClinician) rewrite the file once
+ * - updateIfVersion: optimistic compare-and-set update against a RowVersion (no global lock)
+ * - Writers lock through TableLocks: updates/cancels of different records run in parallel,
+ *   creates/imports/batches take the table's structure lock
+ * - Or, in PersistenceMode.CHANGE_LOG, appends every mutation to appointments.csv.log
+ * - Answers lookups by ID / patient / clinician / facility / date from in-memory indexes
+ *   (AppointmentIndex), built on first use and updated by create/update/cancel
+ * - archiveBefore moves finished (Completed/Cancelled) old rows into an ArchiveStore
+ *   (appointments.csv.archive/); findById and the loadHistory/findHistoryByPatient queries still see them
+ * - Given a DIRECTORY instead of a CSV, stores one CSV per month of appointment_date
+ *   (see PartitionedAppointments); the API is the same
  *
  * NOTE:
- * - We keep Appointment fields as String for now.
+ * - Appointment keeps date/time/duration as epoch-day/minute ints and status as AppointmentStatus;
+ *   rows are still read and written as CSV text (see toAppointment / toCsvRow).
  * - Repository is responsible for persistence, not business validation.
  */
 public class AppointmentRepository {
 
+    // Column indexes (header order) usable in Where predicates
+    public static final int COL_PATIENT_ID = 1;
+    public static final int COL_CLINICIAN_ID = 2;
+    public static final int COL_FACILITY_ID = 3;
+    public static final int COL_DATE = 4;
+    public static final int COL_TIME = 5;
+    public static final int COL_STATUS = 8;
+    public static final int COL_LAST_MODIFIED = 12;
+
+    // Columns shown by AppointmentTableFrame (appointment_id .. reason_for_visit; no notes/timestamps)
+    public static final Projection TABLE_COLUMNS = Projection.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+
+    // Columns the double-booking check reads (clinician, date, time, status)
+    public static final Projection BOOKING_COLUMNS = Projection.of(0, COL_CLINICIAN_ID, COL_DATE, COL_TIME, COL_STATUS);
+
+    // Header of appointments.csv (written to new partition files)
+    static final String[] HEADER = {
+            "appointment_id", "patient_id", "clinician_id", "facility_id", "appointment_date",
+            "appointment_time", "duration_minutes", "appointment_type", "status", "reason_for_visit",
+            "notes", "created_date", "last_modified"
+    };
+
     private final Path appointmentsCsvPath;
 
+    // Canonical Strings for low-cardinality columns (shared by every repository on this file)
+    private final SymbolTable symbols;
+
+    // appointment_id -> byte offset/length of its row (sidecar appointments.csv.idx)
+    private final RowOffsetIndex offsetIndex;
+
+    // Only used in PersistenceMode.CHANGE_LOG (null in DIRECT mode)
+    private final ChangeLog changeLog;
+
+    // Structure lock (create/import/batch) + striped record locks (update/cancel), shared per file
+    private final TableLocks locks;
+
+    // Cold rows moved out of the CSV (appointments.csv.archive/)
+    private final ArchiveStore archive;
+
+    // Secondary indexes + the file state they reflect (rebuilt if the file changed behind our back)
+    private final Object indexLock = new Object();
+    private AppointmentIndex index;
+    private FileStamp indexStamp;
+    private int indexWriters;     // own writes in flight (see beginWrite/endWrite)
+    private boolean indexTrusted; // index was current when they began
+
+    // Set when appointmentsCsvPath is a directory of monthly partitions; every public call delegates to it
+    private final PartitionedAppointments partitions;
+
     public AppointmentRepository(Path appointmentsCsvPath) {
+        this(appointmentsCsvPath, PersistenceMode.DIRECT);
+    }
+
+    public AppointmentRepository(Path appointmentsCsvPath, PersistenceMode mode) {
         this.appointmentsCsvPath = appointmentsCsvPath;
+
+        if (Files.isDirectory(appointmentsCsvPath)) {
+            this.partitions = new PartitionedAppointments(appointmentsCsvPath, mode);
+            this.symbols = null;
+            this.offsetIndex = null;
+            this.locks = null;
+            this.archive = null;
+            this.changeLog = null;
+            return;
+        }
+        this.partitions = null;
+        this.symbols = SymbolTable.forTable(appointmentsCsvPath);
+        this.offsetIndex = RowOffsetIndex.forTable(appointmentsCsvPath);
+        this.locks = TableLocks.forTable(appointmentsCsvPath);
+        this.archive = ArchiveStore.forTable(appointmentsCsvPath);
+
+        if (mode == PersistenceMode.CHANGE_LOG) {
+            this.changeLog = ChangeLog.forTable(appointmentsCsvPath);
+            LogCompactor.register(changeLog);
+        } else {
+            this.changeLog = null;
+        }
     }
 
     public List<Appointment> loadAll() throws IOException {
-        List<String[]> rows = CsvUtil.readAll(appointmentsCsvPath);
+        return loadAll(Projection.ALL);
+    }
+
+    /**
+     * Loads appointments with only the projected columns filled in
+     * (the other getters return ""). Use for read-only views that show a few columns.
+     */
+    public List<Appointment> loadAll(Projection projection) throws IOException {
+        if (partitions != null) return partitions.loadAll(projection);
+        return mapRows(projection, this::toAppointment);
+    }
+
+    /**
+     * Rows appended after byte offset 'from' (TableCache tail reload).
+     * Returns null in CHANGE_LOG mode, where the CSV alone is not the current state, and when partitioned.
+     */
+    List<Appointment> loadFrom(long from, Projection projection) throws IOException {
+        if (changeLog != null || partitions != null) return null;
+        return CsvUtil.mapRowsFrom(appointmentsCsvPath, from, projection, this::toAppointment);
+    }
+
+    /**
+     * Loads only the appointments matching the predicate. The predicate runs on each raw row
+     * while the file is parsed, so rejected rows never become objects.
+     */
+    public List<Appointment> loadWhere(Where where) throws IOException {
+        return loadWhere(where, Projection.ALL);
+    }
+
+    /** Same as loadWhere(Where) with a projection (widened to the predicate's columns). */
+    public List<Appointment> loadWhere(Where where, Projection projection) throws IOException {
+        if (partitions != null) return partitions.loadWhere(where, projection);
+        return mapRows(where.widen(projection), where.filter(this::toAppointment));
+    }
+
+    /**
+     * Appointments with from <= appointment_date <= to (projected, e.g. TABLE_COLUMNS for the view).
+     * Partitioned: only the months in range are read.
+     */
+    public List<Appointment> loadBetween(LocalDate from, LocalDate to, Projection projection) throws IOException {
+        if (partitions != null) return partitions.loadBetween(from, to, projection);
+        return loadWhere(Where.between(COL_DATE, from.toString(), to.toString()), projection);
+    }
+
+    /**
+     * Loads every appointment into a struct-of-arrays AppointmentStore (flyweight rows,
+     * no Appointment object per row). Rows are streamed in file order.
+     */
+    public AppointmentStore loadStore() throws IOException {
+        if (partitions != null) return partitions.loadStore();
+        AppointmentStore store = new AppointmentStore(symbols);
+        if (changeLog != null) {
+            changeLog.forEachRow(store::add);
+        } else {
+            CsvUtil.forEachRow(appointmentsCsvPath, store::add);
+        }
+        return store;
+    }
+
+    /** Streams the current rows (log merged in CHANGE_LOG mode). Single file only. */
+    void forEachRow(RowHandler handler) throws IOException {
+        if (changeLog != null) {
+            changeLog.forEachRow(handler);
+        } else {
+            CsvUtil.forEachRow(appointmentsCsvPath, handler);
+        }
+    }
+
+    /**
+     * Non-cancelled appointments of one clinician on one date (booking columns only).
+     * This is all the double-booking check needs.
+     */
+    public List<Appointment> loadClinicianDay(String clinicianId, String date) throws IOException {
+        if (partitions != null) return partitions.loadClinicianDay(clinicianId, date);
+        int day = Appointment.parseDate(date);
+        if (day != Appointment.NO_DATE) {
+            List<Appointment> out = new ArrayList<>();
+            for (Appointment a : findByClinician(clinicianId, day, day)) {
+                if (!a.isCancelled()) out.add(a);
+            }
+            return out;
+        }
+
+        Where where = Where.eq(COL_CLINICIAN_ID, clinicianId)
+                .and(Where.eq(COL_DATE, date))
+                .and(Where.eqIgnoreCase(COL_STATUS, "Cancelled").negate());
+        return loadWhere(where, BOOKING_COLUMNS);
+    }
+
+    /**
+     * Small files stream through CsvReader; large ones are mapped and parsed in parallel.
+     * In CHANGE_LOG mode the log is merged over the CSV.
+     */
+    private <T> List<T> mapRows(Projection projection, RowMapper<T> mapper) throws IOException {
+        if (changeLog != null) return changeLog.mapRows(projection, mapper);
+        return CsvUtil.mapRows(appointmentsCsvPath, projection, mapper);
+    }
+
+    /**
+     * Maps one CSV row -> Appointment. Returns null for malformed rows (skipped).
+     * Stateless, so MappedCsvLoader can call it from several threads.
+     */
+    private Appointment toAppointment(CsvRow r) {
+        if (r.size() < 13) return null;
+
+        // Clinician/facility/time/duration/type/status are interned (few distinct values);
+        // IDs, dates and free text are not. last_modified is trimmed: in-place updates pad
+        // the row with trailing spaces
+        return new Appointment(
+                r.get(0), r.get(1), symbols.intern(r, 2), symbols.intern(r, 3),
+                r.get(4), symbols.intern(r, 5), symbols.intern(r, 6), symbols.intern(r, 7),
+                symbols.intern(r, 8), r.get(9), r.get(10), r.get(11), r.get(12).trim()
+        );
+    }
+
+    // ------------------- indexed lookups -------------------
+
+    /**
+     * Non-cancelled appointments of the candidate's clinician whose time range
+     * [start, start + duration) overlaps the candidate's. The candidate's own ID is excluded,
+     * so the same call works for create and for update.
+     */
+    public List<Appointment> findOverlapping(AppointmentRecord candidate) throws IOException {
+        if (partitions != null) return partitions.findOverlapping(candidate);
+        if (!candidate.hasDate() || !candidate.hasTime()) {
+            // Unparseable date/time: fall back to the exact-text clinician/day check
+            return loadClinicianDay(candidate.getClinicianId(), candidate.getAppointmentDate());
+        }
+        synchronized (indexLock) {
+            return index().overlapping(candidate.getClinicianId(),
+                    AppointmentIndex.start(candidate), AppointmentIndex.end(candidate),
+                    candidate.getAppointmentId());
+        }
+    }
+
+    /** Appointment with this ID (archived ones included), or null. */
+    public Appointment findById(String appointmentId) throws IOException {
+        if (partitions != null) return partitions.findById(appointmentId);
+        synchronized (indexLock) {
+            Appointment a = index().byId(appointmentId);
+            if (a != null) return a;
+        }
+        return findArchived(appointmentId);
+    }
+
+    /** Archived appointment with this ID, or null. Single file only. */
+    Appointment findArchived(String appointmentId) throws IOException {
+        String[] r = archive.find(appointmentId);
+        return r == null ? null : fromCsvRow(r);
+    }
+
+    /** All appointments of a patient, ordered by date/time. */
+    public List<Appointment> findByPatient(String patientId) throws IOException {
+        if (partitions != null) return partitions.findByPatient(patientId);
+        synchronized (indexLock) {
+            return index().byPatient(patientId, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        }
+    }
+
+    /** Appointments of a clinician with from <= date <= to, ordered by date/time. */
+    public List<Appointment> findByClinician(String clinicianId, LocalDate from, LocalDate to) throws IOException {
+        if (partitions != null) return partitions.findByClinician(clinicianId, from, to);
+        return findByClinician(clinicianId, (int) from.toEpochDay(), (int) to.toEpochDay());
+    }
+
+    /** A clinician's list for one day (e.g. today's front-desk list). */
+    public List<Appointment> findByClinicianOn(String clinicianId, LocalDate day) throws IOException {
+        return findByClinician(clinicianId, day, day);
+    }
+
+    /** Appointments at a facility with from <= date <= to. */
+    public List<Appointment> findByFacility(String facilityId, LocalDate from, LocalDate to) throws IOException {
+        if (partitions != null) return partitions.findByFacility(facilityId, from, to);
+        synchronized (indexLock) {
+            return index().byFacility(facilityId, (int) from.toEpochDay(), (int) to.toEpochDay());
+        }
+    }
+
+    /** Every appointment with from <= date <= to. */
+    public List<Appointment> findByDateRange(LocalDate from, LocalDate to) throws IOException {
+        if (partitions != null) return partitions.findByDateRange(from, to);
+        synchronized (indexLock) {
+            return index().byDate((int) from.toEpochDay(), (int) to.toEpochDay());
+        }
+    }
+
+    private List<Appointment> findByClinician(String clinicianId, int fromDay, int toDay) throws IOException {
+        synchronized (indexLock) {
+            return index().byClinician(clinicianId, fromDay, toDay);
+        }
+    }
+
+    /** Current index; (re)built from the file if missing or the file changed. Caller holds indexLock. */
+    private AppointmentIndex index() throws IOException {
+        // While our own writes are in flight the file stamp moves under us; they patch the index themselves
+        if (index != null && indexWriters > 0 && indexTrusted) return index;
+
+        FileStamp now = FileStamp.of(appointmentsCsvPath);
+        if (index == null || !now.equals(indexStamp)) {
+            index = new AppointmentIndex(loadAll());
+            indexStamp = now;
+        }
+        return index;
+    }
+
+    /**
+     * Registers one of our own writes (several may run at once on different records).
+     * The index may only be patched if it was current when the first of them began.
+     */
+    private void beginWrite() throws IOException {
+        synchronized (indexLock) {
+            if (indexWriters++ == 0) {
+                indexTrusted = index != null && FileStamp.of(appointmentsCsvPath).equals(indexStamp);
+            }
+        }
+    }
+
+    /**
+     * After our own write: patch the index with the new row states, or drop it if they are
+     * unknown (null) or the index was not trusted. The last writer out re-stamps it.
+     */
+    private void endWrite(Collection<Appointment> newStates) throws IOException {
+        synchronized (indexLock) {
+            if (index != null && indexTrusted && newStates != null) {
+                for (Appointment a : newStates) index.put(a);
+            } else {
+                index = null;
+                indexTrusted = false;
+            }
+            if (--indexWriters == 0 && index != null) indexStamp = FileStamp.of(appointmentsCsvPath);
+        }
+    }
+
+    /** Indexed state of one appointment if the index can be trusted right now, else null. */
+    private Appointment indexedState(String appointmentId) {
+        synchronized (indexLock) {
+            return index != null && indexTrusted ? index.byId(appointmentId) : null;
+        }
+    }
+
+    // ------------------- history (hot + archived) -------------------
+
+    /**
+     * Like loadWhere, but also searches the archive (decompresses every segment).
+     * For explicit history screens/reports; day-to-day reads only need the hot rows.
+     */
+    public List<Appointment> loadHistory(Where where, Projection projection) throws IOException {
+        if (partitions != null) return partitions.loadHistory(where, projection);
+        List<Appointment> out = new ArrayList<>(loadWhere(where, projection));
+        out.addAll(archive.mapRows(where.widen(projection), where.filter(this::toAppointment)));
+        return out;
+    }
 
-        List<Appointment> appointments = new ArrayList<>();
+    /** A patient's full appointment history: current ones (indexed) then archived ones. */
+    public List<Appointment> findHistoryByPatient(String patientId) throws IOException {
+        if (partitions != null) return partitions.findHistoryByPatient(patientId);
+        List<Appointment> out = new ArrayList<>(findByPatient(patientId));
+        Where where = Where.eq(COL_PATIENT_ID, patientId);
+        out.addAll(archive.mapRows(where.widen(Projection.ALL), where.filter(this::toAppointment)));
+        return out;
+    }
 
-        for (int i = 1; i < rows.size(); i++) {
-            String[] r = rows.get(i);
-            if (r.length < 13) continue;
+    /**
+     * Moves appointments that are finished (Completed/Cancelled) and dated before 'cutoff' into
+     * the archive, then removes them from the CSV (DIRECT: one rewrite; CHANGE_LOG: one delete append).
+     * Called by the Archiver. Returns the number of rows moved.
+     */
+    public int archiveBefore(LocalDate cutoff) throws IOException {
+        if (partitions != null) return partitions.archiveBefore(cutoff);
+        int cutoffDay = (int) cutoff.toEpochDay();
 
-            Appointment a = new Appointment(
-                    r[0], r[1], r[2], r[3],
-                    r[4], r[5], r[6], r[7],
-                    r[8], r[9], r[10], r[11], r[12]
-            );
+        locks.lockStructure();
+        beginWrite();
+        try {
+            List<String[]> cold = new ArrayList<>();
+            forEachRow(r -> {
+                if (r.size() >= 13 && isCold(r, cutoffDay)) cold.add(r.toArray());
+            });
+            if (cold.isEmpty()) return 0;
 
-            appointments.add(a);
+            // Archive first (durable), then drop from the CSV: a crash in between only leaves a duplicate
+            archive.append(cold);
+            Set<String> moved = new HashSet<>();
+            for (String[] r : cold) moved.add(r[0]);
+            if (changeLog != null) {
+                changeLog.logDeleteAll(moved);
+            } else {
+                offsetIndex.rewrite(r -> moved.contains(r[0]) ? RowOffsetIndex.DROP : null);
+            }
+            return moved.size();
+        } finally {
+            endWrite(null); // hot set shrank: rebuilt on next lookup
+            locks.unlockStructure();
         }
+    }
 
-        return appointments;
+    private static boolean isCold(CsvRow r, int cutoffDay) {
+        AppointmentStatus status = AppointmentStatus.fromLabel(r.get(COL_STATUS));
+        if (status != AppointmentStatus.COMPLETED && status != AppointmentStatus.CANCELLED) return false;
+        int day = Appointment.parseDate(r.get(COL_DATE));
+        return day != Appointment.NO_DATE && day < cutoffDay;
     }
 
+    // ------------------- writes -------------------
+
     /**
      * Updates an existing appointment row matching appointmentId.
      * Returns true if updated, false if not found.
+     *
+     * DIRECT: the row is patched in place through the row-offset index (no full rewrite).
+     * CHANGE_LOG: the new row is appended to the log.
      */
     public boolean updateAppointment(Appointment updated) throws IOException {
-        List<String[]> rows = CsvUtil.readAll(appointmentsCsvPath);
+        if (partitions != null) return partitions.updateAppointment(updated);
 
-        // Header is at index 0
-        for (int i = 1; i < rows.size(); i++) {
-            String[] r = rows.get(i);
-            if (r.length < 13) continue;
+        String id = updated.getAppointmentId();
+        locks.lockRecord(id);
+        beginWrite();
+        List<Appointment> changed = null;
+        try {
+            boolean ok;
+            if (changeLog != null) {
+                ok = exists(id);
+                if (ok) changeLog.logUpdate(toCsvRow(updated));
+            } else {
+                ok = offsetIndex.update(id, toCsvRow(updated));
+            }
+            changed = ok ? List.of(updated) : List.of();
+            return ok;
+        } finally {
+            endWrite(changed);
+            locks.unlockRecord(id);
+        }
+    }
 
-            if (r[0].equals(updated.getAppointmentId())) {
-                // Overwrite all columns in correct order
-                rows.set(i, toCsvRow(updated));
-                CsvUtil.writeAll(appointmentsCsvPath, rows);
-                return true;
+    /**
+     * Version of an appointment as loaded (RowVersion of its CSV row).
+     * Pass it back to updateIfVersion to detect edits made in between.
+     */
+    public long versionOf(Appointment a) {
+        return RowVersion.of(toCsvRow(a));
+    }
+
+    /**
+     * Compare-and-set update: writes 'updated' only if the stored row still has expectedVersion.
+     * Returns false if the ID is unknown; throws VersionConflictException (nothing written)
+     * if someone else changed the row first.
+     *
+     * DIRECT: the check and the write happen under an OS lock on that row's bytes only,
+     * so other rows (and other processes editing them) are not blocked.
+     * CHANGE_LOG: checked against the current merged row, then logged, under the record lock.
+     */
+    public boolean updateIfVersion(Appointment updated, long expectedVersion) throws IOException, VersionConflictException {
+        if (partitions != null) return partitions.updateIfVersion(updated, expectedVersion);
+
+        String id = updated.getAppointmentId();
+        String[] newRow = toCsvRow(updated);
+
+        locks.lockRecord(id);
+        beginWrite();
+        List<Appointment> changed = null;
+        try {
+            String[] current;
+            if (changeLog != null) {
+                Appointment stored = findById(id);
+                current = stored == null ? null : toCsvRow(stored);
+                if (current != null && RowVersion.of(current) == expectedVersion) changeLog.logUpdate(newRow);
+            } else {
+                current = offsetIndex.compareAndUpdate(id, r -> RowVersion.of(r) == expectedVersion, newRow);
             }
+
+            changed = List.of();
+            if (current == null) return false;
+            long currentVersion = RowVersion.of(current);
+            if (currentVersion != expectedVersion) {
+                // The stored row is newer than what the caller (or our index) had: index it as it is
+                Appointment stored = fromCsvRow(current);
+                if (stored != null) changed = List.of(stored);
+                throw new VersionConflictException(id, expectedVersion, currentVersion);
+            }
+
+            changed = List.of(updated);
+            return true;
+        } finally {
+            endWrite(changed);
+            locks.unlockRecord(id);
         }
-        return false;
     }
 
     /**
      * Cancels an appointment by setting status=Cancelled and updating last_modified.
+     * DIRECT: only the one row is read and written (row-offset index).
+     * CHANGE_LOG: a status/last_modified patch is appended to the log.
      */
     public boolean cancelAppointment(String appointmentId) throws IOException {
-        List<String[]> rows = CsvUtil.readAll(appointmentsCsvPath);
+        if (partitions != null) return partitions.cancelAppointment(appointmentId);
 
-        for (int i = 1; i < rows.size(); i++) {
-            String[] r = rows.get(i);
-            if (r.length < 13) continue;
+        String today = LocalDate.now().toString(); // simple date stamp
 
-            if (r[0].equals(appointmentId)) {
-                // Column indexes (based on header order)
-                // 8 = status
-                // 12 = last_modified
-                r[8] = "Cancelled";
-                r[12] = LocalDate.now().toString(); // simple date stamp
+        locks.lockRecord(appointmentId);
+        beginWrite();
+        List<Appointment> changed = null;
+        try {
+            if (changeLog != null) {
+                if (!exists(appointmentId)) {
+                    changed = List.of();
+                    return false;
+                }
+                changeLog.logPatch(appointmentId,
+                        new int[]{COL_STATUS, COL_LAST_MODIFIED},
+                        new String[]{"Cancelled", today});
 
-                rows.set(i, r);
-                CsvUtil.writeAll(appointmentsCsvPath, rows);
+                Appointment old = indexedState(appointmentId);
+                if (old != null) {
+                    String[] r = toCsvRow(old);
+                    r[COL_STATUS] = "Cancelled";
+                    r[COL_LAST_MODIFIED] = today;
+                    changed = List.of(fromCsvRow(r));
+                }
                 return true;
             }
+
+            String[] r = offsetIndex.read(appointmentId);
+            if (r == null || r.length < 13) {
+                changed = List.of();
+                return false;
+            }
+
+            r[COL_STATUS] = "Cancelled";
+            r[COL_LAST_MODIFIED] = today;
+
+            boolean ok = offsetIndex.update(appointmentId, r);
+            changed = ok ? List.of(fromCsvRow(r)) : List.of();
+            return ok;
+        } finally {
+            endWrite(changed);
+            locks.unlockRecord(appointmentId);
         }
-        return false;
     }
 
+    // ------------------- batch writes -------------------
+
+    /**
+     * Cancels every listed appointment (status=Cancelled, last_modified=today) in one batch.
+     * Unknown IDs are ignored. Returns the number of appointments changed.
+     *
+     * DIRECT: one pass over the CSV into a temp file, swapped in atomically.
+     * CHANGE_LOG: one read of the current rows, one log append.
+     */
+    public int cancelAll(Collection<String> appointmentIds) throws IOException {
+        if (partitions != null) return partitions.cancelAll(appointmentIds);
+
+        Set<String> ids = new HashSet<>(appointmentIds);
+        String today = LocalDate.now().toString();
+        return applyAll(ids, r -> {
+            if (r.length < 13) return null;
+            String[] out = r.clone();
+            out[COL_STATUS] = "Cancelled";
+            out[COL_LAST_MODIFIED] = today;
+            return out;
+        });
+    }
+
+    /**
+     * Replaces every listed appointment (matched by ID) in one batch.
+     * Unknown IDs are ignored. Returns the number of appointments changed.
+     */
+    public int updateAll(Collection<Appointment> updated) throws IOException {
+        if (partitions != null) return partitions.updateAll(updated);
+
+        Map<String, Appointment> byId = new HashMap<>();
+        for (Appointment a : updated) byId.put(a.getAppointmentId(), a);
+        return applyAll(byId.keySet(), r -> toCsvRow(byId.get(r[0])));
+    }
+
+    /**
+     * Cancels all non-cancelled appointments of a clinician with from <= date <= to
+     * (e.g. the clinician is off sick). The IDs come from the index; the write is one cancelAll batch.
+     * Returns the number of appointments cancelled.
+     */
+    public int cancelAllForClinician(String clinicianId, LocalDate from, LocalDate to) throws IOException {
+        List<String> ids = new ArrayList<>();
+        for (Appointment a : findByClinician(clinicianId, from, to)) {
+            if (!a.isCancelled()) ids.add(a.getAppointmentId());
+        }
+        return ids.isEmpty() ? 0 : cancelAll(ids);
+    }
+
+    /**
+     * Applies 'change' (old row -> new row, or null to skip) to every row whose ID is in 'ids',
+     * with one read and one write. Patches the index with the changed rows.
+     */
+    private int applyAll(Set<String> ids, UnaryOperator<String[]> change) throws IOException {
+        if (ids.isEmpty()) return 0;
+
+        locks.lockStructure();
+        beginWrite();
+        List<Appointment> newStates = null;
+        try {
+            List<String[]> changed = new ArrayList<>();
+
+            if (changeLog != null) {
+                changeLog.forEachRow(r -> {
+                    if (!ids.contains(r.get(0))) return;
+                    String[] out = change.apply(r.toArray());
+                    if (out != null) changed.add(out);
+                });
+                changeLog.logUpdateAll(changed);
+            } else {
+                offsetIndex.rewrite(r -> {
+                    if (!ids.contains(r[0])) return null;
+                    String[] out = change.apply(r);
+                    if (out != null) changed.add(out);
+                    return out;
+                });
+            }
+
+            newStates = new ArrayList<>(changed.size());
+            for (String[] r : changed) newStates.add(fromCsvRow(r));
+            return changed.size();
+        } finally {
+            endWrite(newStates);
+            locks.unlockStructure();
+        }
+    }
 
     /**
      * Creates a new appointment and appends it to appointments.csv.
@@ -103,36 +655,154 @@ public class AppointmentRepository {
      */
     public String createAppointment(Appointment newAppointment) throws IOException {
 
-        // Collect existing IDs from file
-        List<String[]> rows = CsvUtil.readAll(appointmentsCsvPath);
-        List<String> ids = new ArrayList<>();
-        for (int i = 1; i < rows.size(); i++) {
-            if (rows.get(i).length > 0) ids.add(rows.get(i)[0]);
-        }
-
-        String nextId = service.IdGenerator.nextId(ids);
-
-        // Force-set ID into a new Appointment object (immutable fields)
-        Appointment toSave = new Appointment(
-                nextId,
-                newAppointment.getPatientId(),
-                newAppointment.getClinicianId(),
-                newAppointment.getFacilityId(),
-                newAppointment.getAppointmentDate(),
-                newAppointment.getAppointmentTime(),
-                newAppointment.getDurationMinutes(),
-                newAppointment.getAppointmentType(),
-                newAppointment.getStatus(),
-                newAppointment.getReasonForVisit(),
-                newAppointment.getNotes(),
-                newAppointment.getCreatedDate(),
-                newAppointment.getLastModified()
-        );
+        if (partitions != null) return partitions.createAppointment(newAppointment);
 
-        CsvUtil.appendRow(appointmentsCsvPath, toCsvRow(toSave));
+        // O(1): counter file appointments.csv.seq (the CSV is only scanned if it is missing)
+        String nextId = IdSequence.forTable(appointmentsCsvPath, "A", 3, this::sequenceIds).next();
+
+        insertAll(List.of(withId(nextId, newAppointment)));
         return nextId;
     }
 
+    /**
+     * Bulk import (e.g. onboarding a surgery's historic appointments).
+     * - Each row is checked for the fields the file cannot do without (see importError);
+     *   bad rows are rejected in the report, the rest are imported.
+     * - IDs for every accepted row are reserved in ONE IdSequence step.
+     * - DIRECT: rows are appended in one sequential buffered pass; CHANGE_LOG: one log append.
+     *
+     * Business rules (double booking, past dates) are not applied; that stays in the controller.
+     */
+    public ImportReport importAppointments(List<Appointment> batch) throws IOException {
+        if (partitions != null) return partitions.importAppointments(batch);
+
+        ImportReport.Builder report = new ImportReport.Builder(batch.size());
+
+        List<Integer> accepted = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            String error = importError(batch.get(i));
+            if (error != null) report.rejected(i, error);
+            else accepted.add(i);
+        }
+
+        List<String> ids = IdSequence.forTable(appointmentsCsvPath, "A", 3, this::sequenceIds).next(accepted.size());
+        List<Appointment> toSave = new ArrayList<>(accepted.size());
+        for (int k = 0; k < accepted.size(); k++) toSave.add(withId(ids.get(k), batch.get(accepted.get(k))));
+        insertAll(toSave);
+
+        for (int k = 0; k < accepted.size(); k++) report.imported(accepted.get(k), ids.get(k));
+        return report.build();
+    }
+
+    /**
+     * Appends appointments that already carry their IDs (create, import, partition moves).
+     * DIRECT: one buffered append; CHANGE_LOG: one log append. Takes the structure lock.
+     */
+    void insertAll(List<Appointment> toSave) throws IOException {
+        List<String[]> rows = new ArrayList<>(toSave.size());
+        for (Appointment a : toSave) rows.add(toCsvRow(a));
+
+        locks.lockStructure();
+        beginWrite();
+        boolean written = false;
+        try {
+            if (changeLog != null) {
+                changeLog.logCreateAll(rows);
+            } else {
+                CsvUtil.appendRows(appointmentsCsvPath, rows);
+            }
+            written = true;
+        } finally {
+            endWrite(written ? toSave : null);
+            locks.unlockStructure();
+        }
+    }
+
+    /**
+     * Removes one appointment (its row moved to another partition). Returns false if unknown.
+     * DIRECT: the slot is blanked; CHANGE_LOG: a delete record is logged.
+     */
+    boolean delete(String appointmentId) throws IOException {
+        locks.lockRecord(appointmentId);
+        beginWrite();
+        try {
+            if (changeLog != null) {
+                if (!exists(appointmentId)) return false;
+                changeLog.logDelete(appointmentId);
+                return true;
+            }
+            return offsetIndex.delete(appointmentId);
+        } finally {
+            endWrite(null); // rebuilt on next lookup
+            locks.unlockRecord(appointmentId);
+        }
+    }
+
+    /** Every appointment_id in this file (partition directory). */
+    List<String> ids() throws IOException {
+        return changeLog != null ? scanIds() : offsetIndex.ids();
+    }
+
+    /** Why a row cannot be imported, or null. */
+    static String importError(Appointment a) {
+        if (a == null) return "missing row";
+        if (isBlank(a.getPatientId())) return "patient_id is blank";
+        if (isBlank(a.getClinicianId())) return "clinician_id is blank";
+        if (!a.hasDate()) return "unreadable appointment_date '" + a.getAppointmentDate() + "'";
+        if (!a.hasTime()) return "unreadable appointment_time '" + a.getAppointmentTime() + "'";
+        return null;
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isBlank();
+    }
+
+    /** Copy of the appointment carrying the generated ID (Appointment is immutable). */
+    static Appointment withId(String id, Appointment a) {
+        return new Appointment(
+                id,
+                a.getPatientId(),
+                a.getClinicianId(),
+                a.getFacilityId(),
+                a.getAppointmentDate(),
+                a.getAppointmentTime(),
+                a.getDurationMinutes(),
+                a.getAppointmentType(),
+                a.getStatus(),
+                a.getReasonForVisit(),
+                a.getNotes(),
+                a.getCreatedDate(),
+                a.getLastModified()
+        );
+    }
+
+    /** IDs the sequence must not hand out again: current rows and archived ones. */
+    List<String> sequenceIds() throws IOException {
+        List<String> ids = scanIds();
+        ids.addAll(archive.ids());
+        return ids;
+    }
+
+    /** Every appointment_id (IdSequence recovery only). Blank first cells are freed slots, not IDs. */
+    private List<String> scanIds() throws IOException {
+        List<String> ids = new ArrayList<>();
+        for (String id : mapRows(Projection.ID_ONLY, r -> r.get(0))) {
+            if (!id.isBlank()) ids.add(id);
+        }
+        return ids;
+    }
+
+    /** CHANGE_LOG mode: an ID exists if it is in the CSV or was created through the log, and not deleted. */
+    private boolean exists(String appointmentId) throws IOException {
+        return (offsetIndex.contains(appointmentId) || changeLog.wasCreated(appointmentId))
+                && !changeLog.wasDeleted(appointmentId);
+    }
+
+
+    /** String[] row (as read by RowOffsetIndex) -> Appointment. */
+    private Appointment fromCsvRow(String[] r) {
+        return toAppointment(CsvRow.of(r));
+    }
 
     /**
      * Convert Appointment -> CSV row in the SAME column order as appointments.csv
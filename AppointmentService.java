@@ -1,6 +1,7 @@
 package service;
 
 import model.Appointment;
+import model.AppointmentRecord;
 
 import java.time.LocalDate;
 import java.time.LocalTime;
@@ -13,6 +14,9 @@ import java.util.List;
  */
 public class AppointmentService {
 
+    private static final long NANOS_PER_MINUTE = 60_000_000_000L;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
     /**
      * Rule 1: No appointments in the past.
      * Returns null if OK, otherwise an error message string.
@@ -35,23 +39,69 @@ public class AppointmentService {
     }
 
     /**
-     * Rule 2: No double-booking for the same clinician at same date + time.
+     * Rule 1 on an already-parsed Appointment (epoch day / minute of day, no re-parsing).
+     */
+    public String validateNotInPast(Appointment candidate) {
+        if (!candidate.hasDate() || !candidate.hasTime()) {
+            return "Date must be yyyy-MM-dd and time must be HH:mm.";
+        }
+
+        long today = LocalDate.now().toEpochDay();
+        if (candidate.getEpochDay() < today) {
+            return "Appointment date cannot be in the past.";
+        }
+
+        // If same date, time must not be earlier than now
+        if (candidate.getEpochDay() == today
+                && candidate.getMinuteOfDay() * NANOS_PER_MINUTE < LocalTime.now().toNanoOfDay()) {
+            return "Appointment time cannot be in the past (today).";
+        }
+
+        return null;
+    }
+
+    /**
+     * Rule 2: No double-booking for the same clinician.
      * We consider an appointment conflicting if:
      * - same clinicianId
-     * - same date
-     * - same time
+     * - its [start, start + duration) overlaps the candidate's (e.g. 09:00 for 30 min vs 09:15)
      * - status is not Cancelled
+     * The candidate itself (same appointment_id, i.e. the one being edited) is ignored.
+     *
+     * existing can be any superset of the possible clashes; AppointmentRepository.findOverlapping
+     * returns exactly the overlapping ones from its per-clinician interval tree.
      */
-    public String validateNoClinicianDoubleBooking(List<Appointment> existing, Appointment candidate) {
-        for (Appointment a : existing) {
-            if (a.getClinicianId().equals(candidate.getClinicianId())
-                    && a.getAppointmentDate().equals(candidate.getAppointmentDate())
-                    && a.getAppointmentTime().equals(candidate.getAppointmentTime())
-                    && !a.getStatus().equalsIgnoreCase("Cancelled")) {
-                return "Clinician is already booked at " + candidate.getAppointmentDate() +
-                        " " + candidate.getAppointmentTime() + ".";
+    public String validateNoClinicianDoubleBooking(List<? extends AppointmentRecord> existing, AppointmentRecord candidate) {
+        for (AppointmentRecord a : existing) {
+            if (a.getAppointmentId().equals(candidate.getAppointmentId())) continue;
+
+            if (!a.isCancelled()
+                    && a.getClinicianId().equals(candidate.getClinicianId())
+                    && overlaps(a, candidate)) {
+                return "Clinician is already booked at " + a.getAppointmentDate() +
+                        " " + a.getAppointmentTime() + " for " + a.getDurationMinutes() +
+                        " min (" + a.getAppointmentId() + ").";
             }
         }
         return null;
     }
+
+    /**
+     * Time ranges overlap (half-open, in absolute minutes; a missing duration counts as 1 minute).
+     * Falls back to same date + time text when either side was not parseable.
+     */
+    private static boolean overlaps(AppointmentRecord a, AppointmentRecord b) {
+        if (a.hasDate() && a.hasTime() && b.hasDate() && b.hasTime()) {
+            long aStart = startMinute(a);
+            long bStart = startMinute(b);
+            return aStart < bStart + Math.max(1, (int) b.getDuration())
+                    && bStart < aStart + Math.max(1, (int) a.getDuration());
+        }
+        return a.getAppointmentDate().equals(b.getAppointmentDate())
+                && a.getAppointmentTime().equals(b.getAppointmentTime());
+    }
+
+    private static long startMinute(AppointmentRecord a) {
+        return (long) a.getEpochDay() * MINUTES_PER_DAY + a.getMinuteOfDay();
+    }
 }
@@ -0,0 +1,36 @@
+package model;
+
+/**
+ * AppointmentStatus:
+ * - The status column as an enum, so checks like "is it cancelled?" are a reference compare.
+ * - fromLabel() is case-insensitive (the old code used equalsIgnoreCase("Cancelled")).
+ * - Anything not listed maps to OTHER; Appointment keeps the original text in that case.
+ */
+public enum AppointmentStatus {
+    SCHEDULED("Scheduled"),
+    COMPLETED("Completed"),
+    CANCELLED("Cancelled"),
+    NO_SHOW("No Show"),
+    OTHER("");
+
+    private static final AppointmentStatus[] KNOWN = {SCHEDULED, COMPLETED, CANCELLED, NO_SHOW};
+
+    private final String label;
+
+    AppointmentStatus(String label) {
+        this.label = label;
+    }
+
+    /** Text as written in appointments.csv. */
+    public String getLabel() {
+        return label;
+    }
+
+    public static AppointmentStatus fromLabel(String text) {
+        if (text == null) return OTHER;
+        for (AppointmentStatus s : KNOWN) {
+            if (s.label.equalsIgnoreCase(text)) return s;
+        }
+        return OTHER;
+    }
+}
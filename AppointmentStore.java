@@ -0,0 +1,311 @@
+package repository;
+
+import model.Appointment;
+import model.AppointmentRecord;
+import model.AppointmentStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AppointmentStore (struct-of-arrays, read-only after loading)
+ * - One array per column instead of one object per appointment:
+ *     ids, reason, notes          -> String[] (unique / free text)
+ *     patient                     -> UTF-8 string heap + int offsets (near-unique: a dictionary
+ *                                    would cost a map entry, a boxed code and a String per patient)
+ *     clinician, facility, type, created, last_modified -> int codes into small dictionaries
+ *     date / time / duration      -> int epoch day / short minute of day / short minutes
+ *     status                      -> byte (AppointmentStatus ordinal)
+ * - get(i) returns a flyweight Row (just the store + an index) implementing AppointmentRecord,
+ *   so views and AppointmentService use it like an Appointment.
+ * - Column scans (e.g. clinician X between two dates) loop over contiguous int arrays.
+ *
+ * Non-canonical date/time/duration/status text (rare) is kept in a sparse map so getters
+ * return exactly what the CSV holds, like Appointment does.
+ *
+ * Built by AppointmentRepository.loadStore(); not thread-safe while loading, safe to share after.
+ */
+public final class AppointmentStore {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final AppointmentStatus[] STATUSES = AppointmentStatus.values();
+
+    private final SymbolTable symbols;
+    private int size;
+
+    private String[] ids = new String[INITIAL_CAPACITY];
+    private byte[] patientHeap = new byte[INITIAL_CAPACITY * 8];
+    private int[] patientStart = new int[INITIAL_CAPACITY + 1]; // row -> start in patientHeap (size + 1 entries)
+    private int[] clinician = new int[INITIAL_CAPACITY];
+    private int[] facility = new int[INITIAL_CAPACITY];
+    private int[] epochDay = new int[INITIAL_CAPACITY];
+    private short[] minuteOfDay = new short[INITIAL_CAPACITY];
+    private short[] duration = new short[INITIAL_CAPACITY];
+    private int[] type = new int[INITIAL_CAPACITY];
+    private byte[] status = new byte[INITIAL_CAPACITY];
+    private String[] reason = new String[INITIAL_CAPACITY];
+    private String[] notes = new String[INITIAL_CAPACITY];
+    private int[] created = new int[INITIAL_CAPACITY];
+    private int[] lastModified = new int[INITIAL_CAPACITY];
+
+    private final Dict clinicians = new Dict();
+    private final Dict facilities = new Dict();
+    private final Dict types = new Dict();
+    private final Dict stamps = new Dict(); // created_date + last_modified share one dictionary
+
+    // row -> original {date, time, duration, status} text, only for non-canonical rows
+    private final Map<Integer, String[]> irregular = new HashMap<>();
+
+    AppointmentStore(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    // ------------------- loading (package-private) -------------------
+
+    /** Appends one CSV row (malformed rows are skipped, like AppointmentRepository.loadAll). */
+    void add(CsvRow r) {
+        if (r.size() < 13) return;
+        if (size == ids.length) grow();
+
+        int i = size;
+        ids[i] = r.get(0);
+        addPatient(i, r.get(1));
+        clinician[i] = clinicians.code(symbols.intern(r, 2));
+        facility[i] = facilities.code(symbols.intern(r, 3));
+        type[i] = types.code(symbols.intern(r, 7));
+        reason[i] = r.get(9);
+        notes[i] = r.get(10);
+        created[i] = stamps.code(r.get(11));
+        lastModified[i] = stamps.code(r.get(12).trim());
+
+        String date = r.get(4);
+        String time = symbols.intern(r, 5);
+        String dur = symbols.intern(r, 6);
+        String st = symbols.intern(r, 8);
+
+        epochDay[i] = Appointment.parseDate(date);
+        minuteOfDay[i] = Appointment.parseTime(time);
+        duration[i] = Appointment.parseDuration(dur);
+        AppointmentStatus code = AppointmentStatus.fromLabel(st);
+        status[i] = (byte) code.ordinal();
+
+        if ((epochDay[i] == Appointment.NO_DATE && !date.isEmpty())
+                || (minuteOfDay[i] == Appointment.NO_TIME && !time.isEmpty())
+                || (duration[i] == Appointment.NO_DURATION && !dur.isEmpty())
+                || !st.equals(code.getLabel())) {
+            irregular.put(i, new String[]{date, time, dur, st});
+        }
+        size++;
+    }
+
+    private void addPatient(int i, String patientId) {
+        byte[] b = patientId.getBytes(StandardCharsets.UTF_8);
+        int start = patientStart[i];
+        if (start + b.length > patientHeap.length) {
+            patientHeap = Arrays.copyOf(patientHeap, Math.max(patientHeap.length * 2, start + b.length));
+        }
+        System.arraycopy(b, 0, patientHeap, start, b.length);
+        patientStart[i + 1] = start + b.length;
+    }
+
+    private void grow() {
+        int n = ids.length * 2;
+        ids = Arrays.copyOf(ids, n);
+        patientStart = Arrays.copyOf(patientStart, n + 1);
+        clinician = Arrays.copyOf(clinician, n);
+        facility = Arrays.copyOf(facility, n);
+        epochDay = Arrays.copyOf(epochDay, n);
+        minuteOfDay = Arrays.copyOf(minuteOfDay, n);
+        duration = Arrays.copyOf(duration, n);
+        type = Arrays.copyOf(type, n);
+        status = Arrays.copyOf(status, n);
+        reason = Arrays.copyOf(reason, n);
+        notes = Arrays.copyOf(notes, n);
+        created = Arrays.copyOf(created, n);
+        lastModified = Arrays.copyOf(lastModified, n);
+    }
+
+    // ------------------- access -------------------
+
+    public int size() {
+        return size;
+    }
+
+    /** Flyweight view of row i (no data is copied). */
+    public Row get(int i) {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException("row " + i + " of " + size);
+        return new Row(i);
+    }
+
+    /** The rows as a List of flyweights (created on access), e.g. for AppointmentTableFrame. */
+    public List<Row> rows() {
+        return rows(null);
+    }
+
+    /** Flyweights for the given row numbers (as returned by the scans below). */
+    public List<Row> rows(int[] rowNumbers) {
+        return new AbstractList<>() {
+            @Override
+            public Row get(int k) {
+                return AppointmentStore.this.get(rowNumbers == null ? k : rowNumbers[k]);
+            }
+
+            @Override
+            public int size() {
+                return rowNumbers == null ? size : rowNumbers.length;
+            }
+        };
+    }
+
+    // ------------------- column scans -------------------
+
+    /**
+     * Rows of one clinician with from <= date <= to (inclusive), in file order.
+     * One pass over two int arrays.
+     */
+    public int[] findByClinicianBetween(String clinicianId, LocalDate from, LocalDate to) {
+        int code = clinicians.find(clinicianId);
+        if (code < 0) return new int[0];
+
+        int lo = (int) from.toEpochDay();
+        int hi = (int) to.toEpochDay();
+        int[] out = new int[16];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (clinician[i] != code) continue;
+            int d = epochDay[i];
+            if (d < lo || d > hi) continue;
+            if (n == out.length) out = Arrays.copyOf(out, n * 2);
+            out[n++] = i;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /** Rows of one patient, in file order. Compares the UTF-8 bytes in place (no String per row). */
+    public int[] findByPatient(String patientId) {
+        byte[] b = patientId.getBytes(StandardCharsets.UTF_8);
+        int[] out = new int[16];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            int start = patientStart[i];
+            if (patientStart[i + 1] - start != b.length
+                    || !Arrays.equals(patientHeap, start, start + b.length, b, 0, b.length)) continue;
+            if (n == out.length) out = Arrays.copyOf(out, n * 2);
+            out[n++] = i;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /** Rows with the given status, in file order. */
+    public int[] findByStatus(AppointmentStatus s) {
+        int[] out = new int[16];
+        int n = 0;
+        byte b = (byte) s.ordinal();
+        for (int i = 0; i < size; i++) {
+            if (status[i] != b) continue;
+            if (n == out.length) out = Arrays.copyOf(out, n * 2);
+            out[n++] = i;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private String patientId(int i) {
+        return new String(patientHeap, patientStart[i], patientStart[i + 1] - patientStart[i], StandardCharsets.UTF_8);
+    }
+
+    // ------------------- flyweight -------------------
+
+    /** One row of the store. Holds only the row number. */
+    public final class Row implements AppointmentRecord {
+        private final int i;
+
+        private Row(int i) {
+            this.i = i;
+        }
+
+        public int rowNumber() { return i; }
+
+        @Override public String getAppointmentId() { return ids[i]; }
+        @Override public String getPatientId() { return patientId(i); }
+        @Override public String getClinicianId() { return clinicians.value(clinician[i]); }
+        @Override public String getFacilityId() { return facilities.value(facility[i]); }
+        @Override public String getAppointmentType() { return types.value(type[i]); }
+        @Override public String getReasonForVisit() { return reason[i]; }
+        @Override public String getNotes() { return notes[i]; }
+        @Override public String getCreatedDate() { return stamps.value(created[i]); }
+        @Override public String getLastModified() { return stamps.value(lastModified[i]); }
+
+        @Override public int getEpochDay() { return epochDay[i]; }
+        @Override public short getMinuteOfDay() { return minuteOfDay[i]; }
+        @Override public short getDuration() { return duration[i]; }
+        @Override public AppointmentStatus getStatusCode() { return STATUSES[status[i]]; }
+
+        // Text getters go through Appointment's formatting so both render identically
+        @Override
+        public String getAppointmentDate() {
+            String[] raw = irregular.get(i);
+            if (raw != null) return raw[0];
+            return Appointment.formatDate(epochDay[i]);
+        }
+
+        @Override
+        public String getAppointmentTime() {
+            String[] raw = irregular.get(i);
+            if (raw != null) return raw[1];
+            return Appointment.formatTime(minuteOfDay[i]);
+        }
+
+        @Override
+        public String getDurationMinutes() {
+            String[] raw = irregular.get(i);
+            if (raw != null) return raw[2];
+            return duration[i] == Appointment.NO_DURATION ? "" : Integer.toString(duration[i]);
+        }
+
+        @Override
+        public String getStatus() {
+            String[] raw = irregular.get(i);
+            if (raw != null) return raw[3];
+            return STATUSES[status[i]].getLabel();
+        }
+
+        /** Materializes a standalone Appointment (e.g. to edit and write back). */
+        public Appointment toAppointment() {
+            return new Appointment(getAppointmentId(), getPatientId(), getClinicianId(), getFacilityId(),
+                    getAppointmentDate(), getAppointmentTime(), getDurationMinutes(), getAppointmentType(),
+                    getStatus(), getReasonForVisit(), getNotes(), getCreatedDate(), getLastModified());
+        }
+    }
+
+    // ------------------- dictionary -------------------
+
+    /** value <-> dense int code (each distinct value is kept once, here). */
+    private static final class Dict {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private String[] values = new String[16];
+
+        int code(String v) {
+            Integer c = codes.get(v);
+            if (c != null) return c;
+            int next = codes.size();
+            if (next == values.length) values = Arrays.copyOf(values, next * 2);
+            values[next] = v;
+            codes.put(v, next);
+            return next;
+        }
+
+        int find(String v) {
+            Integer c = codes.get(v);
+            return c == null ? -1 : c;
+        }
+
+        String value(int code) {
+            return values[code];
+        }
+    }
+}
@@ -1,16 +1,17 @@
 package view;
 
-import model.Appointment;
+import model.AppointmentRecord;
 
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * AppointmentTableFrame (VIEW)
  * - Table of appointments
- * - Controls: Refresh, Cancel Selected
+ * - Controls: Refresh, Cancel Selected, optional From/To date filter for the table
  * - Create form (also reused for Update)
  */
 public class AppointmentTableFrame extends JFrame {
@@ -27,6 +28,10 @@ public class AppointmentTableFrame extends JFrame {
 
     private final JLabel statusLabel;
 
+    // Table date filter (yyyy-MM-dd, either may be blank)
+    private final JTextField fromDateField = new JTextField(10);
+    private final JTextField toDateField = new JTextField(10);
+
     // Create/Update form fields
     private final JTextField patientIdField = new JTextField(10);
     private final JTextField clinicianIdField = new JTextField(10);
@@ -55,6 +60,7 @@ public class AppointmentTableFrame extends JFrame {
         );
 
         table = new JTable(tableModel);
+        table.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION); // Cancel Selected works on many rows
         JScrollPane scrollPane = new JScrollPane(table);
 
         // Buttons
@@ -72,6 +78,10 @@ public class AppointmentTableFrame extends JFrame {
         JPanel topButtons = new JPanel(new FlowLayout(FlowLayout.LEFT));
         topButtons.add(refreshButton);
         topButtons.add(cancelButton);
+        topButtons.add(new JLabel("  Dates from"));
+        topButtons.add(fromDateField);
+        topButtons.add(new JLabel("to"));
+        topButtons.add(toDateField);
 
 
         // Create/Update form panel (grid)
@@ -120,9 +130,9 @@ public class AppointmentTableFrame extends JFrame {
         add(bottomPanel, BorderLayout.SOUTH);
     }
 
-    public void setAppointments(List<Appointment> appointments) {
+    public void setAppointments(List<? extends AppointmentRecord> appointments) {
         tableModel.setRowCount(0);
-        for (Appointment a : appointments) {
+        for (AppointmentRecord a : appointments) {
             tableModel.addRow(new Object[]{
                     a.getAppointmentId(),
                     a.getPatientId(),
@@ -146,6 +156,16 @@ public class AppointmentTableFrame extends JFrame {
         return id == null ? null : id.toString();
     }
 
+    /** appointment_ids of all selected rows (empty if none) */
+    public List<String> getSelectedAppointmentIds() {
+        List<String> ids = new ArrayList<>();
+        for (int row : table.getSelectedRows()) {
+            Object id = tableModel.getValueAt(row, 0);
+            if (id != null) ids.add(id.toString());
+        }
+        return ids;
+    }
+
     /**
      * Get selected row values needed to populate the form.
      * Returns null if no selection.
@@ -174,6 +194,10 @@ public class AppointmentTableFrame extends JFrame {
         statusLabel.setText(message);
     }
 
+    // Date filter getters (blank = open end)
+    public String getFromDateInput() { return fromDateField.getText().trim(); }
+    public String getToDateInput() { return toDateField.getText().trim(); }
+
     // Form getters
     public String getPatientIdInput() { return patientIdField.getText().trim(); }
     public String getClinicianIdInput() { return clinicianIdField.getText().trim(); }
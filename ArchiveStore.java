@@ -0,0 +1,307 @@
+package repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * ArchiveStore (cold rows of one table, e.g. appointments.csv.archive/)
+ * - Rows moved out of the CSV by the Archiver live in read-only segments 000001.csv.gz, 000002.csv.gz, ...
+ *   Each segment is a CSV (header first) written as a chain of GZIP members of ~BLOCK_BYTES
+ *   uncompressed each; gunzip reads it as one file.
+ * - 000001.idx maps every appointment_id/referral_id in the segment to the byte offset of its
+ *   GZIP member, so find(id) decompresses one block instead of the whole segment.
+ * - The ID -> block map of all segments is kept in memory (a few bytes per cold row);
+ *   it is reloaded when another process adds a segment.
+ * - Segments are written to a temp name and renamed into place after the index, so a crash
+ *   never leaves a half-visible segment. Already archived IDs are skipped, so re-archiving is harmless.
+ * - Appends from every process sharing data/ are serialized by an OS lock on archive.lock: the next
+ *   segment number is picked, written and renamed under it, and an existing segment is never replaced.
+ */
+public final class ArchiveStore {
+
+    private static final Map<Path, ArchiveStore> INSTANCES = new ConcurrentHashMap<>();
+
+    private static final int MAGIC = 0x41494458; // "AIDX"
+    private static final int BLOCK_BYTES = 64 * 1024;
+    private static final String SEGMENT = ".csv.gz";
+    private static final String INDEX = ".idx";
+    private static final String LOCK = "archive.lock";
+
+    private final Path csvPath;
+    private final Path dir;
+
+    // id -> segment number << 40 | block offset; segments known when it was loaded
+    private final Map<String, Long> blocks = new HashMap<>();
+    private final List<Integer> segments = new ArrayList<>();
+    private boolean loaded;
+
+    private ArchiveStore(Path csvPath) {
+        this.csvPath = csvPath;
+        this.dir = csvPath.resolveSibling(csvPath.getFileName() + ".archive");
+    }
+
+    /** Shared archive of a CSV (the directory is created on the first append). */
+    public static ArchiveStore forTable(Path csvPath) {
+        Path key = csvPath.toAbsolutePath().normalize();
+        return INSTANCES.computeIfAbsent(key, ArchiveStore::new);
+    }
+
+    /** Archive of a CSV in a directory that is renamed afterwards (split): not shared, so nothing stale is kept. */
+    static ArchiveStore unshared(Path csvPath) {
+        return new ArchiveStore(csvPath);
+    }
+
+    public Path getArchiveDir() {
+        return dir;
+    }
+
+    /** Number of archived rows. */
+    public synchronized int size() throws IOException {
+        refresh();
+        return blocks.size();
+    }
+
+    /** Every archived ID (IdSequence recovery, so archived IDs are never handed out again). */
+    public synchronized List<String> ids() throws IOException {
+        refresh();
+        return new ArrayList<>(blocks.keySet());
+    }
+
+    public synchronized boolean contains(String id) throws IOException {
+        refresh();
+        return blocks.containsKey(id);
+    }
+
+    /** The archived row with this ID (one block decompressed), or null. */
+    public synchronized String[] find(String id) throws IOException {
+        refresh();
+        Long at = blocks.get(id);
+        if (at == null) return null;
+
+        int segment = (int) (at >>> 40);
+        long offset = at & ((1L << 40) - 1);
+        try (FileChannel ch = FileChannel.open(segmentPath(segment), StandardOpenOption.READ);
+             CsvReader reader = reader(Channels.newInputStream(ch.position(offset)), Projection.ALL)) {
+            CsvRow row;
+            while ((row = reader.next()) != null) {
+                if (row.get(0).equals(id)) return row.toArray();
+            }
+        }
+        return null;
+    }
+
+    /** Streams every archived row (headers skipped), oldest segment first. */
+    public void forEachRow(Projection projection, RowHandler handler) throws IOException {
+        List<Integer> snapshot;
+        synchronized (this) {
+            refresh();
+            snapshot = new ArrayList<>(segments);
+        }
+        for (int segment : snapshot) {
+            try (CsvReader reader = reader(Files.newInputStream(segmentPath(segment)), projection)) {
+                CsvRow row = reader.next(); // header
+                if (row == null) continue;
+                while ((row = reader.next()) != null) handler.onRow(row);
+            } catch (NoSuchFileException e) {
+                // removed by hand; nothing to read
+            }
+        }
+    }
+
+    /** Maps every archived row through the mapper (null results dropped). */
+    public <T> List<T> mapRows(Projection projection, RowMapper<T> mapper) throws IOException {
+        List<T> out = new ArrayList<>();
+        forEachRow(projection, r -> {
+            T item = mapper.map(r);
+            if (item != null) out.add(item);
+        });
+        return out;
+    }
+
+    /**
+     * Writes the rows (those not archived yet) as one new segment, with the table's CSV header.
+     * Returns once the segment and its index are durable and visible; returns the number of rows written.
+     */
+    synchronized int append(List<String[]> rows) throws IOException {
+        if (rows.isEmpty()) return 0;
+        Files.createDirectories(dir);
+        try (FileChannel lockFile = FileChannel.open(dir.resolve(LOCK), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = lockFile.lock();
+            try {
+                return appendLocked(rows);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /** append() with archive.lock held: nobody else can be writing a segment now. */
+    private int appendLocked(List<String[]> rows) throws IOException {
+        refresh();
+        List<String[]> fresh = new ArrayList<>(rows.size());
+        for (String[] r : rows) {
+            if (!blocks.containsKey(r[0])) fresh.add(r);
+        }
+        if (fresh.isEmpty()) return 0;
+        String[] header = header();
+
+        int segment = segments.isEmpty() ? 1 : segments.get(segments.size() - 1) + 1;
+        if (Files.exists(segmentPath(segment))) {
+            throw new IOException("Archive segment " + segmentPath(segment) + " already exists");
+        }
+        Path segTmp = dir.resolve(name(segment) + SEGMENT + ".tmp");
+        Map<String, Long> offsets = new HashMap<>();
+
+        try (FileChannel ch = FileChannel.open(segTmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            StringBuilder block = new StringBuilder(BLOCK_BYTES + 1024);
+            List<String> blockIds = new ArrayList<>();
+            block.append(CsvUtil.toCsvLine(header)).append('\n');
+
+            for (String[] r : fresh) {
+                block.append(CsvUtil.toCsvLine(r)).append('\n');
+                blockIds.add(r[0]);
+                if (block.length() >= BLOCK_BYTES) {
+                    writeBlock(ch, block, blockIds, segment, offsets);
+                }
+            }
+            if (block.length() > 0) writeBlock(ch, block, blockIds, segment, offsets);
+            ch.force(true);
+        }
+
+        // Index first, then the segment: a segment is only ever visible with its index.
+        // (An index without its segment is a crashed append's; it is overwritten here.)
+        writeIndex(segment, offsets);
+        Files.move(segTmp, segmentPath(segment), StandardCopyOption.ATOMIC_MOVE);
+
+        blocks.putAll(offsets);
+        segments.add(segment);
+        return fresh.size();
+    }
+
+    /** Header row of the live CSV. */
+    private String[] header() throws IOException {
+        try (CsvReader reader = new CsvReader(new InputStreamReader(Files.newInputStream(csvPath), StandardCharsets.UTF_8))) {
+            CsvRow row = reader.next();
+            if (row == null) throw new IOException("No header in " + csvPath);
+            return row.toArray();
+        }
+    }
+
+    // ------------------- segment files -------------------
+
+    /** One GZIP member holding the buffered lines; records where it starts for each of its IDs. */
+    private static void writeBlock(FileChannel ch, StringBuilder block, List<String> blockIds,
+                                   int segment, Map<String, Long> offsets) throws IOException {
+        long start = ch.position();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(block.length() / 4);
+        try (Writer w = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+            w.append(block);
+        }
+        ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+        while (buf.hasRemaining()) ch.write(buf);
+
+        for (String id : blockIds) offsets.put(id, (long) segment << 40 | start);
+        block.setLength(0);
+        blockIds.clear();
+    }
+
+    private void writeIndex(int segment, Map<String, Long> offsets) throws IOException {
+        Path tmp = dir.resolve(name(segment) + INDEX + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(offsets.size());
+            for (Map.Entry<String, Long> e : offsets.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue() & ((1L << 40) - 1));
+            }
+        }
+        Files.move(tmp, dir.resolve(name(segment) + INDEX), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Loads the indexes of segments this instance has not seen yet (other processes may add some). */
+    private void refresh() throws IOException {
+        if (!Files.isDirectory(dir)) return;
+
+        List<Integer> onDisk = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SEGMENT)) {
+            for (Path f : files) {
+                int segment = segmentOf(f.getFileName().toString());
+                if (segment >= 0) onDisk.add(segment); // anything else ("copy.csv.gz") is not ours
+            }
+        }
+        if (loaded && onDisk.size() == segments.size()) return;
+        loaded = true;
+
+        onDisk.sort(null);
+        for (int segment : onDisk) {
+            if (segments.contains(segment)) continue;
+            readIndex(segment);
+            segments.add(segment);
+        }
+        segments.sort(null);
+    }
+
+    private void readIndex(int segment) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(dir.resolve(name(segment) + INDEX))))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not an archive index: " + name(segment) + INDEX);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String id = in.readUTF();
+                blocks.put(id, (long) segment << 40 | in.readLong());
+            }
+        }
+    }
+
+    private Path segmentPath(int segment) {
+        return dir.resolve(name(segment) + SEGMENT);
+    }
+
+    /** Segment number of a "000042.csv.gz" file name, or -1 if the name is not a segment's. */
+    private static int segmentOf(String fileName) {
+        String digits = fileName.substring(0, fileName.length() - SEGMENT.length());
+        if (digits.isEmpty() || digits.length() > 9) return -1;
+        for (int i = 0; i < digits.length(); i++) {
+            char c = digits.charAt(i);
+            if (c < '0' || c > '9') return -1;
+        }
+        return Integer.parseInt(digits);
+    }
+
+    private static String name(int segment) {
+        String n = Integer.toString(segment);
+        return "000000".substring(Math.min(6, n.length())) + n;
+    }
+
+    private static CsvReader reader(InputStream in, Projection projection) throws IOException {
+        return new CsvReader(new InputStreamReader(new GZIPInputStream(in, 8192), StandardCharsets.UTF_8), projection);
+    }
+}
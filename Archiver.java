@@ -0,0 +1,70 @@
+package repository;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Archiver (background hot/cold tiering)
+ * - One daemon thread that periodically asks every registered table to move its cold rows
+ *   (finished - Completed/Cancelled - and dated before today minus the horizon) into its ArchiveStore.
+ * - The CSVs then only hold the working set, which loadAll / the in-memory indexes stay fast on.
+ *
+ * Config (system properties, read when the first table registers):
+ * - archive.horizonDays     : rows older than this many days are cold; 0 (default) = archiver off
+ * - archive.intervalMinutes : time between passes (default 60; the first pass runs a minute after start)
+ */
+public final class Archiver {
+
+    /** One table's "move rows finished before this date into the archive"; returns rows moved. */
+    @FunctionalInterface
+    public interface Task {
+        int archiveBefore(LocalDate cutoff) throws IOException;
+    }
+
+    private static final Map<String, Task> TASKS = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService scheduler;
+
+    private Archiver() {
+        // Utility class: prevent instantiation
+    }
+
+    /** Configured horizon in days (0 = archiving disabled). */
+    public static int horizonDays() {
+        return Math.max(0, Integer.getInteger("archive.horizonDays", 0));
+    }
+
+    /** Adds a table (by name, e.g. its CSV path) and starts the thread on first use, if a horizon is set. */
+    public static synchronized void register(String table, Task task) {
+        if (horizonDays() == 0) return;
+        TASKS.put(table, task);
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "csv-archiver");
+                t.setDaemon(true);
+                return t;
+            });
+            long interval = Math.max(1, Long.getLong("archive.intervalMinutes", 60L));
+            scheduler.scheduleWithFixedDelay(Archiver::runOnce, 1, interval, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * One pass over all tables; failures are reported and retried on the next pass.
+     * Runtime failures are caught per table too: one escaping would stop the scheduled task for good.
+     */
+    static void runOnce() {
+        LocalDate cutoff = LocalDate.now().minusDays(horizonDays());
+        for (Map.Entry<String, Task> e : TASKS.entrySet()) {
+            try {
+                e.getValue().archiveBefore(cutoff);
+            } catch (IOException | RuntimeException ex) {
+                System.err.println("Archiving failed for " + e.getKey() + ": " + ex);
+            }
+        }
+    }
+}
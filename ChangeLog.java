@@ -0,0 +1,434 @@
+package repository;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * ChangeLog (append-only, one per table: "<file>.csv.log")
+ * - Creates, updates and patches are appended as ONE line each (constant cost per write).
+ * - Reads merge the base CSV with the log (mapRows), so callers see the latest state.
+ * - compactNow() folds the log into a fresh CSV snapshot and swaps it in with an atomic rename.
+ *
+ * Log line format (itself CSV, so quoting rules are the same as the table):
+ *   C,<full row>                 -> created row
+ *   U,<full row>                 -> replaced row (matched by first column)
+ *   P,<id>,<col>,<value>,...     -> patch of single columns (e.g. cancel = status + last_modified)
+ *   D,<id>                       -> row removed (e.g. moved to another partition)
+ *
+ * Compaction (see LogCompactor for the background trigger):
+ * 1) rotate "x.csv.log" -> "x.csv.log.compacting" (new writes go to a fresh log)
+ * 2) write base CSV + rotated log into "x.csv.snapshot.tmp" (no lock held, reads/writes continue)
+ * 3) rename tmp -> "x.csv" and delete the rotated log under the swap lock
+ *
+ * One instance per CSV path (forTable), so every repository object shares the same locks.
+ */
+public final class ChangeLog {
+
+    private static final Map<Path, ChangeLog> INSTANCES = new ConcurrentHashMap<>();
+
+    static final String OP_CREATE = "C";
+    static final String OP_UPDATE = "U";
+    static final String OP_PATCH = "P";
+    static final String OP_DELETE = "D";
+
+    private final Path csvPath;
+    private final Path logPath;
+    private final Path compactingPath;
+
+    // Readers hold the read lock across "base + logs"; rotation and swap take the write lock
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private final Object appendLock = new Object();
+    private final Object compactLock = new Object();
+
+    // IDs created / deleted through the log (not yet, or already, folded into the CSV)
+    private Set<String> createdIds;
+    private Set<String> deletedIds;
+
+    private ChangeLog(Path csvPath) {
+        this.csvPath = csvPath;
+        this.logPath = csvPath.resolveSibling(csvPath.getFileName() + ".log");
+        this.compactingPath = csvPath.resolveSibling(csvPath.getFileName() + ".log.compacting");
+    }
+
+    /** Shared ChangeLog for a CSV file. */
+    public static ChangeLog forTable(Path csvPath) {
+        return INSTANCES.computeIfAbsent(csvPath.toAbsolutePath().normalize(), ChangeLog::new);
+    }
+
+    public Path getCsvPath() {
+        return csvPath;
+    }
+
+    // ------------------- writes -------------------
+
+    public void logCreate(String[] row) throws IOException {
+        append(OP_CREATE, row);
+        synchronized (appendLock) {
+            createdIds().add(row[0]);
+            deletedIds.remove(row[0]); // moved back (partitions)
+        }
+    }
+
+    /** Logs many created rows with ONE append (bulk import). */
+    public void logCreateAll(List<String[]> rows) throws IOException {
+        if (rows.isEmpty()) return;
+        byte[] bytes = logLines(OP_CREATE, rows);
+        synchronized (appendLock) {
+            write(bytes);
+            for (String[] row : rows) {
+                createdIds().add(row[0]);
+                deletedIds.remove(row[0]);
+            }
+        }
+    }
+
+    public void logUpdate(String[] row) throws IOException {
+        append(OP_UPDATE, row);
+    }
+
+    /** Logs many replaced rows with ONE append (batch update/cancel). */
+    public void logUpdateAll(List<String[]> rows) throws IOException {
+        if (rows.isEmpty()) return;
+        byte[] bytes = logLines(OP_UPDATE, rows);
+        synchronized (appendLock) {
+            write(bytes);
+        }
+    }
+
+    /**
+     * Logs new values for single columns of one row.
+     * columns[i] receives values[i].
+     */
+    public void logPatch(String id, int[] columns, String[] values) throws IOException {
+        String[] cells = new String[1 + columns.length * 2];
+        cells[0] = id;
+        for (int i = 0; i < columns.length; i++) {
+            cells[1 + i * 2] = String.valueOf(columns[i]);
+            cells[2 + i * 2] = values[i];
+        }
+        append(OP_PATCH, cells);
+    }
+
+    /** Logs the removal of a row; reads skip it from now on and compaction drops it. */
+    public void logDelete(String id) throws IOException {
+        append(OP_DELETE, new String[]{id});
+        synchronized (appendLock) {
+            scanIds();
+            deletedIds.add(id);
+        }
+    }
+
+    /** Logs the removal of many rows with ONE append (e.g. rows moved to the archive). */
+    public void logDeleteAll(Collection<String> ids) throws IOException {
+        if (ids.isEmpty()) return;
+        List<String[]> rows = new ArrayList<>(ids.size());
+        for (String id : ids) rows.add(new String[]{id});
+        byte[] bytes = logLines(OP_DELETE, rows);
+        synchronized (appendLock) {
+            write(bytes);
+            scanIds();
+            deletedIds.addAll(ids);
+        }
+    }
+
+    /** True if the ID was created through this log (it may not be in the base CSV yet). */
+    public boolean wasCreated(String id) throws IOException {
+        synchronized (appendLock) {
+            return createdIds().contains(id);
+        }
+    }
+
+    /** True if the row was deleted through this log (it may still be in the base CSV). */
+    public boolean wasDeleted(String id) throws IOException {
+        synchronized (appendLock) {
+            scanIds();
+            return deletedIds.contains(id);
+        }
+    }
+
+    private void append(String op, String[] cells) throws IOException {
+        byte[] bytes = logLine(op, cells).getBytes(StandardCharsets.UTF_8);
+        synchronized (appendLock) {
+            write(bytes);
+        }
+    }
+
+    private static String logLine(String op, String[] cells) {
+        String[] line = new String[cells.length + 1];
+        line[0] = op;
+        System.arraycopy(cells, 0, line, 1, cells.length);
+        return CsvUtil.toCsvLine(line) + "\n";
+    }
+
+    private static byte[] logLines(String op, List<String[]> rows) {
+        StringBuilder sb = new StringBuilder(rows.size() * 128);
+        for (String[] row : rows) sb.append(logLine(op, row));
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Caller holds appendLock. */
+    private void write(byte[] bytes) throws IOException {
+        try (FileChannel ch = FileChannel.open(logPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            while (buf.hasRemaining()) ch.write(buf);
+        }
+    }
+
+    // ------------------- reads -------------------
+
+    /**
+     * Maps every current row (base CSV with the log applied, then created rows) through the mapper.
+     */
+    public <T> List<T> mapRows(RowMapper<T> mapper) throws IOException {
+        return mapRows(Projection.ALL, mapper);
+    }
+
+    /**
+     * Same as mapRows(RowMapper) with a projection on the base CSV.
+     * Rows touched by the log are passed in full (they are few).
+     */
+    public <T> List<T> mapRows(Projection projection, RowMapper<T> mapper) throws IOException {
+        swapLock.readLock().lock();
+        try {
+            Map<String, Change> overlay = new LinkedHashMap<>();
+            readLog(compactingPath, overlay);
+            readLog(logPath, overlay);
+
+            if (overlay.isEmpty()) return CsvUtil.mapRows(csvPath, projection, mapper);
+
+            Set<String> seen = ConcurrentHashMap.newKeySet();
+            List<T> out = CsvUtil.mapRows(csvPath, projection, r -> {
+                Change c = overlay.get(r.get(0));
+                if (c == null) return mapper.map(r);
+                seen.add(c.id);
+                return c.deleted ? null : mapper.map(CsvRow.of(c.applyTo(r.toArray())));
+            });
+
+            for (Change c : overlay.values()) {
+                if (c.row == null || seen.contains(c.id)) continue;
+                T item = mapper.map(CsvRow.of(c.row));
+                if (item != null) out.add(item);
+            }
+            return out;
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Streams every current row, in file order, to the handler (sequential; no List is built).
+     * Same merge as mapRows: log applied over the base CSV, created rows last.
+     */
+    public void forEachRow(RowHandler handler) throws IOException {
+        swapLock.readLock().lock();
+        try {
+            Map<String, Change> overlay = new LinkedHashMap<>();
+            readLog(compactingPath, overlay);
+            readLog(logPath, overlay);
+
+            if (overlay.isEmpty()) {
+                CsvUtil.forEachRow(csvPath, handler);
+                return;
+            }
+
+            Set<String> seen = new HashSet<>();
+            CsvUtil.forEachRow(csvPath, r -> {
+                Change c = overlay.get(r.get(0));
+                if (c == null) {
+                    handler.onRow(r);
+                    return;
+                }
+                seen.add(c.id);
+                if (!c.deleted) handler.onRow(CsvRow.of(c.applyTo(r.toArray())));
+            });
+
+            for (Change c : overlay.values()) {
+                if (c.row == null || seen.contains(c.id)) continue;
+                handler.onRow(CsvRow.of(c.row));
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /** Current size of the active log in bytes (0 if absent). */
+    public long pendingBytes() throws IOException {
+        return Files.exists(logPath) ? Files.size(logPath) : 0;
+    }
+
+    // ------------------- compaction -------------------
+
+    /**
+     * Folds the log into a fresh CSV snapshot. Safe to call while other threads read and write.
+     */
+    public void compactNow() throws IOException {
+        synchronized (compactLock) {
+            // 1) rotate (unless a previous run died after rotating)
+            if (!Files.exists(compactingPath)) {
+                swapLock.writeLock().lock();
+                try {
+                    synchronized (appendLock) {
+                        if (!Files.exists(logPath) || Files.size(logPath) == 0) return;
+                        Files.move(logPath, compactingPath, StandardCopyOption.ATOMIC_MOVE);
+                    }
+                } finally {
+                    swapLock.writeLock().unlock();
+                }
+            }
+
+            // 2) merge base + rotated log into a temp snapshot
+            Map<String, Change> overlay = new LinkedHashMap<>();
+            readLog(compactingPath, overlay);
+
+            Path tmp = csvPath.resolveSibling(csvPath.getFileName() + ".snapshot.tmp");
+            writeSnapshot(tmp, overlay);
+
+            // 3) swap
+            swapLock.writeLock().lock();
+            try {
+                Files.move(tmp, csvPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.delete(compactingPath);
+                FileStamp.markRewritten(csvPath);
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void writeSnapshot(Path tmp, Map<String, Change> overlay) throws IOException {
+        Set<String> seen = new HashSet<>();
+
+        try (CsvReader reader = new CsvReader(new InputStreamReader(Files.newInputStream(csvPath), StandardCharsets.UTF_8));
+             BufferedWriter bw = Files.newBufferedWriter(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            CsvRow row = reader.next();
+            if (row == null) throw new IOException("Missing header in " + csvPath);
+            bw.write(CsvUtil.toCsvLine(row.toArray()));
+
+            while ((row = reader.next()) != null) {
+                if (row.get(0).isBlank()) continue; // slot freed by RowOffsetIndex
+
+                String[] cells = row.toArray();
+                cells[cells.length - 1] = cells[cells.length - 1].stripTrailing();
+                Change c = overlay.get(cells[0]);
+                if (c != null) {
+                    seen.add(c.id);
+                    if (c.deleted) continue;
+                    cells = c.applyTo(cells);
+                }
+                bw.newLine();
+                bw.write(CsvUtil.toCsvLine(cells));
+            }
+
+            for (Change c : overlay.values()) {
+                if (c.row == null || seen.contains(c.id)) continue;
+                bw.newLine();
+                bw.write(CsvUtil.toCsvLine(c.row));
+            }
+        }
+    }
+
+    // ------------------- log parsing -------------------
+
+    private static void readLog(Path log, Map<String, Change> overlay) throws IOException {
+        if (!Files.exists(log)) return;
+
+        try (CsvReader reader = new CsvReader(new InputStreamReader(Files.newInputStream(log), StandardCharsets.UTF_8))) {
+            CsvRow r;
+            while ((r = reader.next()) != null) {
+                if (r.size() < 2) continue;
+
+                String op = r.get(0);
+                String id = r.get(1);
+                Change c = overlay.computeIfAbsent(id, Change::new);
+
+                if (OP_CREATE.equals(op) || OP_UPDATE.equals(op)) {
+                    String[] row = new String[r.size() - 1];
+                    for (int i = 1; i < r.size(); i++) row[i - 1] = r.get(i);
+                    c.row = row;
+                    c.patches.clear();
+                    c.deleted = false;
+                } else if (OP_DELETE.equals(op)) {
+                    c.row = null;
+                    c.patches.clear();
+                    c.deleted = true;
+                } else if (OP_PATCH.equals(op) && !c.deleted) {
+                    for (int i = 2; i + 1 < r.size(); i += 2) {
+                        int col = Integer.parseInt(r.get(i));
+                        String value = r.get(i + 1);
+                        if (c.row != null) {
+                            if (col < c.row.length) c.row[col] = value;
+                        } else {
+                            c.patches.put(col, value);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private Set<String> createdIds() throws IOException {
+        scanIds();
+        return createdIds;
+    }
+
+    /** Loads createdIds / deletedIds from the logs on first use. Caller holds appendLock. */
+    private void scanIds() throws IOException {
+        if (createdIds != null) return;
+        Set<String> created = new HashSet<>();
+        Set<String> deleted = new HashSet<>();
+        for (Path log : new Path[]{compactingPath, logPath}) {
+            if (!Files.exists(log)) continue;
+            try (CsvReader reader = new CsvReader(new InputStreamReader(Files.newInputStream(log), StandardCharsets.UTF_8))) {
+                CsvRow r;
+                while ((r = reader.next()) != null) {
+                    if (r.size() < 2) continue;
+                    if (r.cellEquals(0, OP_CREATE)) {
+                        created.add(r.get(1));
+                        deleted.remove(r.get(1));
+                    } else if (r.cellEquals(0, OP_DELETE)) {
+                        deleted.add(r.get(1));
+                    }
+                }
+            }
+        }
+        createdIds = created;
+        deletedIds = deleted;
+    }
+
+    /** Net effect of the log on one record. */
+    private static final class Change {
+        final String id;
+        String[] row;                                        // full row (C/U), patches already applied
+        boolean deleted;                                     // D: row is gone
+        final Map<Integer, String> patches = new LinkedHashMap<>(); // only when no full row
+
+        Change(String id) {
+            this.id = id;
+        }
+
+        String[] applyTo(String[] base) {
+            if (row != null) return row.clone();
+            String[] out = base.clone();
+            for (Map.Entry<Integer, String> p : patches.entrySet()) {
+                if (p.getKey() < out.length) out[p.getKey()] = p.getValue();
+            }
+            return out;
+        }
+    }
+}
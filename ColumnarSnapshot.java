@@ -0,0 +1,732 @@
+package repository;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ColumnarSnapshot ("<file>.csv.snap", read-optimized cache of a CSV)
+ * - One section per column, memory-mapped on open (opening costs a header read, not a parse).
+ * - Column encodings are chosen from the data when the snapshot is built:
+ *     DATE : int epoch-day per row            (every value is yyyy-MM-dd or blank)
+ *     TIME : short minute-of-day per row      (every value is HH:mm or blank)
+ *     INT  : int per row                      (every value is a plain integer or blank)
+ *     DICT : small dictionary + 1/2/4-byte code per row (low-cardinality text)
+ *     TEXT : UTF-8 string heap + long offsets (free text)
+ * - The header records the CSV size + mtime + a hash of its last bytes (TableCache.hashBefore)
+ *   it was built from; a mismatch means "stale". The hash only covers the end of the file, so a
+ *   same-length patch further up within the mtime resolution is not visible in the stamp: in-place
+ *   writers of this process drop the snapshot instead (FileStamp.markRewritten -> invalidate),
+ *   and a build that overlaps such a write is thrown away.
+ * - A column section must fit one mapping (< 2 GB). A CSV that needs a bigger one is marked
+ *   unsupported for the life of the process: no snapshot, no more rebuild attempts.
+ *
+ * The CSV stays the source of truth. Stale snapshots are never read; CsvUtil.mapRows()
+ * falls back to parsing the CSV and schedules a (debounced) background rebuild.
+ * Rows with fewer cells than the header (e.g. blanked slots) are not copied into the snapshot.
+ */
+public final class ColumnarSnapshot {
+
+    private static final int MAGIC = 0x43534E50; // "CSNP"
+    private static final int VERSION = 2;
+
+    static final byte TYPE_DATE = 1;
+    static final byte TYPE_TIME = 2;
+    static final byte TYPE_INT = 3;
+    static final byte TYPE_DICT = 4;
+    static final byte TYPE_TEXT = 5;
+
+    static final int BLANK_INT = Integer.MIN_VALUE;
+    static final short BLANK_TIME = -1;
+
+    /** Text columns with at most this many distinct values are dictionary-encoded. */
+    private static final int DICT_MAX = 4096;
+
+    /** Rows per task when mapping a large snapshot in parallel. */
+    private static final int ROWS_PER_TASK = 100_000;
+
+    private static final long REBUILD_DELAY_MILLIS = 2000;
+
+    // Open snapshots keyed by CSV path (reused while still fresh)
+    private static final Map<Path, ColumnarSnapshot> OPEN = new ConcurrentHashMap<>();
+    private static final Map<Path, ScheduledFuture<?>> PENDING_REBUILDS = new ConcurrentHashMap<>();
+    // CSVs whose snapshot would need a section too large to map (never built / retried again)
+    private static final Set<Path> UNSUPPORTED = ConcurrentHashMap.newKeySet();
+    private static ScheduledExecutorService rebuilder;
+
+    private final long csvSize;
+    private final long csvMtime;
+    private final long csvTailHash;
+    private final int rowCount;
+    private final String[] names;
+    private final Column[] columns;
+
+    /** One mapped column. */
+    private static final class Column {
+        byte type;
+        ByteBuffer data;        // DATE/TIME/INT values, DICT codes, TEXT heap
+        ByteBuffer offsets;     // TEXT only: long[rowCount + 1]
+        int codeWidth;          // DICT only
+        String[] dictionary;    // DICT only
+    }
+
+    private ColumnarSnapshot(long csvSize, long csvMtime, long csvTailHash, int rowCount,
+                             String[] names, Column[] columns) {
+        this.csvSize = csvSize;
+        this.csvMtime = csvMtime;
+        this.csvTailHash = csvTailHash;
+        this.rowCount = rowCount;
+        this.names = names;
+        this.columns = columns;
+    }
+
+    public static Path snapshotPath(Path csvPath) {
+        return csvPath.resolveSibling(csvPath.getFileName() + ".snap");
+    }
+
+    // ------------------- open -------------------
+
+    /**
+     * Returns the snapshot for a CSV if one exists and matches the CSV's current size/mtime/tail hash,
+     * otherwise null.
+     */
+    public static ColumnarSnapshot openIfFresh(Path csvPath) throws IOException {
+        Path key = csvPath.toAbsolutePath().normalize();
+        if (UNSUPPORTED.contains(key)) return null;
+        long size = Files.size(csvPath);
+        long mtime = Files.getLastModifiedTime(csvPath).toMillis();
+        long tailHash = TableCache.hashBefore(csvPath, size);
+
+        ColumnarSnapshot open = OPEN.get(key);
+        if (open != null && open.matches(size, mtime, tailHash)) return open;
+
+        Path snap = snapshotPath(csvPath);
+        if (!Files.exists(snap)) return null;
+
+        ColumnarSnapshot loaded = map(snap, key);
+        if (loaded == null || !loaded.matches(size, mtime, tailHash)) return null;
+
+        OPEN.put(key, loaded);
+        return loaded;
+    }
+
+    private boolean matches(long size, long mtime, long tailHash) {
+        return csvSize == size && csvMtime == mtime && csvTailHash == tailHash;
+    }
+
+    /** Forgets the CSV's snapshot, open or on disk (rows were rewritten in place). */
+    static void invalidate(Path csvPath) {
+        Path key = csvPath.toAbsolutePath().normalize();
+        OPEN.remove(key);
+        try {
+            Files.deleteIfExists(snapshotPath(key));
+        } catch (IOException e) {
+            // still stale on disk; refuse to serve it from this process at least
+            UNSUPPORTED.add(key);
+        }
+    }
+
+    /** True once a CSV was found too large to snapshot (CsvUtil then always parses it). */
+    public static boolean isUnsupported(Path csvPath) {
+        return UNSUPPORTED.contains(csvPath.toAbsolutePath().normalize());
+    }
+
+    private static ColumnarSnapshot map(Path snap, Path key) throws IOException {
+        try (FileChannel ch = FileChannel.open(snap, StandardOpenOption.READ);
+             DataInputStream in = new DataInputStream(Files.newInputStream(snap))) {
+
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+
+            long csvSize = in.readLong();
+            long csvMtime = in.readLong();
+            long csvTailHash = in.readLong();
+            int rows = in.readInt();
+            int cols = in.readInt();
+
+            String[] names = new String[cols];
+            Column[] columns = new Column[cols];
+
+            for (int c = 0; c < cols; c++) {
+                names[c] = in.readUTF();
+                Column col = new Column();
+                col.type = in.readByte();
+                long offset = in.readLong();
+                long length = in.readLong();
+                if (length > Integer.MAX_VALUE) { // too large to map as one section
+                    UNSUPPORTED.add(key);
+                    return null;
+                }
+
+                MappedByteBuffer section = ch.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                attach(col, section, rows);
+                columns[c] = col;
+            }
+            return new ColumnarSnapshot(csvSize, csvMtime, csvTailHash, rows, names, columns);
+        }
+    }
+
+    /** Splits a mapped section into the views a column type needs. */
+    private static void attach(Column col, ByteBuffer section, int rows) {
+        if (col.type == TYPE_TEXT) {
+            int offsetsBytes = (rows + 1) * 8;
+            col.offsets = section.slice(0, offsetsBytes);
+            col.data = section.slice(offsetsBytes, section.limit() - offsetsBytes);
+
+        } else if (col.type == TYPE_DICT) {
+            int dictSize = section.getInt(0);
+            col.codeWidth = section.get(4);
+            int pos = 5;
+
+            int[] starts = new int[dictSize + 1];
+            for (int i = 0; i <= dictSize; i++) {
+                starts[i] = section.getInt(pos);
+                pos += 4;
+            }
+            int heapStart = pos;
+            col.dictionary = new String[dictSize];
+            for (int i = 0; i < dictSize; i++) {
+                byte[] b = new byte[starts[i + 1] - starts[i]];
+                section.get(heapStart + starts[i], b);
+                col.dictionary[i] = new String(b, StandardCharsets.UTF_8);
+            }
+            int codesStart = heapStart + starts[dictSize];
+            col.data = section.slice(codesStart, section.limit() - codesStart);
+
+        } else {
+            col.data = section;
+        }
+    }
+
+    // ------------------- read API -------------------
+
+    public int rowCount() {
+        return rowCount;
+    }
+
+    public int columnCount() {
+        return names.length;
+    }
+
+    public String columnName(int col) {
+        return names[col];
+    }
+
+    /** Epoch day of a DATE cell (BLANK_INT if blank). */
+    public int epochDay(int row, int col) {
+        return columns[col].data.getInt(row * 4);
+    }
+
+    /** Minute of day of a TIME cell (BLANK_TIME if blank). */
+    public int minuteOfDay(int row, int col) {
+        return columns[col].data.getShort(row * 2);
+    }
+
+    /** Dictionary code of a DICT cell. */
+    public int dictCode(int row, int col) {
+        Column c = columns[col];
+        switch (c.codeWidth) {
+            case 1: return c.data.get(row) & 0xFF;
+            case 2: return c.data.getShort(row * 2) & 0xFFFF;
+            default: return c.data.getInt(row * 4);
+        }
+    }
+
+    /** Dictionary of a DICT column (code -> value), or null for other column types. */
+    public String[] dictionary(int col) {
+        return columns[col].dictionary;
+    }
+
+    /** Cell value rendered back to its CSV text. */
+    public String get(int row, int col) {
+        CsvRow r = new CsvRow();
+        r.startCell();
+        appendCell(r, row, col, new byte[64]);
+        r.endCell();
+        return r.get(0);
+    }
+
+    /**
+     * Maps every row through the mapper, in CSV order.
+     * Large snapshots are split into row ranges and mapped on the common ForkJoinPool.
+     */
+    public <T> List<T> mapRows(RowMapper<T> mapper) throws IOException {
+        return mapRows(Projection.ALL, mapper);
+    }
+
+    /**
+     * Same as mapRows(RowMapper) but only projected columns are decoded
+     * (free-text heaps of other columns are never touched).
+     */
+    public <T> List<T> mapRows(Projection projection, RowMapper<T> mapper) throws IOException {
+        if (rowCount <= ROWS_PER_TASK) return mapRange(0, rowCount, projection, mapper);
+
+        List<Callable<List<T>>> tasks = new ArrayList<>();
+        for (int start = 0; start < rowCount; start += ROWS_PER_TASK) {
+            int from = start;
+            int to = Math.min(rowCount, start + ROWS_PER_TASK);
+            tasks.add(() -> mapRange(from, to, projection, mapper));
+        }
+
+        List<T> out = new ArrayList<>(rowCount);
+        try {
+            for (Future<List<T>> f : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                out.addAll(f.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading snapshot", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+        return out;
+    }
+
+    private <T> List<T> mapRange(int from, int to, Projection projection, RowMapper<T> mapper) {
+        List<T> out = new ArrayList<>(to - from);
+        CsvRow row = new CsvRow();
+        byte[] scratch = new byte[256];
+
+        for (int i = from; i < to; i++) {
+            scratch = fill(row, i, projection, scratch);
+            T item = mapper.map(row);
+            if (item != null) out.add(item);
+        }
+        return out;
+    }
+
+    /** Decodes one snapshot row into a reusable CsvRow. */
+    private byte[] fill(CsvRow row, int r, Projection projection, byte[] scratch) {
+        row.reset();
+        for (int c = 0; c < columns.length; c++) {
+            row.startCell();
+            if (projection.includes(c)) scratch = appendCell(row, r, c, scratch);
+            row.endCell();
+        }
+        return scratch;
+    }
+
+    private byte[] appendCell(CsvRow row, int r, int c, byte[] scratch) {
+        Column col = columns[c];
+        switch (col.type) {
+            case TYPE_DATE: {
+                int day = col.data.getInt(r * 4);
+                if (day != BLANK_INT) appendDate(row, day);
+                break;
+            }
+            case TYPE_TIME: {
+                int minute = col.data.getShort(r * 2);
+                if (minute != BLANK_TIME) {
+                    append2(row, minute / 60);
+                    row.append(':');
+                    append2(row, minute % 60);
+                }
+                break;
+            }
+            case TYPE_INT: {
+                int v = col.data.getInt(r * 4);
+                if (v != BLANK_INT) appendString(row, Integer.toString(v));
+                break;
+            }
+            case TYPE_DICT:
+                appendString(row, col.dictionary[dictCode(r, c)]);
+                break;
+            default: {
+                long start = col.offsets.getLong(r * 8);
+                int len = (int) (col.offsets.getLong((r + 1) * 8) - start);
+                if (scratch.length < len) scratch = new byte[Math.max(len, scratch.length * 2)];
+                col.data.get((int) start, scratch, 0, len);
+
+                boolean ascii = true;
+                for (int i = 0; i < len; i++) {
+                    if (scratch[i] < 0) {
+                        ascii = false;
+                        break;
+                    }
+                }
+                if (ascii) {
+                    for (int i = 0; i < len; i++) row.append((char) scratch[i]);
+                } else {
+                    appendString(row, new String(scratch, 0, len, StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return scratch;
+    }
+
+    private static void appendDate(CsvRow row, int epochDay) {
+        LocalDate d = LocalDate.ofEpochDay(epochDay);
+        int y = d.getYear();
+        row.append((char) ('0' + y / 1000 % 10));
+        row.append((char) ('0' + y / 100 % 10));
+        row.append((char) ('0' + y / 10 % 10));
+        row.append((char) ('0' + y % 10));
+        row.append('-');
+        append2(row, d.getMonthValue());
+        row.append('-');
+        append2(row, d.getDayOfMonth());
+    }
+
+    private static void append2(CsvRow row, int v) {
+        row.append((char) ('0' + v / 10));
+        row.append((char) ('0' + v % 10));
+    }
+
+    private static void appendString(CsvRow row, String s) {
+        for (int i = 0; i < s.length(); i++) row.append(s.charAt(i));
+    }
+
+    // ------------------- background rebuild -------------------
+
+    /**
+     * Rebuilds the snapshot a short while after the last request for this CSV
+     * (several changes in a row cause one rebuild).
+     */
+    public static synchronized void scheduleRebuild(Path csvPath) {
+        if (rebuilder == null) {
+            rebuilder = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "csv-snapshot-builder");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        Path key = csvPath.toAbsolutePath().normalize();
+        if (UNSUPPORTED.contains(key)) return;
+        ScheduledFuture<?> previous = PENDING_REBUILDS.get(key);
+        if (previous != null && !previous.isDone()) return; // already queued
+
+        PENDING_REBUILDS.put(key, rebuilder.schedule(() -> {
+            try {
+                build(csvPath);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Snapshot rebuild failed for " + csvPath + ": " + e.getMessage());
+            }
+        }, REBUILD_DELAY_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    // ------------------- build -------------------
+
+    /**
+     * Builds "<file>.csv.snap" from the CSV (two streaming passes: infer types, then encode).
+     * Written to a temp file and renamed into place. If a column would not fit one mapping,
+     * no snapshot is written and the CSV is marked unsupported.
+     */
+    public static void build(Path csvPath) throws IOException {
+        long rewrites = FileStamp.rewrites(csvPath);
+        long size = Files.size(csvPath);
+        long mtime = Files.getLastModifiedTime(csvPath).toMillis();
+        long tailHash = TableCache.hashBefore(csvPath, size);
+
+        // Pass 1: header + per-column type inference
+        String[] header = readHeader(csvPath);
+        if (header == null) return;
+        int cols = header.length;
+
+        ColumnStats[] stats = new ColumnStats[cols];
+        for (int c = 0; c < cols; c++) stats[c] = new ColumnStats();
+        int[] rows = new int[1];
+
+        CsvUtil.forEachRow(csvPath, r -> {
+            if (r.size() < cols) return;
+            rows[0]++;
+            for (int c = 0; c < cols; c++) stats[c].observe(cellValue(r, c, cols));
+        });
+
+        // Pass 2: encode each column into its own temp file
+        Path dir = csvPath.toAbsolutePath().getParent();
+        ColumnWriter[] writers = new ColumnWriter[cols];
+        try {
+            for (int c = 0; c < cols; c++) writers[c] = new ColumnWriter(dir, stats[c].chooseType(rows[0]), stats[c]);
+
+            IOException[] failure = new IOException[1];
+            int[] written = new int[1];
+            CsvUtil.forEachRow(csvPath, r -> {
+                if (r.size() < cols || failure[0] != null) return;
+                try {
+                    for (int c = 0; c < cols; c++) writers[c].write(cellValue(r, c, cols));
+                    written[0]++;
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) throw failure[0];
+
+            // The CSV must not have changed while we were reading it
+            if (written[0] != rows[0] || Files.size(csvPath) != size
+                    || Files.getLastModifiedTime(csvPath).toMillis() != mtime
+                    || TableCache.hashBefore(csvPath, size) != tailHash
+                    || FileStamp.rewrites(csvPath) != rewrites) {
+                throw new IOException("CSV changed during snapshot build");
+            }
+
+            for (ColumnWriter w : writers) w.finish();
+
+            Path snap = snapshotPath(csvPath);
+            for (ColumnWriter w : writers) {
+                if (w.length() > Integer.MAX_VALUE) {
+                    UNSUPPORTED.add(csvPath.toAbsolutePath().normalize());
+                    Files.deleteIfExists(snap);
+                    return;
+                }
+            }
+
+            // Header size: fixed part + per-column (name, type, offset, length)
+            Path tmp = snap.resolveSibling(snap.getFileName() + ".tmp");
+            byte[] headerBytes = encodeHeader(size, mtime, tailHash, rows[0], header, writers, 0);
+            headerBytes = encodeHeader(size, mtime, tailHash, rows[0], header, writers, headerBytes.length);
+
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                out.write(ByteBuffer.wrap(headerBytes));
+                for (ColumnWriter w : writers) w.copyTo(out);
+            }
+            Files.move(tmp, snap, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            // A rewrite that landed after the check above already ran invalidate(): do it again
+            if (FileStamp.rewrites(csvPath) != rewrites) invalidate(csvPath);
+        } finally {
+            for (ColumnWriter w : writers) {
+                if (w != null) w.deleteTemps();
+            }
+        }
+    }
+
+    /** Cell value as stored; the last cell is right-trimmed (RowOffsetIndex padding). */
+    private static String cellValue(CsvRow r, int c, int cols) {
+        String v = r.get(c);
+        return (c == cols - 1) ? v.stripTrailing() : v;
+    }
+
+    private static String[] readHeader(Path csvPath) throws IOException {
+        try (CsvReader reader = new CsvReader(new java.io.InputStreamReader(
+                Files.newInputStream(csvPath), StandardCharsets.UTF_8))) {
+            CsvRow h = reader.next();
+            return h == null ? null : h.toArray();
+        }
+    }
+
+    private static byte[] encodeHeader(long size, long mtime, long tailHash, int rows, String[] names,
+                                       ColumnWriter[] writers, int headerLength) throws IOException {
+        java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(size);
+        out.writeLong(mtime);
+        out.writeLong(tailHash);
+        out.writeInt(rows);
+        out.writeInt(names.length);
+
+        long offset = headerLength;
+        for (int c = 0; c < names.length; c++) {
+            out.writeUTF(names[c]);
+            out.writeByte(writers[c].type);
+            out.writeLong(offset);
+            out.writeLong(writers[c].length());
+            offset += writers[c].length();
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /** Pass-1 statistics used to pick a column encoding. */
+    private static final class ColumnStats {
+        boolean allDate = true;
+        boolean allTime = true;
+        boolean allInt = true;
+        Map<String, Integer> distinct = new LinkedHashMap<>();
+
+        void observe(String v) {
+            if (distinct != null && !distinct.containsKey(v)) {
+                if (distinct.size() >= DICT_MAX) distinct = null;
+                else distinct.put(v, distinct.size());
+            }
+            if (v.isEmpty()) return;
+            if (allDate) allDate = parseDate(v) != BLANK_INT;
+            if (allTime) allTime = parseTime(v) != BLANK_TIME;
+            if (allInt) allInt = parseInt(v) != BLANK_INT;
+        }
+
+        byte chooseType(int rows) {
+            if (allDate) return TYPE_DATE;
+            if (allTime) return TYPE_TIME;
+            if (allInt) return TYPE_INT;
+            if (distinct != null && distinct.size() * 2L <= Math.max(rows, 1)) return TYPE_DICT;
+            return TYPE_TEXT;
+        }
+    }
+
+    /** Canonical yyyy-MM-dd -> epoch day, else BLANK_INT. */
+    static int parseDate(String v) {
+        if (v.length() != 10) return BLANK_INT;
+        try {
+            LocalDate d = LocalDate.parse(v);
+            return d.toString().equals(v) ? (int) d.toEpochDay() : BLANK_INT;
+        } catch (DateTimeParseException e) {
+            return BLANK_INT;
+        }
+    }
+
+    /** Canonical HH:mm -> minute of day, else BLANK_TIME. */
+    static short parseTime(String v) {
+        if (v.length() != 5) return BLANK_TIME;
+        try {
+            LocalTime t = LocalTime.parse(v);
+            return t.toString().equals(v) ? (short) (t.getHour() * 60 + t.getMinute()) : BLANK_TIME;
+        } catch (DateTimeParseException e) {
+            return BLANK_TIME;
+        }
+    }
+
+    /** Canonical integer (no leading zeros / plus sign) -> value, else BLANK_INT. */
+    static int parseInt(String v) {
+        try {
+            int n = Integer.parseInt(v);
+            return (n != BLANK_INT && Integer.toString(n).equals(v)) ? n : BLANK_INT;
+        } catch (NumberFormatException e) {
+            return BLANK_INT;
+        }
+    }
+
+    /** Pass-2 encoder for one column, spooling to temp files. */
+    private static final class ColumnWriter {
+        final byte type;
+        final Map<String, Integer> dictionary;
+        final int codeWidth;
+
+        final Path dataFile;
+        final Path offsetsFile;     // TEXT only
+        final DataOutputStream data;
+        final DataOutputStream offsets;
+        long heapPos;
+
+        byte[] dictBytes;           // DICT only: encoded dictionary prefix
+
+        ColumnWriter(Path dir, byte type, ColumnStats stats) throws IOException {
+            this.type = type;
+            this.dictionary = (type == TYPE_DICT) ? stats.distinct : null;
+            this.codeWidth = dictionary == null ? 0 : dictionary.size() <= 256 ? 1 : dictionary.size() <= 65536 ? 2 : 4;
+
+            this.dataFile = Files.createTempFile(dir, "snap", ".col");
+            this.data = open(dataFile);
+
+            if (type == TYPE_TEXT) {
+                this.offsetsFile = Files.createTempFile(dir, "snap", ".off");
+                this.offsets = open(offsetsFile);
+                offsets.writeLong(0);
+            } else {
+                this.offsetsFile = null;
+                this.offsets = null;
+            }
+        }
+
+        private static DataOutputStream open(Path p) throws IOException {
+            OutputStream os = Files.newOutputStream(p);
+            return new DataOutputStream(new BufferedOutputStream(os, 64 * 1024));
+        }
+
+        void write(String v) throws IOException {
+            switch (type) {
+                case TYPE_DATE: data.writeInt(v.isEmpty() ? BLANK_INT : parseDate(v)); break;
+                case TYPE_TIME: data.writeShort(v.isEmpty() ? BLANK_TIME : parseTime(v)); break;
+                case TYPE_INT: data.writeInt(v.isEmpty() ? BLANK_INT : parseInt(v)); break;
+                case TYPE_DICT: {
+                    Integer code = dictionary.get(v);
+                    if (code == null) throw new IOException("CSV changed during snapshot build");
+                    if (codeWidth == 1) data.writeByte(code);
+                    else if (codeWidth == 2) data.writeShort(code);
+                    else data.writeInt(code);
+                    break;
+                }
+                default: {
+                    byte[] b = v.getBytes(StandardCharsets.UTF_8);
+                    data.write(b);
+                    heapPos += b.length;
+                    offsets.writeLong(heapPos);
+                }
+            }
+        }
+
+        void finish() throws IOException {
+            data.close();
+            if (offsets != null) offsets.close();
+
+            if (type == TYPE_DICT) {
+                java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeInt(dictionary.size());
+                out.writeByte(codeWidth);
+
+                List<byte[]> values = new ArrayList<>();
+                for (String s : dictionary.keySet()) values.add(s.getBytes(StandardCharsets.UTF_8));
+
+                int pos = 0;
+                out.writeInt(0);
+                for (byte[] v : values) {
+                    pos += v.length;
+                    out.writeInt(pos);
+                }
+                for (byte[] v : values) out.write(v);
+                out.flush();
+                dictBytes = bytes.toByteArray();
+            }
+        }
+
+        long length() throws IOException {
+            long len = Files.size(dataFile);
+            if (offsetsFile != null) len += Files.size(offsetsFile);
+            if (dictBytes != null) len += dictBytes.length;
+            return len;
+        }
+
+        void copyTo(FileChannel out) throws IOException {
+            if (dictBytes != null) out.write(ByteBuffer.wrap(dictBytes));
+            if (offsetsFile != null) transfer(offsetsFile, out);
+            transfer(dataFile, out);
+        }
+
+        private static void transfer(Path from, FileChannel out) throws IOException {
+            try (FileChannel in = FileChannel.open(from, StandardOpenOption.READ)) {
+                long pos = 0;
+                long size = in.size();
+                while (pos < size) pos += in.transferTo(pos, size - pos, out);
+            }
+        }
+
+        void deleteTemps() {
+            try {
+                data.close();
+                if (offsets != null) offsets.close();
+                Files.deleteIfExists(dataFile);
+                if (offsetsFile != null) Files.deleteIfExists(offsetsFile);
+            } catch (IOException ignored) {
+                // temp files only
+            }
+        }
+    }
+}
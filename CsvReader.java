@@ -0,0 +1,132 @@
+package repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * CsvReader (streaming, RFC 4180 style)
+ * - Reads from a Reader through ONE reusable char buffer.
+ * - Understands quoted cells: commas, line breaks and doubled quotes ("") inside quotes.
+ * - Accepts \n, \r\n and \r line endings. Empty lines are skipped.
+ *
+ * next() returns the same CsvRow instance every time (overwritten per row),
+ * so reading a file never builds an intermediate List of raw rows.
+ * With a Projection, cells outside it are skipped over without being copied.
+ */
+public final class CsvReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Reader in;
+    private final char[] buf;
+    private int pos;
+    private int limit;
+
+    private final CsvRow row = new CsvRow();
+
+    // Cells outside the projection are parsed (to find their end) but not copied
+    private Projection projection = Projection.ALL;
+
+    public CsvReader(Reader in) {
+        this(in, Projection.ALL);
+    }
+
+    public CsvReader(Reader in, Projection projection) {
+        this(in, projection, BUFFER_SIZE);
+    }
+
+    /** Smaller buffer for parsing one known row (index lookups), where 64K per call would dominate. */
+    CsvReader(Reader in, Projection projection, int bufferSize) {
+        this.in = in;
+        this.projection = projection;
+        this.buf = new char[Math.max(16, bufferSize)];
+    }
+
+    /**
+     * Parses the next row into the shared CsvRow.
+     * Returns null at end of input.
+     */
+    public CsvRow next() throws IOException {
+        row.reset();
+
+        int c = read();
+        while (c == '\n' || c == '\r') c = read();   // skip empty lines
+        if (c == -1) return null;
+
+        boolean quoted = false;
+        int col = 0;
+        boolean copy = projection.includes(0);
+        int seen = 0;                 // chars consumed in the current cell (copied or not)
+        row.startCell();
+
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    // Unterminated quote: keep what we have rather than losing the row
+                    row.endCell();
+                    return row;
+                }
+                if (c == '"') {
+                    int n = read();
+                    if (n == '"') {
+                        if (copy) row.append('"');  // escaped quote
+                        seen++;
+                    } else {
+                        quoted = false;         // closing quote, re-examine n unquoted
+                        c = n;
+                        continue;
+                    }
+                } else {
+                    if (copy) row.append((char) c);
+                    seen++;
+                }
+            } else {
+                if (c == ',') {
+                    row.endCell();
+                    row.startCell();
+                    col++;
+                    copy = projection.includes(col);
+                    seen = 0;
+                } else if (c == '\n' || c == -1) {
+                    row.endCell();
+                    return row;
+                } else if (c == '\r') {
+                    if (peek() == '\n') read();
+                    row.endCell();
+                    return row;
+                } else if (c == '"' && seen == 0) {
+                    quoted = true;
+                    seen++;
+                } else {
+                    if (copy) row.append((char) c);
+                    seen++;
+                }
+            }
+            c = read();
+        }
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) return -1;
+        return buf[pos++];
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit && !fill()) return -1;
+        return buf[pos];
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(buf, 0, buf.length);
+        if (n <= 0) return false;
+        pos = 0;
+        limit = n;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
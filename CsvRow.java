@@ -0,0 +1,145 @@
+package repository;
+
+/**
+ * CsvRow:
+ * - A reusable view over ONE parsed CSV row (cells are already unquoted).
+ * - Owned by CsvReader and overwritten by every call to next(), so callers must
+ *   copy what they need (get(i) / toArray()) before asking for the next row.
+ *
+ * Cells are stored back-to-back in a single char buffer with start/end offsets,
+ * so no String is allocated until a caller actually asks for a cell.
+ */
+public final class CsvRow {
+
+    private char[] chars = new char[256];
+    private int length;
+
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int count;
+
+    CsvRow() {
+        // Created by CsvReader (or of() below)
+    }
+
+    /** Builds a standalone row from already-split cells (used when overlaying changes). */
+    static CsvRow of(String[] cells) {
+        CsvRow row = new CsvRow();
+        for (String cell : cells) {
+            row.startCell();
+            if (cell != null) {
+                for (int i = 0; i < cell.length(); i++) row.append(cell.charAt(i));
+            }
+            row.endCell();
+        }
+        return row;
+    }
+
+    // ------------------- read API -------------------
+
+    /** Number of cells in this row. */
+    public int size() {
+        return count;
+    }
+
+    /** Cell value as a new String ("" if the index is out of range). */
+    public String get(int i) {
+        if (i < 0 || i >= count) return "";
+        return new String(chars, starts[i], ends[i] - starts[i]);
+    }
+
+    /** Length of a cell in chars (0 if out of range). */
+    public int length(int i) {
+        if (i < 0 || i >= count) return 0;
+        return ends[i] - starts[i];
+    }
+
+    /** Compares a cell against a value without allocating a String. */
+    public boolean cellEquals(int i, String value) {
+        if (i < 0 || i >= count) return value == null || value.isEmpty();
+        int len = ends[i] - starts[i];
+        if (value == null || value.length() != len) return false;
+        int s = starts[i];
+        for (int k = 0; k < len; k++) {
+            if (chars[s + k] != value.charAt(k)) return false;
+        }
+        return true;
+    }
+
+    /** Hash of a cell, identical to get(i).hashCode() but without allocating. */
+    public int cellHash(int i) {
+        if (i < 0 || i >= count) return 0;
+        int h = 0;
+        for (int k = starts[i]; k < ends[i]; k++) h = 31 * h + chars[k];
+        return h;
+    }
+
+    /** Same as cellEquals but ignoring case (ASCII/Unicode per Character rules). */
+    public boolean cellEqualsIgnoreCase(int i, String value) {
+        if (i < 0 || i >= count) return value == null || value.isEmpty();
+        int len = ends[i] - starts[i];
+        if (value == null || value.length() != len) return false;
+        int s = starts[i];
+        for (int k = 0; k < len; k++) {
+            char x = chars[s + k];
+            char y = value.charAt(k);
+            if (x != y && Character.toLowerCase(x) != Character.toLowerCase(y)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Lexicographic comparison of a cell with a value (like String.compareTo), without allocating.
+     * ISO dates/times (yyyy-MM-dd, HH:mm) therefore compare chronologically.
+     */
+    public int compareCell(int i, String value) {
+        int len = (i < 0 || i >= count) ? 0 : ends[i] - starts[i];
+        int s = len == 0 ? 0 : starts[i];
+        int n = Math.min(len, value.length());
+        for (int k = 0; k < n; k++) {
+            int d = chars[s + k] - value.charAt(k);
+            if (d != 0) return d;
+        }
+        return len - value.length();
+    }
+
+    /** Copies every cell into a new String[] (same shape as the old split(",") rows). */
+    public String[] toArray() {
+        String[] out = new String[count];
+        for (int i = 0; i < count; i++) out[i] = get(i);
+        return out;
+    }
+
+    // ------------------- parser API (package-private) -------------------
+
+    void reset() {
+        length = 0;
+        count = 0;
+    }
+
+    void startCell() {
+        if (count == starts.length) {
+            int[] s = new int[count * 2];
+            int[] e = new int[count * 2];
+            System.arraycopy(starts, 0, s, 0, count);
+            System.arraycopy(ends, 0, e, 0, count);
+            starts = s;
+            ends = e;
+        }
+        starts[count] = length;
+    }
+
+    void endCell() {
+        ends[count] = length;
+        count++;
+    }
+
+    void append(char c) {
+        if (length == chars.length) {
+            char[] bigger = new char[chars.length * 2];
+            System.arraycopy(chars, 0, bigger, 0, length);
+            chars = bigger;
+        }
+        chars[length++] = c;
+    }
+}
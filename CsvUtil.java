@@ -1,31 +1,132 @@
 package repository;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * CsvUtil (Plain Java, no external libraries)
- * - Reads CSV files line-by-line.
- * - Splits by comma (assumes no commas inside values).
+ * - Streams CSV files row-by-row through CsvReader (quote-aware, RFC 4180 style).
+ * - forEachRow() hands data rows to a callback without building a List of raw rows.
+ * - mapRows() maps rows to objects; big files go through ColumnarSnapshot / MappedCsvLoader.
+ * - Writes quote cells that contain commas, quotes or line breaks.
+ * - appendRow() is group-committed (GroupCommitWriter) instead of open/write/close per row.
  * - Provides writeAll() to overwrite file after updates/deletes.
  */
 public final class CsvUtil {
 
+    /** Files this size or larger are loaded with MappedCsvLoader (one task per chunk). */
+    public static final long PARALLEL_THRESHOLD_BYTES = 32L * 1024 * 1024;
+
+    /** Files this size or larger are read from their ColumnarSnapshot when it is fresh. */
+    public static final long SNAPSHOT_THRESHOLD_BYTES = 1024L * 1024;
+
+    // appendRows() hands text to the writer in pieces of about this size
+    private static final int APPEND_CHUNK_CHARS = 256 * 1024;
+
     private CsvUtil() {
         // Utility class: prevent instantiation
     }
 
+    /**
+     * Streams every data row (header skipped) to the handler.
+     * The CsvRow passed to the handler is reused for the next row.
+     */
+    public static void forEachRow(Path csvPath, RowHandler handler) throws IOException {
+        forEachRow(csvPath, Projection.ALL, handler);
+    }
+
+    /**
+     * Same as forEachRow(Path, RowHandler) but only copies the projected cells
+     * (the others read back as "").
+     */
+    public static void forEachRow(Path csvPath, Projection projection, RowHandler handler) throws IOException {
+        try (CsvReader reader = open(csvPath, projection)) {
+            CsvRow row = reader.next(); // header
+            if (row == null) return;
+
+            while ((row = reader.next()) != null) {
+                handler.onRow(row);
+            }
+        }
+    }
+
+    /**
+     * Maps every data row (header skipped) through the mapper, in file order.
+     * - A fresh ColumnarSnapshot is used when there is one (large files only);
+     *   a stale/missing one is rebuilt in the background for next time.
+     * - Files at or above PARALLEL_THRESHOLD_BYTES are memory-mapped and parsed in parallel chunks.
+     */
+    public static <T> List<T> mapRows(Path csvPath, RowMapper<T> mapper) throws IOException {
+        return mapRows(csvPath, Projection.ALL, mapper);
+    }
+
+    /**
+     * Maps the rows that start at byte offset 'from' (a row boundary, e.g. the old end of
+     * the file before rows were appended). No header is skipped. Streams sequentially.
+     */
+    public static <T> List<T> mapRowsFrom(Path csvPath, long from, Projection projection, RowMapper<T> mapper) throws IOException {
+        List<T> out = new ArrayList<>();
+        try (InputStream in = Files.newInputStream(csvPath)) {
+            long skipped = 0;
+            while (skipped < from) {
+                long n = in.skip(from - skipped);
+                if (n <= 0) return out;
+                skipped += n;
+            }
+
+            CsvReader reader = new CsvReader(new InputStreamReader(in, StandardCharsets.UTF_8), projection);
+            CsvRow r;
+            while ((r = reader.next()) != null) {
+                T item = mapper.map(r);
+                if (item != null) out.add(item);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Same as mapRows(Path, RowMapper) but only the projected cells are copied/decoded;
+     * the mapper sees "" for every other column.
+     */
+    public static <T> List<T> mapRows(Path csvPath, Projection projection, RowMapper<T> mapper) throws IOException {
+        long size = Files.size(csvPath);
+
+        if (size >= SNAPSHOT_THRESHOLD_BYTES) {
+            ColumnarSnapshot snapshot = ColumnarSnapshot.openIfFresh(csvPath);
+            if (snapshot != null) return snapshot.mapRows(projection, mapper);
+            ColumnarSnapshot.scheduleRebuild(csvPath);
+        }
+
+        if (size >= PARALLEL_THRESHOLD_BYTES) {
+            return MappedCsvLoader.load(csvPath, projection, mapper);
+        }
+
+        List<T> out = new ArrayList<>();
+        forEachRow(csvPath, projection, r -> {
+            T item = mapper.map(r);
+            if (item != null) out.add(item);
+        });
+        return out;
+    }
+
+    /**
+     * Reads the whole file (header included) into memory.
+     * Only use this when the caller really needs every row at once (e.g. rewrite paths).
+     */
     public static List<String[]> readAll(Path csvPath) throws IOException {
         List<String[]> rows = new ArrayList<>();
 
-        try (BufferedReader br = Files.newBufferedReader(csvPath)) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                rows.add(line.split(",", -1));
+        try (CsvReader reader = open(csvPath, Projection.ALL)) {
+            CsvRow row;
+            while ((row = reader.next()) != null) {
+                rows.add(row.toArray());
             }
         }
 
@@ -35,17 +136,46 @@ public final class CsvUtil {
     /**
      * Appends a single row to an existing CSV file.
      * Assumes the file already exists and has a header.
+     *
+     * Goes through the file's GroupCommitWriter, so concurrent appends share one write.
+     * Blocks until this row is written.
      */
     public static void appendRow(Path csvPath, String[] row) throws IOException {
-        try (BufferedWriter bw = Files.newBufferedWriter(
-                csvPath,
-                StandardOpenOption.APPEND
-        )) {
-            bw.newLine();
-            bw.write(String.join(",", row));
-        }
+        GroupCommitWriter.await(appendRowAsync(csvPath, row));
     }
 
+    /**
+     * Same as appendRow() but returns as soon as the row is queued.
+     * The future completes when the batch containing the row has been written.
+     */
+    public static CompletableFuture<Void> appendRowAsync(Path csvPath, String[] row) {
+        return GroupCommitWriter.forFile(csvPath).append(System.lineSeparator() + toCsvLine(row));
+    }
+
+    /**
+     * Appends many rows in one sequential pass (bulk import).
+     * Rows are encoded into large chunks and queued on the file's GroupCommitWriter in order,
+     * so the cost is one buffered write per chunk rather than one per row. Blocks until all are written.
+     */
+    public static void appendRows(Path csvPath, List<String[]> rows) throws IOException {
+        if (rows.isEmpty()) return;
+
+        GroupCommitWriter writer = GroupCommitWriter.forFile(csvPath);
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        StringBuilder chunk = new StringBuilder(APPEND_CHUNK_CHARS + 1024);
+        String nl = System.lineSeparator();
+
+        for (String[] row : rows) {
+            chunk.append(nl).append(toCsvLine(row));
+            if (chunk.length() >= APPEND_CHUNK_CHARS) {
+                pending.add(writer.append(chunk.toString()));
+                chunk.setLength(0);
+            }
+        }
+        if (chunk.length() > 0) pending.add(writer.append(chunk.toString()));
+
+        for (CompletableFuture<Void> f : pending) GroupCommitWriter.await(f);
+    }
 
     /**
      * Overwrites the CSV file with the given rows.
@@ -58,9 +188,52 @@ public final class CsvUtil {
                 StandardOpenOption.CREATE
         )) {
             for (int i = 0; i < rows.size(); i++) {
-                bw.write(String.join(",", rows.get(i)));
+                bw.write(toCsvLine(rows.get(i)));
                 if (i < rows.size() - 1) bw.newLine();
             }
         }
+        FileStamp.markRewritten(csvPath);
+    }
+
+    /**
+     * Joins cells into one CSV line, quoting only the cells that need it.
+     */
+    public static String toCsvLine(String[] row) {
+        StringBuilder sb = new StringBuilder(row.length * 12);
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) sb.append(',');
+            appendCell(sb, row[i]);
+        }
+        return sb.toString();
+    }
+
+    private static void appendCell(StringBuilder sb, String value) {
+        if (value == null) return;
+
+        boolean needsQuotes = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                needsQuotes = true;
+                break;
+            }
+        }
+
+        if (!needsQuotes) {
+            sb.append(value);
+            return;
+        }
+
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') sb.append('"');
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    private static CsvReader open(Path csvPath, Projection projection) throws IOException {
+        return new CsvReader(new InputStreamReader(Files.newInputStream(csvPath), StandardCharsets.UTF_8), projection);
     }
 }
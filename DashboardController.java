@@ -1,9 +1,7 @@
 package controller;
 
-import repository.AppointmentRepository;
-import repository.PatientRepository;
-import repository.PrescriptionRepository;
-import repository.ReferralRepository;
+import repository.DataContext;
+import repository.PersistenceMode;
 import view.*;
 
 import java.nio.file.Path;
@@ -12,48 +10,46 @@ import java.nio.file.Path;
  * DashboardController:
  * - Opens each module window when a dashboard button is clicked.
  * - Keeps the app coherent as one system.
+ * - Owns the ONE DataContext (repositories + cached tables) shared by every window,
+ *   so opening a window or clicking Refresh does not re-parse unchanged CSVs.
  */
 public class DashboardController {
 
     private final DashboardFrame dashboard;
 
-    // Paths
-    private final Path patientsCsv;
-    private final Path appointmentsCsv;
-    private final Path prescriptionsCsv;
-    private final Path referralsCsv;
     private final Path outDir;
 
+    // Shared repositories + table caches
+    private final DataContext data;
+
     public DashboardController(DashboardFrame dashboard,
                                Path patientsCsv,
                                Path appointmentsCsv,
                                Path prescriptionsCsv,
                                Path referralsCsv,
-                               Path outDir) {
+                               Path outDir,
+                               PersistenceMode persistenceMode) {
         this.dashboard = dashboard;
-        this.patientsCsv = patientsCsv;
-        this.appointmentsCsv = appointmentsCsv;
-        this.prescriptionsCsv = prescriptionsCsv;
-        this.referralsCsv = referralsCsv;
         this.outDir = outDir;
 
+        // DIRECT (write the CSVs) or CHANGE_LOG (append-only logs + background compaction)
+        this.data = new DataContext(patientsCsv, appointmentsCsv, prescriptionsCsv, referralsCsv, persistenceMode);
+
         wireActions();
     }
 
     private void wireActions() {
 
         dashboard.getPatientsButton().addActionListener(e -> {
-            PatientRepository repo = new PatientRepository(patientsCsv);
             PatientTableFrame view = new PatientTableFrame();
-            MainController controller = new MainController(repo, view);
+            MainController controller = new MainController(data, view);
             controller.start();
         });
 
         dashboard.getAppointmentsButton().addActionListener(e -> {
             try {
-                AppointmentRepository repo = new AppointmentRepository(appointmentsCsv);
                 AppointmentTableFrame view = new AppointmentTableFrame();
-                AppointmentController controller = new AppointmentController(repo, view);
+                AppointmentController controller = new AppointmentController(data, view);
                 controller.start();
             } catch (Exception ex) {
                 ex.printStackTrace();
@@ -68,17 +64,15 @@ public class DashboardController {
 
 
         dashboard.getPrescriptionsButton().addActionListener(e -> {
-            PrescriptionRepository repo = new PrescriptionRepository(prescriptionsCsv);
             PrescriptionTableFrame view = new PrescriptionTableFrame();
-            PrescriptionController controller = new PrescriptionController(repo, view);
+            PrescriptionController controller = new PrescriptionController(data, view);
             controller.start();
         });
 
         dashboard.getReferralsButton().addActionListener(e -> {
             try {
-                ReferralRepository repo = new ReferralRepository(referralsCsv);
                 ReferralTableFrame view = new ReferralTableFrame();
-                ReferralController controller = new ReferralController(repo, view, outDir);
+                ReferralController controller = new ReferralController(data, view, outDir);
                 controller.start();
             } catch (Exception ex) {
                 ex.printStackTrace();
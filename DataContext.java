@@ -0,0 +1,76 @@
+package repository;
+
+import model.Appointment;
+import model.Patient;
+import model.Prescription;
+import model.Referral;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * DataContext (one per application)
+ * - Owns ONE repository per table and ONE TableCache per table view, shared by every window.
+ * - Controllers read tables through the caches, so a Refresh on an unchanged CSV returns the
+ *   already-parsed rows; a changed CSV is reloaded (or only its appended rows are parsed).
+ * - Writes still go through the repositories; the caches notice them through size/mtime,
+ *   FileWatcher events and FileStamp.markRewritten.
+ * - Appointments and referrals are registered with the Archiver (active when -Darchive.horizonDays is set).
+ */
+public final class DataContext {
+
+    private final PatientRepository patientRepository;
+    private final AppointmentRepository appointmentRepository;
+    private final PrescriptionRepository prescriptionRepository;
+    private final ReferralRepository referralRepository;
+
+    private final TableCache<Patient> patients;
+    private final TableCache<Appointment> appointments;       // AppointmentRepository.TABLE_COLUMNS
+    private final TableCache<Prescription> prescriptions;     // PrescriptionRepository.TABLE_COLUMNS
+    private final TableCache<Referral> referrals;             // ReferralRepository.TABLE_COLUMNS
+
+    public DataContext(Path patientsCsv,
+                       Path appointmentsCsv,
+                       Path prescriptionsCsv,
+                       Path referralsCsv,
+                       PersistenceMode mode) {
+        this.patientRepository = new PatientRepository(patientsCsv);
+        this.appointmentRepository = new AppointmentRepository(appointmentsCsv, mode);
+        this.prescriptionRepository = new PrescriptionRepository(prescriptionsCsv, mode);
+        this.referralRepository = new ReferralRepository(referralsCsv, mode);
+
+        PatientRepository pr = patientRepository;
+        AppointmentRepository ar = appointmentRepository;
+        PrescriptionRepository rx = prescriptionRepository;
+        ReferralRepository rr = referralRepository;
+
+        this.patients = new TableCache<>(patientsCsv, pr::loadAll, pr::loadFrom);
+        this.appointments = new TableCache<>(appointmentsCsv,
+                () -> ar.loadAll(AppointmentRepository.TABLE_COLUMNS),
+                from -> ar.loadFrom(from, AppointmentRepository.TABLE_COLUMNS));
+        this.prescriptions = new TableCache<>(prescriptionsCsv,
+                () -> rx.loadAll(PrescriptionRepository.TABLE_COLUMNS),
+                from -> rx.loadFrom(from, PrescriptionRepository.TABLE_COLUMNS));
+        this.referrals = new TableCache<>(referralsCsv,
+                () -> rr.loadAll(ReferralRepository.TABLE_COLUMNS),
+                from -> rr.loadFrom(from, ReferralRepository.TABLE_COLUMNS));
+
+        Archiver.register(appointmentsCsv.toString(), ar::archiveBefore);
+        Archiver.register(referralsCsv.toString(), rr::archiveBefore);
+    }
+
+    // ------------------- repositories (writes, queries) -------------------
+
+    public PatientRepository getPatientRepository() { return patientRepository; }
+    public AppointmentRepository getAppointmentRepository() { return appointmentRepository; }
+    public PrescriptionRepository getPrescriptionRepository() { return prescriptionRepository; }
+    public ReferralRepository getReferralRepository() { return referralRepository; }
+
+    // ------------------- cached tables (views) -------------------
+
+    public List<Patient> patients() throws IOException { return patients.get(); }
+    public List<Appointment> appointmentTable() throws IOException { return appointments.get(); }
+    public List<Prescription> prescriptionTable() throws IOException { return prescriptions.get(); }
+    public List<Referral> referralTable() throws IOException { return referrals.get(); }
+}
@@ -0,0 +1,138 @@
+package repository;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * FileStamp:
+ * - Size + mtime of a CSV and its change-log files, plus a counter of in-place rewrites
+ *   done by this process (rewrites can keep size and, within the mtime resolution, mtime).
+ * - Two equal stamps mean "nothing happened to this table in between".
+ * - A partitioned table (a directory, see PartitionedAppointments) is stamped by its partition
+ *   files: the directory's own size/mtime do not change when rows are written into them.
+ * Used by TableCache and the in-memory indexes to decide whether they are still current.
+ */
+final class FileStamp {
+
+    // In-place rewrites done by this process, per CSV (appends are seen through the size)
+    private static final Map<Path, AtomicLong> REWRITES = new ConcurrentHashMap<>();
+
+    final long size;
+    final long mtime;
+    private final long rewrites;
+    private final long[] logs; // size, mtime per log file (-1 when absent)
+
+    private FileStamp(long size, long mtime, long rewrites, long[] logs) {
+        this.size = size;
+        this.mtime = mtime;
+        this.rewrites = rewrites;
+        this.logs = logs;
+    }
+
+    /** The change-log files that belong to a CSV (see ChangeLog). */
+    static Path[] logPaths(Path csvPath) {
+        return new Path[]{
+                csvPath.resolveSibling(csvPath.getFileName() + ".log"),
+                csvPath.resolveSibling(csvPath.getFileName() + ".log.compacting")
+        };
+    }
+
+    /** Records an in-place rewrite; also drops the CSV's snapshot, whose stamp cannot see it. */
+    static void markRewritten(Path csvPath) {
+        Path csv = csvPath.toAbsolutePath().normalize();
+        REWRITES.computeIfAbsent(csv, p -> new AtomicLong()).incrementAndGet();
+        ColumnarSnapshot.invalidate(csv);
+    }
+
+    /** In-place rewrites of the CSV done by this process so far. */
+    static long rewrites(Path csvPath) {
+        AtomicLong counter = REWRITES.get(csvPath.toAbsolutePath().normalize());
+        return counter == null ? 0 : counter.get();
+    }
+
+    static FileStamp of(Path csvPath) throws IOException {
+        Path csv = csvPath.toAbsolutePath().normalize();
+        if (Files.isDirectory(csv)) return ofDirectory(csv);
+        AtomicLong counter = REWRITES.get(csv);
+        long rewrites = counter == null ? 0 : counter.get();
+
+        Path[] logPaths = logPaths(csv);
+        long[] logs = new long[logPaths.length * 2];
+        for (int i = 0; i < logPaths.length; i++) {
+            long[] sm = sizeAndMtime(logPaths[i]);
+            logs[i * 2] = sm[0];
+            logs[i * 2 + 1] = sm[1];
+        }
+
+        long[] sm = sizeAndMtime(csv);
+        return new FileStamp(sm[0], sm[1], rewrites, logs);
+    }
+
+    /**
+     * Stamp of a partition directory: name, size and mtime of every partition CSV and change log
+     * (kept in 'logs', so any change to any of them breaks equality); size is their total, mtime the
+     * latest; rewrites adds up the directory's counter and the partitions'.
+     */
+    private static FileStamp ofDirectory(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path f : entries) {
+                String name = f.getFileName().toString();
+                if (name.endsWith(".csv") || name.endsWith(".csv.log") || name.endsWith(".csv.log.compacting")) files.add(f);
+            }
+        }
+        files.sort(null);
+
+        long size = 0;
+        long mtime = 0;
+        long rewrites = rewrites(dir);
+        long[] parts = new long[files.size() * 3];
+        for (int i = 0; i < files.size(); i++) {
+            Path f = files.get(i);
+            long[] sm = sizeAndMtime(f);
+            parts[i * 3] = f.getFileName().toString().hashCode();
+            parts[i * 3 + 1] = sm[0];
+            parts[i * 3 + 2] = sm[1];
+            size += Math.max(0, sm[0]);
+            mtime = Math.max(mtime, sm[1]);
+            rewrites += rewrites(f);
+        }
+        return new FileStamp(size, mtime, rewrites, parts);
+    }
+
+    /** Same logs and no in-place rewrite in between (so a bigger CSV means pure appends). */
+    boolean sameLogsAndRewrites(FileStamp other) {
+        return rewrites == other.rewrites && Arrays.equals(logs, other.logs);
+    }
+
+    private static long[] sizeAndMtime(Path p) throws IOException {
+        try {
+            BasicFileAttributes a = Files.readAttributes(p, BasicFileAttributes.class);
+            return new long[]{a.size(), a.lastModifiedTime().toMillis()};
+        } catch (NoSuchFileException e) {
+            return new long[]{-1, -1};
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof FileStamp)) return false;
+        FileStamp s = (FileStamp) o;
+        return size == s.size && mtime == s.mtime && rewrites == s.rewrites && Arrays.equals(logs, s.logs);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(size) * 31 + Long.hashCode(mtime);
+    }
+}
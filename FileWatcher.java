@@ -0,0 +1,115 @@
+package repository;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * FileWatcher (one WatchService for the whole app)
+ * - watch(file, callback) registers the file's directory and calls back on create/modify/delete
+ *   of that file name (renames into place show up as create).
+ * - watchDirectory(dir, callback) calls back on any entry of the directory itself
+ *   (partitioned tables: rows are written into files inside it).
+ * - On OVERFLOW (events lost) every callback fires.
+ * - Callbacks run on the daemon "csv-file-watcher" thread, so they should only set flags.
+ *
+ * If the platform has no WatchService the watcher stays inactive; callers still have their
+ * own size/mtime checks to fall back on.
+ */
+public final class FileWatcher {
+
+    private static final WatchService SERVICE = open();
+
+    // directory -> registered?, file -> callbacks
+    private static final Map<Path, WatchKey> DIRS = new ConcurrentHashMap<>();
+    private static final Map<Path, List<Runnable>> CALLBACKS = new ConcurrentHashMap<>();
+    private static final Map<Path, List<Runnable>> DIR_CALLBACKS = new ConcurrentHashMap<>();
+
+    static {
+        if (SERVICE != null) {
+            Thread t = new Thread(FileWatcher::run, "csv-file-watcher");
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    private FileWatcher() {
+    }
+
+    /** True if a WatchService is running. */
+    public static boolean isActive() {
+        return SERVICE != null;
+    }
+
+    /** Calls onChange whenever the file is created, modified or deleted. */
+    public static void watch(Path file, Runnable onChange) {
+        Path abs = file.toAbsolutePath().normalize();
+        CALLBACKS.computeIfAbsent(abs, k -> new CopyOnWriteArrayList<>()).add(onChange);
+        if (SERVICE == null) return;
+
+        register(abs.getParent());
+    }
+
+    /** Calls onChange whenever any entry of the directory is created, modified or deleted. */
+    public static void watchDirectory(Path dir, Runnable onChange) {
+        Path abs = dir.toAbsolutePath().normalize();
+        DIR_CALLBACKS.computeIfAbsent(abs, k -> new CopyOnWriteArrayList<>()).add(onChange);
+        if (SERVICE == null) return;
+        register(abs);
+    }
+
+    private static void register(Path dir) {
+        DIRS.computeIfAbsent(dir, d -> {
+            try {
+                return d.register(SERVICE,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+            } catch (IOException e) {
+                return null; // directory missing/unwatchable: size/mtime checks still apply
+            }
+        });
+    }
+
+    private static WatchService open() {
+        try {
+            return FileSystems.getDefault().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private static void run() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = SERVICE.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    CALLBACKS.values().forEach(list -> list.forEach(Runnable::run));
+                    DIR_CALLBACKS.values().forEach(list -> list.forEach(Runnable::run));
+                    continue;
+                }
+                List<Runnable> list = CALLBACKS.get(dir.resolve((Path) event.context()));
+                if (list != null) list.forEach(Runnable::run);
+                List<Runnable> all = DIR_CALLBACKS.get(dir);
+                if (all != null) all.forEach(Runnable::run);
+            }
+            key.reset();
+        }
+    }
+}
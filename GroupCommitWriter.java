@@ -0,0 +1,185 @@
+package repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GroupCommitWriter (one long-lived writer per file)
+ * - Callers hand over text and get a CompletableFuture back.
+ * - A daemon thread collects requests that arrive within a short window,
+ *   writes them with ONE FileChannel write (+ one optional fsync) and completes every future.
+ *
+ * Config (system properties, read when a file's writer is first created):
+ * - groupcommit.windowMillis : how long to wait for more appends after the first one (default 1)
+ * - groupcommit.fsync        : force() after each batch (default false)
+ *
+ * The channel stays open between batches. If the file is replaced underneath it
+ * (e.g. compaction renames a new CSV into place) the writer notices and reopens.
+ * Any failure of a batch (IOException, but also e.g. OutOfMemoryError) fails that batch's futures
+ * and the worker carries on; if the worker is interrupted, everything still queued is failed and
+ * the writer is dropped, so no caller ever waits on a future nobody will complete.
+ */
+public final class GroupCommitWriter {
+
+    private static final Map<Path, GroupCommitWriter> WRITERS = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final long windowNanos;
+    private final boolean fsync;
+
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private volatile boolean stopped;
+
+    private FileChannel channel;
+    private Object fileKey;
+
+    /** One queued append. */
+    private static final class Pending {
+        final byte[] bytes;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(byte[] bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    private GroupCommitWriter(Path file, long windowMillis, boolean fsync) {
+        this.file = file;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.fsync = fsync;
+
+        Thread worker = new Thread(this::run, "group-commit-" + file.getFileName());
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /** Shared writer for a file, created with the configured window/fsync on first use. */
+    public static GroupCommitWriter forFile(Path file) {
+        return forFile(file,
+                Long.getLong("groupcommit.windowMillis", 1L),
+                Boolean.getBoolean("groupcommit.fsync"));
+    }
+
+    /** Same as forFile(Path) but with explicit settings (ignored if the writer already exists). */
+    public static GroupCommitWriter forFile(Path file, long windowMillis, boolean fsync) {
+        return WRITERS.computeIfAbsent(file.toAbsolutePath().normalize(),
+                p -> new GroupCommitWriter(p, windowMillis, fsync));
+    }
+
+    /**
+     * Queues text (UTF-8) to be appended. The future completes once it is written
+     * (and forced to disk if fsync is on), or fails with the IOException.
+     */
+    public CompletableFuture<Void> append(String text) {
+        Pending p = new Pending(text.getBytes(StandardCharsets.UTF_8));
+        queue.add(p);
+        if (stopped) failQueued(new IOException("Writer for " + file + " has stopped"));
+        return p.done;
+    }
+
+    /** Blocks on an append future and rethrows failures as IOException. */
+    public static void await(CompletableFuture<?> future) throws IOException {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    // ------------------- worker thread -------------------
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+
+                // Collect everything that arrives within the window
+                long deadline = System.nanoTime() + windowNanos;
+                long remaining;
+                while ((remaining = deadline - System.nanoTime()) > 0) {
+                    Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                queue.drainTo(batch);
+
+                writeBatch(batch);
+                for (Pending p : batch) p.done.complete(null);
+
+            } catch (InterruptedException e) {
+                stopped = true;
+                WRITERS.remove(file, this);
+                IOException stop = new IOException("Writer for " + file + " was interrupted");
+                for (Pending p : batch) p.done.completeExceptionally(stop);
+                failQueued(stop);
+                closeQuietly();
+                return;
+            } catch (Throwable e) {
+                closeQuietly();
+                for (Pending p : batch) p.done.completeExceptionally(e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /** Fails every append still in the queue (the worker is gone). */
+    private void failQueued(IOException e) {
+        Pending p;
+        while ((p = queue.poll()) != null) p.done.completeExceptionally(e);
+    }
+
+    private void writeBatch(List<Pending> batch) throws IOException {
+        int total = 0;
+        for (Pending p : batch) total += p.bytes.length;
+
+        ByteBuffer buf = ByteBuffer.allocate(total);
+        for (Pending p : batch) buf.put(p.bytes);
+        buf.flip();
+
+        FileChannel ch = channel();
+        while (buf.hasRemaining()) ch.write(buf);
+        if (fsync) ch.force(false);
+    }
+
+    /** Open channel for the CURRENT file at this path (reopened if the file was replaced). */
+    private FileChannel channel() throws IOException {
+        Object key = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        if (channel != null && channel.isOpen() && key != null && Objects.equals(key, fileKey)) {
+            return channel;
+        }
+        closeQuietly();
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileKey = key;
+        return channel;
+    }
+
+    private void closeQuietly() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // nothing useful to do; next batch reopens
+        }
+        channel = null;
+    }
+}
@@ -10,6 +10,9 @@ import java.util.List;
  * Strategy:
  * - Find the maximum numeric suffix among existing IDs that share the same prefix.
  * - Return prefix + nextNumber padded to the same width (defaults to 4 if unknown).
+ *
+ * Repositories no longer call nextId() per create (that needs every ID in the file);
+ * repository.IdSequence uses the helpers below once, to recover its counter.
  */
 public final class IdGenerator {
 
@@ -27,7 +30,12 @@ public final class IdGenerator {
         int width = extractNumericWidth(sample);
         if (width <= 0) width = 4;
 
-        int max = 0;
+        return format(prefix, width, maxSuffix(existingIds, prefix) + 1);
+    }
+
+    /** Largest numeric suffix among IDs starting with prefix (0 if none). */
+    public static long maxSuffix(List<String> existingIds, String prefix) {
+        long max = 0;
         for (String id : existingIds) {
             if (id == null) continue;
             id = id.trim();
@@ -36,19 +44,29 @@ public final class IdGenerator {
             Integer n = extractNumericSuffix(id);
             if (n != null && n > max) max = n;
         }
+        return max;
+    }
 
-        int next = max + 1;
-        return prefix + String.format("%0" + width + "d", next);
+    /** prefix + number zero-padded to width (wider numbers are not truncated). */
+    public static String format(String prefix, int width, long number) {
+        // Manual padding: String.format dominates bulk imports that format thousands of IDs
+        String digits = Long.toString(number);
+        StringBuilder sb = new StringBuilder(prefix.length() + Math.max(width, digits.length()));
+        sb.append(prefix);
+        for (int i = digits.length(); i < width; i++) sb.append('0');
+        return sb.append(digits).toString();
     }
 
-    private static String extractPrefix(String id) {
+    /** Everything before the trailing digits ("RX012" -> "RX"). */
+    public static String extractPrefix(String id) {
         // prefix = everything before the trailing digits
         int i = id.length() - 1;
         while (i >= 0 && Character.isDigit(id.charAt(i))) i--;
         return id.substring(0, i + 1);
     }
 
-    private static int extractNumericWidth(String id) {
+    /** Number of trailing digits ("RX012" -> 3). */
+    public static int extractNumericWidth(String id) {
         int i = id.length() - 1;
         int count = 0;
         while (i >= 0 && Character.isDigit(id.charAt(i))) {
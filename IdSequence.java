@@ -0,0 +1,275 @@
+package repository;
+
+import service.IdGenerator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * IdSequence (one per table: sidecar "<file>.csv.seq", shared by every process using data/)
+ * - hi/lo allocation: a process reserves a BLOCK of numbers under an OS file lock
+ *   (FileChannel.lock on the .seq file) by bumping the shared high-water mark, then hands
+ *   them out locally from an AtomicLong with no locking. One lock per block, not per row,
+ *   and two processes can never receive the same number.
+ * - The counter file is memory-mapped; each reservation is one long store + force().
+ * - If the counter file is missing/empty it is initialized (under the same lock) by
+ *   scanning the table ONCE through the supplied IdScan, using IdGenerator's prefix/width rules.
+ *
+ * Numbers left in a block when a process exits are skipped (gaps are fine; IDs stay unique).
+ * Block size: -Didsequence.blockSize (default 16).
+ *
+ * Counter file layout:
+ *   int  MAGIC "ISEQ"
+ *   int  width            (digits, e.g. 3 for A001)
+ *   long highWater        (last number reserved by any process)
+ *   short prefixLength, prefix bytes (UTF-8)
+ *
+ * IDs written to the CSV by other tools are not seen until the counter file is deleted.
+ */
+public final class IdSequence {
+
+    /** Reads every current ID of the table (only used for recovery). */
+    @FunctionalInterface
+    public interface IdScan {
+        List<String> ids() throws IOException;
+    }
+
+    private static final Map<Path, IdSequence> INSTANCES = new ConcurrentHashMap<>();
+
+    private static final int MAGIC = 0x49534551; // "ISEQ"
+    private static final int FILE_SIZE = 64;
+    private static final int OFF_WIDTH = 4;
+    private static final int OFF_HIGH = 8;
+    private static final int OFF_PREFIX = 16;
+    private static final int MAX_PREFIX_BYTES = FILE_SIZE - OFF_PREFIX - 2;
+
+    private final Path seqPath;
+    private final int blockSize;
+    private final String defaultPrefix;
+    private final int defaultWidth;
+    private final IdScan scan;
+
+    // Kept open for the life of the process: the lock is taken on it once per block
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+
+    private String prefix;
+    private int width;
+
+    // Local (lo) part: next number to hand out, and the last number of our reserved block
+    private final AtomicLong next = new AtomicLong(1);
+    private volatile long blockEnd = 0;
+
+    private IdSequence(Path seqPath, int blockSize, String defaultPrefix, int defaultWidth, IdScan scan) {
+        this.seqPath = seqPath;
+        this.blockSize = blockSize;
+        this.defaultPrefix = defaultPrefix;
+        this.defaultWidth = defaultWidth;
+        this.scan = scan;
+    }
+
+    /**
+     * Shared sequence for a CSV. defaultPrefix/defaultWidth are used when the table is empty
+     * (e.g. "RX", 3 for prescriptions).
+     */
+    public static IdSequence forTable(Path csvPath, String defaultPrefix, int defaultWidth, IdScan scan) {
+        Path key = csvPath.toAbsolutePath().normalize();
+        return INSTANCES.computeIfAbsent(key, p -> new IdSequence(
+                seqPathOf(p),
+                Math.max(1, Integer.getInteger("idsequence.blockSize", 16)),
+                defaultPrefix, defaultWidth, scan));
+    }
+
+    /** Next ID, e.g. "A013". Only touches the counter file when the local block is used up. */
+    public String next() throws IOException {
+        while (true) {
+            long n = next.get();
+            if (n > blockEnd) {
+                reserveBlock(n);
+                continue;
+            }
+            if (next.compareAndSet(n, n + 1)) return IdGenerator.format(prefix, width, n);
+        }
+    }
+
+    /**
+     * 'count' consecutive IDs reserved in ONE step (bulk import): one lock, one counter write.
+     * The local block used by next() is left alone.
+     */
+    public List<String> next(int count) throws IOException {
+        if (count <= 0) return List.of();
+        long first = reserve(count) + 1;
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) ids.add(IdGenerator.format(prefix, width, first + i));
+        return ids;
+    }
+
+    public Path getSequencePath() {
+        return seqPath;
+    }
+
+    private static Path seqPathOf(Path csvPath) {
+        Path p = csvPath.toAbsolutePath().normalize();
+        return p.resolveSibling(p.getFileName() + ".seq");
+    }
+
+    // ------------------- hi: block reservation -------------------
+
+    /** Refills the local block (unless another thread just did). */
+    private synchronized void reserveBlock(long seen) throws IOException {
+        if (next.get() != seen || seen <= blockEnd) return; // someone else refilled
+
+        long high = reserve(blockSize);
+
+        // next first, then blockEnd: a thread that sees the new blockEnd also sees the new next
+        next.set(high + 1);
+        blockEnd = high + blockSize;
+    }
+
+    /**
+     * Bumps the shared high-water mark by 'count' under the OS lock.
+     * Returns the previous mark: the caller owns (previous, previous + count].
+     */
+    private synchronized long reserve(long count) throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(seqPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        FileLock lock = channel.lock();
+        try {
+            if (mapped == null || channel.size() < FILE_SIZE || mapped.getInt(0) != MAGIC) {
+                initialize();
+            }
+
+            long high = mapped.getLong(OFF_HIGH);
+            mapped.putLong(OFF_HIGH, high + count);
+            mapped.force();
+            return high;
+        } finally {
+            lock.release();
+        }
+    }
+
+    /** Maps the counter file; creates its content by scanning the table if it is empty/invalid. Lock held. */
+    private void initialize() throws IOException {
+        boolean fresh = channel.size() < FILE_SIZE;
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+
+        if (!fresh && mapped.getInt(0) == MAGIC) {
+            width = mapped.getInt(OFF_WIDTH);
+            byte[] p = new byte[mapped.getShort(OFF_PREFIX)];
+            mapped.get(OFF_PREFIX + 2, p);
+            prefix = new String(p, StandardCharsets.UTF_8);
+            return;
+        }
+
+        // Missing or unreadable counter: scan the table once
+        List<String> ids = new ArrayList<>(scan.ids());
+        ids.removeIf(id -> id == null || id.isBlank());
+
+        long high;
+        if (ids.isEmpty()) {
+            prefix = defaultPrefix;
+            width = defaultWidth;
+            high = 0;
+        } else {
+            String sample = ids.get(0).trim();
+            prefix = IdGenerator.extractPrefix(sample);
+            width = IdGenerator.extractNumericWidth(sample);
+            if (width <= 0) width = 4;
+            high = IdGenerator.maxSuffix(ids, prefix);
+        }
+
+        write(mapped, seqPath, prefix, width, high);
+    }
+
+    private static void write(MappedByteBuffer mapped, Path seqPath, String prefix, int width, long high) throws IOException {
+        byte[] p = prefix.getBytes(StandardCharsets.UTF_8);
+        if (p.length > MAX_PREFIX_BYTES) throw new IOException("ID prefix too long for " + seqPath + ": " + prefix);
+
+        mapped.putInt(OFF_WIDTH, width);
+        mapped.putLong(OFF_HIGH, high);
+        mapped.putShort(OFF_PREFIX, (short) p.length);
+        mapped.put(OFF_PREFIX + 2, p);
+        mapped.putInt(0, MAGIC); // last: a half-written file is re-initialized next time
+        mapped.force();
+    }
+
+    // ------------------- migration -------------------
+
+    /**
+     * Creates (or raises) the counter of csvPath for a table whose rows were moved from fromCsvPath
+     * (PartitionedAppointments.split). The high-water mark becomes the higher of fromCsvPath's counter,
+     * which also covers IDs handed out and deleted since, and the largest ID the scan returns.
+     * An existing counter is never lowered; prefix/width come from the old counter, else the IDs.
+     */
+    public static void seed(Path csvPath, Path fromCsvPath, String defaultPrefix, int defaultWidth, IdScan scan)
+            throws IOException {
+        String prefix = null;
+        int width = defaultWidth;
+        long high = 0;
+
+        try (FileChannel from = FileChannel.open(seqPathOf(fromCsvPath), StandardOpenOption.READ)) {
+            ByteBuffer old = ByteBuffer.allocate(FILE_SIZE);
+            FileLock lock = from.lock(0, Long.MAX_VALUE, true);
+            try {
+                while (old.hasRemaining() && from.read(old) >= 0) { }
+            } finally {
+                lock.release();
+            }
+            if (old.position() == FILE_SIZE && old.getInt(0) == MAGIC) {
+                width = old.getInt(OFF_WIDTH);
+                high = old.getLong(OFF_HIGH);
+                byte[] p = new byte[old.getShort(OFF_PREFIX)];
+                old.get(OFF_PREFIX + 2, p);
+                prefix = new String(p, StandardCharsets.UTF_8);
+            }
+        } catch (NoSuchFileException e) {
+            // never had a counter: the scan alone decides
+        }
+
+        List<String> ids = new ArrayList<>(scan.ids());
+        ids.removeIf(id -> id == null || id.isBlank());
+        if (prefix == null && !ids.isEmpty()) {
+            String sample = ids.get(0).trim();
+            prefix = IdGenerator.extractPrefix(sample);
+            width = IdGenerator.extractNumericWidth(sample);
+            if (width <= 0) width = 4;
+        }
+        if (prefix == null) prefix = defaultPrefix;
+        high = Math.max(high, IdGenerator.maxSuffix(ids, prefix));
+
+        Path seqPath = seqPathOf(csvPath);
+        try (FileChannel ch = FileChannel.open(seqPath, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileLock lock = ch.lock();
+            try {
+                boolean fresh = ch.size() < FILE_SIZE;
+                MappedByteBuffer mapped = ch.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+                if (!fresh && mapped.getInt(0) == MAGIC) {
+                    if (mapped.getLong(OFF_HIGH) < high) {
+                        mapped.putLong(OFF_HIGH, high);
+                        mapped.force();
+                    }
+                } else {
+                    write(mapped, seqPath, prefix, width, high);
+                }
+            } finally {
+                lock.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ImportReport (result of a bulk import)
+ * - One Entry per input row, in input order.
+ * - Imported rows carry their generated ID; rejected rows carry the reason.
+ *
+ * Rejected rows are simply not written; the rest of the batch is.
+ */
+public final class ImportReport {
+
+    /** Outcome for one input row. */
+    public static final class Entry {
+        private final int row;
+        private final String id;
+        private final String error;
+
+        private Entry(int row, String id, String error) {
+            this.row = row;
+            this.id = id;
+            this.error = error;
+        }
+
+        /** 0-based position in the input list. */
+        public int getRow() { return row; }
+
+        /** Generated ID, or null if rejected. */
+        public String getId() { return id; }
+
+        /** Why the row was rejected, or null if imported. */
+        public String getError() { return error; }
+
+        public boolean isImported() { return error == null; }
+
+        @Override
+        public String toString() {
+            return isImported() ? "row " + row + ": " + id : "row " + row + ": rejected (" + error + ")";
+        }
+    }
+
+    private final List<Entry> entries;
+    private final int imported;
+
+    private ImportReport(List<Entry> entries, int imported) {
+        this.entries = Collections.unmodifiableList(entries);
+        this.imported = imported;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public int getImportedCount() {
+        return imported;
+    }
+
+    public int getRejectedCount() {
+        return entries.size() - imported;
+    }
+
+    /** Generated IDs of the imported rows, in input order. */
+    public List<String> getImportedIds() {
+        List<String> ids = new ArrayList<>(imported);
+        for (Entry e : entries) {
+            if (e.isImported()) ids.add(e.id);
+        }
+        return ids;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportReport[imported=" + imported + ", rejected=" + getRejectedCount() + "]";
+    }
+
+    // ------------------- building (repositories) -------------------
+
+    /** Collects entries while a repository validates and writes a batch. */
+    static final class Builder {
+        private final Entry[] entries;
+        private int imported;
+
+        Builder(int size) {
+            this.entries = new Entry[size];
+        }
+
+        void imported(int row, String id) {
+            entries[row] = new Entry(row, id, null);
+            imported++;
+        }
+
+        void rejected(int row, String error) {
+            entries[row] = new Entry(row, null, error);
+        }
+
+        ImportReport build() {
+            return new ImportReport(List.of(entries), imported);
+        }
+    }
+}
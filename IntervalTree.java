@@ -0,0 +1,168 @@
+package repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * IntervalTree (one clinician's calendar)
+ * - Half-open intervals [start, end) in absolute minutes (epoch day * 1440 + minute of day),
+ *   each carrying a value (the appointment).
+ * - AVL tree ordered by (start, id); every node also stores the max end of its subtree,
+ *   so an overlap query skips whole subtrees: O(log n + k) for k hits.
+ *
+ * Not thread-safe; guarded by AppointmentRepository like the rest of AppointmentIndex.
+ */
+final class IntervalTree<V> {
+
+    private static final class Node<V> {
+        final long start;
+        final long end;
+        final String id;
+        final V value;
+
+        Node<V> left;
+        Node<V> right;
+        int height = 1;
+        long maxEnd;
+
+        Node(long start, long end, String id, V value) {
+            this.start = start;
+            this.end = end;
+            this.id = id;
+            this.value = value;
+            this.maxEnd = end;
+        }
+    }
+
+    private Node<V> root;
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Adds an interval; (start, id) must not be present already. */
+    void insert(long start, long end, String id, V value) {
+        root = insert(root, new Node<>(start, end, id, value));
+        size++;
+    }
+
+    /** Removes the interval with this start and id (no-op if absent). */
+    void remove(long start, String id) {
+        root = remove(root, start, id);
+    }
+
+    /** Values whose interval overlaps [start, end), ordered by start; excludeId is skipped (may be null). */
+    List<V> overlapping(long start, long end, String excludeId) {
+        List<V> out = new ArrayList<>();
+        collect(root, start, end, excludeId, out);
+        return out;
+    }
+
+    // ------------------- query -------------------
+
+    private static <V> void collect(Node<V> n, long start, long end, String excludeId, List<V> out) {
+        if (n == null || n.maxEnd <= start) return; // nothing in this subtree ends after start
+
+        collect(n.left, start, end, excludeId, out);
+
+        if (n.start >= end) return; // this node and everything to the right start too late
+        if (n.end > start && !n.id.equals(excludeId)) out.add(n.value);
+
+        collect(n.right, start, end, excludeId, out);
+    }
+
+    // ------------------- AVL maintenance -------------------
+
+    private static int compare(long start, String id, Node<?> n) {
+        int c = Long.compare(start, n.start);
+        return c != 0 ? c : id.compareTo(n.id);
+    }
+
+    private Node<V> insert(Node<V> n, Node<V> fresh) {
+        if (n == null) return fresh;
+        if (compare(fresh.start, fresh.id, n) < 0) {
+            n.left = insert(n.left, fresh);
+        } else {
+            n.right = insert(n.right, fresh);
+        }
+        return balance(n);
+    }
+
+    private Node<V> remove(Node<V> n, long start, String id) {
+        if (n == null) return null;
+
+        int c = compare(start, id, n);
+        if (c < 0) {
+            n.left = remove(n.left, start, id);
+        } else if (c > 0) {
+            n.right = remove(n.right, start, id);
+        } else {
+            size--;
+            if (n.left == null) return n.right;
+            if (n.right == null) return n.left;
+
+            // Replace with the smallest node of the right subtree
+            Node<V> min = n.right;
+            while (min.left != null) min = min.left;
+            min.right = removeMin(n.right);
+            min.left = n.left;
+            return balance(min);
+        }
+        return balance(n);
+    }
+
+    private Node<V> removeMin(Node<V> n) {
+        if (n.left == null) return n.right;
+        n.left = removeMin(n.left);
+        return balance(n);
+    }
+
+    private static int height(Node<?> n) {
+        return n == null ? 0 : n.height;
+    }
+
+    private static <V> void update(Node<V> n) {
+        n.height = 1 + Math.max(height(n.left), height(n.right));
+        long m = n.end;
+        if (n.left != null) m = Math.max(m, n.left.maxEnd);
+        if (n.right != null) m = Math.max(m, n.right.maxEnd);
+        n.maxEnd = m;
+    }
+
+    private Node<V> balance(Node<V> n) {
+        update(n);
+        int diff = height(n.left) - height(n.right);
+        if (diff > 1) {
+            if (height(n.left.left) < height(n.left.right)) n.left = rotateLeft(n.left);
+            return rotateRight(n);
+        }
+        if (diff < -1) {
+            if (height(n.right.right) < height(n.right.left)) n.right = rotateRight(n.right);
+            return rotateLeft(n);
+        }
+        return n;
+    }
+
+    private Node<V> rotateRight(Node<V> n) {
+        Node<V> l = n.left;
+        n.left = l.right;
+        l.right = n;
+        update(n);
+        update(l);
+        return l;
+    }
+
+    private Node<V> rotateLeft(Node<V> n) {
+        Node<V> r = n.right;
+        n.right = r.left;
+        r.left = n;
+        update(n);
+        update(r);
+        return r;
+    }
+}
@@ -0,0 +1,58 @@
+package repository;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LogCompactor (background)
+ * - One daemon thread that periodically checks every registered ChangeLog.
+ * - Folds a log into its CSV once it grows past COMPACT_THRESHOLD_BYTES.
+ *
+ * Writers never wait for this: they keep appending to the fresh log while a
+ * rotated log is being folded (see ChangeLog.compactNow()).
+ */
+public final class LogCompactor {
+
+    /** Fold a table's log once it reaches this size. */
+    public static final long COMPACT_THRESHOLD_BYTES = 4L * 1024 * 1024;
+
+    private static final long CHECK_INTERVAL_SECONDS = 10;
+
+    private static final Set<ChangeLog> LOGS = ConcurrentHashMap.newKeySet();
+    private static ScheduledExecutorService scheduler;
+
+    private LogCompactor() {
+        // Utility class: prevent instantiation
+    }
+
+    /** Starts watching a log (starts the background thread on first use). */
+    public static synchronized void register(ChangeLog log) {
+        LOGS.add(log);
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "csv-log-compactor");
+                t.setDaemon(true);
+                return t;
+            });
+            scheduler.scheduleWithFixedDelay(LogCompactor::runOnce,
+                    CHECK_INTERVAL_SECONDS, CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /** One pass over all logs; failures are reported and retried on the next pass. */
+    static void runOnce() {
+        for (ChangeLog log : LOGS) {
+            try {
+                if (log.pendingBytes() >= COMPACT_THRESHOLD_BYTES) {
+                    log.compactNow();
+                }
+            } catch (IOException e) {
+                System.err.println("Compaction failed for " + log.getCsvPath() + ": " + e.getMessage());
+            }
+        }
+    }
+}
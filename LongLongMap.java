@@ -0,0 +1,113 @@
+package repository;
+
+import java.util.Arrays;
+
+/**
+ * LongLongMap (primitive long -> long hash map)
+ * - Open addressing with linear probing over two parallel long[] arrays: no boxing, no entry
+ *   objects, ~32 bytes per entry at the default load factor (a HashMap<Long, Long> needs ~80).
+ * - Key 0 marks an empty bucket; a real 0 key is kept in a separate field.
+ * - get() returns MISSING (Long.MIN_VALUE) for absent keys, so values must not use that number.
+ *
+ * Not thread-safe; owners guard it (see PatientIndex).
+ */
+final class LongLongMap {
+
+    static final long MISSING = Long.MIN_VALUE;
+
+    private static final double LOAD_FACTOR = 0.5;
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+
+    private boolean hasZero;
+    private long zeroValue;
+
+    LongLongMap(int expected) {
+        allocate(capacityFor(expected));
+    }
+
+    int size() {
+        return size + (hasZero ? 1 : 0);
+    }
+
+    long get(long key) {
+        if (key == 0) return hasZero ? zeroValue : MISSING;
+        int i = slot(key);
+        while (true) {
+            long k = keys[i];
+            if (k == key) return values[i];
+            if (k == 0) return MISSING;
+            i = (i + 1) & mask;
+        }
+    }
+
+    /** Stores the value; returns the previous one or MISSING. */
+    long put(long key, long value) {
+        if (key == 0) {
+            long old = hasZero ? zeroValue : MISSING;
+            hasZero = true;
+            zeroValue = value;
+            return old;
+        }
+        int i = slot(key);
+        while (true) {
+            long k = keys[i];
+            if (k == key) {
+                long old = values[i];
+                values[i] = value;
+                return old;
+            }
+            if (k == 0) break;
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > keys.length * LOAD_FACTOR) grow();
+        return MISSING;
+    }
+
+    void clear() {
+        Arrays.fill(keys, 0);
+        size = 0;
+        hasZero = false;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(keys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long k = oldKeys[i];
+            if (k == 0) continue;
+            int j = slot(k);
+            while (keys[j] != 0) j = (j + 1) & mask;
+            keys[j] = k;
+            values[j] = oldValues[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    private int slot(long key) {
+        // murmur3 finalizer: sequential keys (NHS numbers) must not cluster
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    private static int capacityFor(int expected) {
+        long needed = (long) Math.ceil(Math.max(expected, 8) / LOAD_FACTOR);
+        return (int) Math.min(1L << 30, Long.highestOneBit(needed - 1) << 1);
+    }
+}
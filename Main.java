@@ -1,13 +1,24 @@
 package app;
 
 import controller.DashboardController;
+import repository.PartitionedAppointments;
+import repository.PersistenceMode;
+import repository.SymbolTable;
 import view.DashboardFrame;
 
 import javax.swing.SwingUtilities;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 public class Main {
     public static void main(String[] args) {
+        // -Dsymbols.report=true prints per-column interning stats on exit
+        if (Boolean.getBoolean("symbols.report")) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.print(SymbolTable.reportAll())));
+        }
+
         SwingUtilities.invokeLater(() -> {
 
             Path patientsCsv = Path.of("data", "patients.csv");
@@ -16,6 +27,25 @@ public class Main {
             Path referralsCsv = Path.of("data", "referrals.csv");
             Path outDir = Path.of("data", "out");
 
+            // -Dpersistence.mode=CHANGE_LOG switches writes to append-only logs
+            PersistenceMode mode = PersistenceMode.valueOf(
+                    System.getProperty("persistence.mode", PersistenceMode.DIRECT.name()));
+
+            // -Dappointments.partitioned=true keeps one CSV per month in data/appointments/
+            // (split from appointments.csv the first time; the split renames a finished
+            // temp directory into place, so an existing directory is always complete)
+            if (Boolean.getBoolean("appointments.partitioned")) {
+                Path partitionDir = Path.of("data", "appointments");
+                if (!Files.isDirectory(partitionDir)) {
+                    try {
+                        PartitionedAppointments.split(appointmentsCsv, partitionDir, mode);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                appointmentsCsv = partitionDir;
+            }
+
             DashboardFrame dashboard = new DashboardFrame();
             DashboardController controller = new DashboardController(
                     dashboard,
@@ -23,7 +53,8 @@ public class Main {
                     appointmentsCsv,
                     prescriptionsCsv,
                     referralsCsv,
-                    outDir
+                    outDir,
+                    mode
             );
 
             controller.start();
@@ -1,35 +1,60 @@
 package controller;
 
 import model.Patient;
-import repository.PatientRepository;
+import repository.DataContext;
 import view.PatientTableFrame;
 
 import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 /**
  * MainController (CONTROLLER)
  * - Calls repository to fetch data
  * - Updates view
  * - Handles user-facing error messages
+ * - Patient search goes through PatientRepository.search (indexed, top results only), on a
+ *   SwingWorker: building the indexes takes seconds on a large patients.csv and must not freeze the EDT
  */
 public class MainController {
 
-    private final PatientRepository patientRepository;
+    // Rows shown for a search (the index ranks them; the rest are worse matches)
+    private static final int SEARCH_LIMIT = 50;
+
+    // Shared tables (patients are parsed once and reused until patients.csv changes)
+    private final DataContext data;
     private final PatientTableFrame patientView;
 
-    public MainController(PatientRepository patientRepository, PatientTableFrame patientView) {
-        this.patientRepository = patientRepository;
+    // Latest search; an older one finishing after it (or after Show All) is ignored
+    private SwingWorker<List<Patient>, Void> pendingSearch;
+
+    public MainController(DataContext data, PatientTableFrame patientView) {
+        this.data = data;
         this.patientView = patientView;
+
+        patientView.getSearchButton().addActionListener(e -> search());
+        patientView.getShowAllButton().addActionListener(e -> showAll());
     }
 
     public void start() {
         try {
-            List<Patient> patients = patientRepository.loadAll();
+            List<Patient> patients = data.patients();
             patientView.setPatients(patients);
+            patientView.setStatus("Loaded " + patients.size() + " patients");
             patientView.setVisible(true);
 
+            // Indexes are built in the background so the first search does not wait for them
+            // (a failure here is reported by the search that retries it)
+            new SwingWorker<Void, Void>() {
+                @Override
+                protected Void doInBackground() throws IOException {
+                    data.getPatientRepository().warmUp();
+                    return null;
+                }
+            }.execute();
+
         } catch (IOException e) {
             JOptionPane.showMessageDialog(
                     null,
@@ -39,4 +64,51 @@ public class MainController {
             );
         }
     }
+
+    private void search() {
+        String query = patientView.getSearchInput();
+        if (query.isEmpty()) {
+            showAll();
+            return;
+        }
+        patientView.setStatus("Searching for \"" + query + "\"...");
+
+        SwingWorker<List<Patient>, Void> worker = new SwingWorker<>() {
+            @Override
+            protected List<Patient> doInBackground() throws IOException {
+                return data.getPatientRepository().search(query, SEARCH_LIMIT);
+            }
+
+            @Override
+            protected void done() {
+                if (pendingSearch != this) return;
+                pendingSearch = null;
+                try {
+                    List<Patient> found = get();
+                    patientView.setPatients(found);
+                    patientView.setStatus(found.isEmpty()
+                            ? "No patients match \"" + query + "\""
+                            : found.size() + " best match(es) for \"" + query + "\"");
+                } catch (ExecutionException e) {
+                    patientView.setStatus("Search failed: " + e.getCause().getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        pendingSearch = worker;
+        worker.execute();
+    }
+
+    private void showAll() {
+        pendingSearch = null;
+        patientView.clearSearchInput();
+        try {
+            List<Patient> patients = data.patients();
+            patientView.setPatients(patients);
+            patientView.setStatus("Loaded " + patients.size() + " patients");
+        } catch (IOException e) {
+            patientView.setStatus("Failed to load patients.csv: " + e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,220 @@
+package repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * MappedCsvLoader (large files)
+ * - Memory-maps the CSV with FileChannel.map (no BufferedReader).
+ * - Splits the file into chunks that start at a row boundary OUTSIDE quotes.
+ * - Parses chunks in parallel on the common ForkJoinPool and merges them in file order.
+ *
+ * How the split stays quote-safe:
+ * 1) The file is cut into equal tentative segments and each segment counts its '"' bytes (parallel).
+ * 2) A running parity of those counts tells whether each cut point lies inside a quoted cell.
+ * 3) From each cut point we scan forward (with that quote state) to the next real line break.
+ * An escaped quote ("") adds two to the count, so the parity stays correct.
+ */
+public final class MappedCsvLoader {
+
+    /** Target chunk size. Each chunk is parsed by one task. */
+    static final long CHUNK_SIZE = 16L * 1024 * 1024;
+
+    private MappedCsvLoader() {
+        // Utility class: prevent instantiation
+    }
+
+    /**
+     * Loads every data row (header skipped) through the mapper, keeping file order.
+     */
+    public static <T> List<T> load(Path csvPath, RowMapper<T> mapper) throws IOException {
+        return load(csvPath, Projection.ALL, mapper);
+    }
+
+    /**
+     * Same as load(Path, RowMapper) but each chunk parser only copies projected cells.
+     */
+    public static <T> List<T> load(Path csvPath, Projection projection, RowMapper<T> mapper) throws IOException {
+        try (FileChannel channel = FileChannel.open(csvPath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) return new ArrayList<>();
+
+            long[] bounds = splitAtRowBoundaries(channel, size);
+
+            List<Callable<List<T>>> tasks = new ArrayList<>();
+            for (int i = 0; i < bounds.length - 1; i++) {
+                long start = bounds[i];
+                long end = bounds[i + 1];
+                boolean skipHeader = (i == 0);
+                tasks.add(() -> parseChunk(channel, start, end, skipHeader, projection, mapper));
+            }
+
+            List<List<T>> parts = invokeAll(tasks);
+
+            int total = 0;
+            for (List<T> part : parts) total += part.size();
+
+            List<T> merged = new ArrayList<>(total);
+            for (List<T> part : parts) merged.addAll(part);
+            return merged;
+        }
+    }
+
+    // ------------------- chunking -------------------
+
+    /**
+     * Returns sorted chunk boundaries: [0, b1, b2, ..., size].
+     * Every inner boundary is the first byte after a line break that is not inside quotes.
+     */
+    static long[] splitAtRowBoundaries(FileChannel channel, long size) throws IOException {
+        int segments = (int) Math.max(1, (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        if (segments == 1) return new long[]{0, size};
+
+        // 1) Count quotes per tentative segment (parallel)
+        List<Callable<Long>> counts = new ArrayList<>();
+        for (int i = 0; i < segments; i++) {
+            long start = i * CHUNK_SIZE;
+            long end = Math.min(size, start + CHUNK_SIZE);
+            counts.add(() -> countQuotes(channel, start, end));
+        }
+        List<Long> quoteCounts = invokeAll(counts);
+
+        // 2) Prefix parity -> "is the cut point inside quotes?"
+        boolean[] inQuotesAtCut = new boolean[segments];
+        long running = 0;
+        for (int i = 0; i < segments; i++) {
+            inQuotesAtCut[i] = (running & 1) == 1;
+            running += quoteCounts.get(i);
+        }
+
+        // 3) Move each cut forward to the next real row start (parallel)
+        List<Callable<Long>> seeks = new ArrayList<>();
+        for (int i = 1; i < segments; i++) {
+            long cut = i * CHUNK_SIZE;
+            boolean inQuotes = inQuotesAtCut[i];
+            seeks.add(() -> nextRowStart(channel, cut, size, inQuotes));
+        }
+        List<Long> starts = invokeAll(seeks);
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        for (long b : starts) {
+            // Very long rows can swallow a whole segment: drop duplicate/backward bounds
+            if (b > bounds.get(bounds.size() - 1) && b < size) bounds.add(b);
+        }
+        bounds.add(size);
+
+        long[] out = new long[bounds.size()];
+        for (int i = 0; i < out.length; i++) out[i] = bounds.get(i);
+        return out;
+    }
+
+    private static long countQuotes(FileChannel channel, long start, long end) throws IOException {
+        MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        long quotes = 0;
+        int len = buf.limit();
+        for (int i = 0; i < len; i++) {
+            if (buf.get(i) == '"') quotes++;
+        }
+        return quotes;
+    }
+
+    private static long nextRowStart(FileChannel channel, long from, long size, boolean inQuotes) throws IOException {
+        long pos = from;
+        while (pos < size) {
+            long len = Math.min(CHUNK_SIZE, size - pos);
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, pos, len);
+            for (int i = 0; i < len; i++) {
+                byte b = buf.get(i);
+                if (b == '"') {
+                    inQuotes = !inQuotes;
+                } else if (b == '\n' && !inQuotes) {
+                    return pos + i + 1;
+                }
+            }
+            pos += len;
+        }
+        return size;
+    }
+
+    // ------------------- parsing -------------------
+
+    private static <T> List<T> parseChunk(FileChannel channel, long start, long end,
+                                          boolean skipHeader, Projection projection,
+                                          RowMapper<T> mapper) throws IOException {
+        List<T> out = new ArrayList<>();
+        if (end <= start) return out;
+
+        MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+
+        try (CsvReader reader = new CsvReader(new InputStreamReader(
+                new ByteBufferInputStream(buf), StandardCharsets.UTF_8), projection)) {
+
+            CsvRow row;
+            if (skipHeader) reader.next();
+
+            while ((row = reader.next()) != null) {
+                T item = mapper.map(row);
+                if (item != null) out.add(item);
+            }
+        }
+        return out;
+    }
+
+    private static <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> f : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                results.add(f.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading CSV", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+        return results;
+    }
+
+    /**
+     * Minimal InputStream over a (mapped) ByteBuffer, so UTF-8 decoding streams
+     * instead of decoding a whole chunk into one big char array.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? (buf.get() & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buf.hasRemaining()) return -1;
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+    }
+}
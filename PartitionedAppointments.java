@@ -0,0 +1,566 @@
+package repository;
+
+import model.Appointment;
+import model.AppointmentRecord;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * PartitionedAppointments (appointments split by month of appointment_date)
+ * - data/appointments/2025-09.csv, 2025-10.csv, ...; rows without a readable date go to undated.csv.
+ * - Each partition is an ordinary appointments CSV with its own AppointmentRepository
+ *   (row-offset index, change log, in-memory indexes), opened on first use.
+ * - Date-bounded queries open only the partitions their range touches; writes touch only the
+ *   partition holding the row, so cancel/update/compaction cost follows the size of one month.
+ * - findById/cancel/update are routed through an ID -> partition directory, built from the
+ *   partitions' row-offset indexes; on a miss only partitions whose files changed are rescanned.
+ * - Changing an appointment's month moves it: insert into the new partition, delete from the old.
+ * - One IdSequence for the whole directory (appointments.seq next to it).
+ * - Each month has its own archive (2025-09.csv.archive/); only months before the cutoff are archived.
+ *
+ * Used by AppointmentRepository when it is given a directory instead of a CSV file.
+ */
+public final class PartitionedAppointments {
+
+    static final String UNDATED = "undated";
+
+    private static final String CSV = ".csv";
+
+    // Archived rows copied per segment when a CSV is split (bounds what split holds in memory)
+    private static final int ARCHIVE_BATCH = 50_000;
+
+    private final Path dir;
+    private final PersistenceMode mode;
+    private final SymbolTable symbols;
+    private final TableLocks locks;
+    private final IdSequence sequence;
+
+    // partition key ("2025-09" / "undated") -> repository on <dir>/<key>.csv
+    private final Map<String, AppointmentRepository> partitions = new ConcurrentHashMap<>();
+
+    // appointment_id -> partition key, and the file state each partition was scanned at
+    private final Map<String, String> directory = new HashMap<>();
+    private final Map<String, FileStamp> scanned = new HashMap<>();
+
+    PartitionedAppointments(Path dir, PersistenceMode mode) {
+        this.dir = dir;
+        this.mode = mode;
+        this.symbols = SymbolTable.forTable(dir);
+        this.locks = TableLocks.forTable(dir);
+        this.sequence = IdSequence.forTable(dir, "A", 3, this::scanIds);
+    }
+
+    // ------------------- partitions -------------------
+
+    /** Partition an appointment belongs to. */
+    static String keyOf(AppointmentRecord a) {
+        return keyOf(a.getAppointmentDate());
+    }
+
+    static String keyOf(String appointmentDate) {
+        int day = Appointment.parseDate(appointmentDate);
+        return day == Appointment.NO_DATE ? UNDATED : YearMonth.from(LocalDate.ofEpochDay(day)).toString();
+    }
+
+    /** Existing partition keys, sorted (months in order, then "undated"). */
+    List<String> keys() throws IOException {
+        List<String> keys = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + CSV)) {
+            for (Path f : files) {
+                String name = f.getFileName().toString();
+                keys.add(name.substring(0, name.length() - CSV.length()));
+            }
+        }
+        keys.sort(null);
+        return keys;
+    }
+
+    /** Existing month partitions overlapping from..to (the undated partition never matches a range). */
+    List<String> keysBetween(LocalDate from, LocalDate to) throws IOException {
+        String lo = YearMonth.from(from).toString();
+        String hi = YearMonth.from(to).toString();
+        List<String> keys = new ArrayList<>();
+        for (String k : keys()) {
+            if (!k.equals(UNDATED) && k.compareTo(lo) >= 0 && k.compareTo(hi) <= 0) keys.add(k);
+        }
+        return keys;
+    }
+
+    /** Repository of an existing partition. */
+    private AppointmentRepository partition(String key) {
+        return partitions.computeIfAbsent(key, k -> new AppointmentRepository(file(k), mode));
+    }
+
+    /** Repository of a partition, creating its CSV (header only) if it does not exist yet. */
+    private AppointmentRepository partitionForWrite(String key) throws IOException {
+        Path file = file(key);
+        if (!Files.exists(file)) {
+            Path tmp = dir.resolve(key + CSV + ".new");
+            Files.writeString(tmp, CsvUtil.toCsvLine(AppointmentRepository.HEADER), StandardCharsets.UTF_8);
+            try {
+                Files.move(tmp, file);
+            } catch (FileAlreadyExistsException e) {
+                Files.deleteIfExists(tmp); // created by another writer in the meantime
+            }
+        }
+        return partition(key);
+    }
+
+    private Path file(String key) {
+        return dir.resolve(key + CSV);
+    }
+
+    // ------------------- ID directory -------------------
+
+    /** Partition holding the ID, or null. Unknown IDs trigger a rescan of changed partitions only. */
+    private synchronized String locate(String id) throws IOException {
+        String key = directory.get(id);
+        if (key != null) return key;
+        rescanChanged();
+        return directory.get(id);
+    }
+
+    /** Same as locate, but the cached entry turned out to be wrong (the row moved elsewhere). */
+    private synchronized String relocate(String id) throws IOException {
+        directory.remove(id);
+        rescanChanged();
+        return directory.get(id);
+    }
+
+    private synchronized void placed(String id, String key) {
+        directory.put(id, key);
+    }
+
+    /** Re-reads the IDs of partitions whose files changed since they were last scanned. Caller holds the monitor. */
+    private void rescanChanged() throws IOException {
+        for (String key : keys()) {
+            FileStamp now = FileStamp.of(file(key));
+            if (now.equals(scanned.get(key))) continue;
+            for (String id : partition(key).ids()) directory.put(id, key);
+            scanned.put(key, now);
+        }
+    }
+
+    /** Every appointment_id in every partition (IdSequence recovery only). */
+    private List<String> scanIds() throws IOException {
+        List<String> ids = new ArrayList<>();
+        for (String key : keys()) ids.addAll(partition(key).sequenceIds());
+        return ids;
+    }
+
+    // ------------------- reads -------------------
+
+    List<Appointment> loadAll(Projection projection) throws IOException {
+        List<Appointment> out = new ArrayList<>();
+        for (String key : keys()) out.addAll(partition(key).loadAll(projection));
+        return out;
+    }
+
+    List<Appointment> loadWhere(Where where, Projection projection) throws IOException {
+        List<Appointment> out = new ArrayList<>();
+        for (String key : keys()) out.addAll(partition(key).loadWhere(where, projection));
+        return out;
+    }
+
+    /** Appointments with from <= date <= to; only the partitions of those months are read. */
+    List<Appointment> loadBetween(LocalDate from, LocalDate to, Projection projection) throws IOException {
+        List<Appointment> out = new ArrayList<>();
+        for (String key : keysBetween(from, to)) out.addAll(partition(key).loadBetween(from, to, projection));
+        return out;
+    }
+
+    AppointmentStore loadStore() throws IOException {
+        AppointmentStore store = new AppointmentStore(symbols);
+        for (String key : keys()) partition(key).forEachRow(store::add);
+        return store;
+    }
+
+    List<Appointment> loadClinicianDay(String clinicianId, String date) throws IOException {
+        int day = Appointment.parseDate(date);
+        if (day == Appointment.NO_DATE) {
+            // Unreadable dates only ever land in the undated partition
+            return keys().contains(UNDATED) ? partition(UNDATED).loadClinicianDay(clinicianId, date) : List.of();
+        }
+        LocalDate d = LocalDate.ofEpochDay(day);
+        List<Appointment> out = new ArrayList<>();
+        for (String key : keysBetween(d, d)) out.addAll(partition(key).loadClinicianDay(clinicianId, date));
+        return out;
+    }
+
+    List<Appointment> findOverlapping(AppointmentRecord candidate) throws IOException {
+        if (!candidate.hasDate() || !candidate.hasTime()) {
+            return loadClinicianDay(candidate.getClinicianId(), candidate.getAppointmentDate());
+        }
+        // An appointment late the day before can run past midnight
+        LocalDate day = LocalDate.ofEpochDay(candidate.getEpochDay());
+        List<Appointment> out = new ArrayList<>();
+        for (String key : keysBetween(day.minusDays(1), day.plusDays(1))) {
+            out.addAll(partition(key).findOverlapping(candidate));
+        }
+        return out;
+    }
+
+    Appointment findById(String id) throws IOException {
+        String key = locate(id);
+        Appointment a = key == null ? null : partition(key).findById(id);
+        if (a != null) return a;
+
+        String moved = relocate(id);
+        if (moved != null && !moved.equals(key)) return partition(moved).findById(id);
+
+        // Not in any hot partition: look in the months' archives
+        for (String k : keys()) {
+            a = partition(k).findArchived(id);
+            if (a != null) return a;
+        }
+        return null;
+    }
+
+    List<Appointment> findByPatient(String patientId) throws IOException {
+        List<Appointment> out = new ArrayList<>();
+        for (String key : keys()) out.addAll(partition(key).findByPatient(patientId));
+        return out;
+    }
+
+    List<Appointment> findByClinician(String clinicianId, LocalDate from, LocalDate to) throws IOException {
+        List<Appointment> out = new ArrayList<>();
+        for (String key : keysBetween(from, to)) out.addAll(partition(key).findByClinician(clinicianId, from, to));
+        return out;
+    }
+
+    List<Appointment> findByFacility(String facilityId, LocalDate from, LocalDate to) throws IOException {
+        List<Appointment> out = new ArrayList<>();
+        for (String key : keysBetween(from, to)) out.addAll(partition(key).findByFacility(facilityId, from, to));
+        return out;
+    }
+
+    List<Appointment> findByDateRange(LocalDate from, LocalDate to) throws IOException {
+        List<Appointment> out = new ArrayList<>();
+        for (String key : keysBetween(from, to)) out.addAll(partition(key).findByDateRange(from, to));
+        return out;
+    }
+
+    // ------------------- history / archiving -------------------
+
+    List<Appointment> loadHistory(Where where, Projection projection) throws IOException {
+        List<Appointment> out = new ArrayList<>();
+        for (String key : keys()) out.addAll(partition(key).loadHistory(where, projection));
+        return out;
+    }
+
+    List<Appointment> findHistoryByPatient(String patientId) throws IOException {
+        List<Appointment> out = new ArrayList<>();
+        for (String key : keys()) out.addAll(partition(key).findHistoryByPatient(patientId));
+        return out;
+    }
+
+    /** Archives the months up to the cutoff's; later months cannot hold rows before it. */
+    int archiveBefore(LocalDate cutoff) throws IOException {
+        int moved = 0;
+        try {
+            for (String key : keysBetween(LocalDate.of(1, 1, 1), cutoff)) moved += partition(key).archiveBefore(cutoff);
+        } finally {
+            FileStamp.markRewritten(dir);
+        }
+        return moved;
+    }
+
+    // ------------------- writes -------------------
+
+    String createAppointment(Appointment newAppointment) throws IOException {
+        String id = sequence.next();
+        Appointment toSave = AppointmentRepository.withId(id, newAppointment);
+        String key = keyOf(toSave);
+
+        partitionForWrite(key).insertAll(List.of(toSave));
+        placed(id, key);
+        FileStamp.markRewritten(dir);
+        return id;
+    }
+
+    ImportReport importAppointments(List<Appointment> batch) throws IOException {
+        ImportReport.Builder report = new ImportReport.Builder(batch.size());
+
+        List<Integer> accepted = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            String error = AppointmentRepository.importError(batch.get(i));
+            if (error != null) report.rejected(i, error);
+            else accepted.add(i);
+        }
+
+        // One ID reservation, then one append per touched partition
+        List<String> ids = sequence.next(accepted.size());
+        Map<String, List<Appointment>> byKey = new LinkedHashMap<>();
+        for (int k = 0; k < accepted.size(); k++) {
+            Appointment a = AppointmentRepository.withId(ids.get(k), batch.get(accepted.get(k)));
+            byKey.computeIfAbsent(keyOf(a), x -> new ArrayList<>()).add(a);
+        }
+        try {
+            for (Map.Entry<String, List<Appointment>> e : byKey.entrySet()) {
+                partitionForWrite(e.getKey()).insertAll(e.getValue());
+                for (Appointment a : e.getValue()) placed(a.getAppointmentId(), e.getKey());
+            }
+        } finally {
+            FileStamp.markRewritten(dir);
+        }
+
+        for (int k = 0; k < accepted.size(); k++) report.imported(accepted.get(k), ids.get(k));
+        return report.build();
+    }
+
+    boolean updateAppointment(Appointment updated) throws IOException {
+        String id = updated.getAppointmentId();
+        locks.lockRecord(id);
+        try {
+            String key = locate(id);
+            if (key == null) return false;
+            if (update(key, updated)) return true;
+
+            String moved = relocate(id);
+            return moved != null && !moved.equals(key) && update(moved, updated);
+        } finally {
+            locks.unlockRecord(id);
+            FileStamp.markRewritten(dir);
+        }
+    }
+
+    boolean updateIfVersion(Appointment updated, long expectedVersion) throws IOException, VersionConflictException {
+        String id = updated.getAppointmentId();
+        locks.lockRecord(id);
+        try {
+            String key = locate(id);
+            Appointment stored = key == null ? null : partition(key).findById(id);
+            if (stored == null) {
+                key = relocate(id);
+                if (key == null) return false;
+                stored = partition(key).findById(id);
+                if (stored == null) return false;
+            }
+
+            if (key.equals(keyOf(updated))) return partition(key).updateIfVersion(updated, expectedVersion);
+
+            // Month changed: check against the stored row ourselves, then move it (we hold the record lock)
+            long currentVersion = partition(key).versionOf(stored);
+            if (currentVersion != expectedVersion) throw new VersionConflictException(id, expectedVersion, currentVersion);
+            return move(key, updated);
+        } finally {
+            locks.unlockRecord(id);
+            FileStamp.markRewritten(dir);
+        }
+    }
+
+    boolean cancelAppointment(String id) throws IOException {
+        locks.lockRecord(id);
+        try {
+            String key = locate(id);
+            if (key == null) return false;
+            if (partition(key).cancelAppointment(id)) return true;
+
+            String moved = relocate(id);
+            return moved != null && !moved.equals(key) && partition(moved).cancelAppointment(id);
+        } finally {
+            locks.unlockRecord(id);
+            FileStamp.markRewritten(dir);
+        }
+    }
+
+    /** One cancelAll batch per partition that holds any of the IDs. */
+    int cancelAll(Collection<String> ids) throws IOException {
+        locks.lockStructure();
+        try {
+            int changed = 0;
+            for (Map.Entry<String, List<String>> e : groupByPartition(ids).entrySet()) {
+                changed += partition(e.getKey()).cancelAll(e.getValue());
+            }
+            return changed;
+        } finally {
+            locks.unlockStructure();
+            FileStamp.markRewritten(dir);
+        }
+    }
+
+    /** One updateAll batch per partition; appointments whose month changed are moved one by one. */
+    int updateAll(Collection<Appointment> updated) throws IOException {
+        Map<String, Appointment> byId = new LinkedHashMap<>();
+        for (Appointment a : updated) byId.put(a.getAppointmentId(), a);
+
+        locks.lockStructure();
+        try {
+            int changed = 0;
+            for (Map.Entry<String, List<String>> e : groupByPartition(byId.keySet()).entrySet()) {
+                String key = e.getKey();
+                List<Appointment> inPlace = new ArrayList<>();
+                for (String id : e.getValue()) {
+                    Appointment a = byId.get(id);
+                    if (key.equals(keyOf(a))) inPlace.add(a);
+                    else if (move(key, a)) changed++;
+                }
+                if (!inPlace.isEmpty()) changed += partition(key).updateAll(inPlace);
+            }
+            return changed;
+        } finally {
+            locks.unlockStructure();
+            FileStamp.markRewritten(dir);
+        }
+    }
+
+    /** Updates in place if the month is unchanged, else moves the row. */
+    private boolean update(String key, Appointment updated) throws IOException {
+        return key.equals(keyOf(updated)) ? partition(key).updateAppointment(updated) : move(key, updated);
+    }
+
+    /**
+     * Moves an appointment from partition 'from' to the partition of its new date.
+     * Inserted first, then deleted: a crash in between leaves a duplicate, never a lost row.
+     * Caller holds the record (or structure) lock.
+     */
+    private boolean move(String from, Appointment updated) throws IOException {
+        String id = updated.getAppointmentId();
+        if (partition(from).findById(id) == null) return false;
+
+        String to = keyOf(updated);
+        partitionForWrite(to).insertAll(List.of(updated));
+        partition(from).delete(id);
+        placed(id, to);
+        return true;
+    }
+
+    private Map<String, List<String>> groupByPartition(Collection<String> ids) throws IOException {
+        Map<String, List<String>> byKey = new TreeMap<>();
+        for (String id : ids) {
+            String key = locate(id);
+            if (key != null) byKey.computeIfAbsent(key, k -> new ArrayList<>()).add(id);
+        }
+        return byKey;
+    }
+
+    // ------------------- migration -------------------
+
+    /**
+     * Splits a single appointments CSV (plus its change log in CHANGE_LOG mode) into monthly
+     * partitions under dir, in one pass. All-or-nothing: the partitions are written to a sibling
+     * "<dir>.splitting" directory that is renamed to dir only once complete, so dir existing means
+     * a finished split. Refuses to run if dir already holds files (a re-run would duplicate rows).
+     * Archived rows (appointments.csv.archive/) go to the archives of their months, so findById and
+     * the history queries still reach them. The new sequence starts above both the old counter and
+     * every copied ID, archived ones included. The source files are left as they are.
+     */
+    public static void split(Path csvPath, Path dir, PersistenceMode mode) throws IOException {
+        if (Files.isDirectory(dir)) {
+            try (Stream<Path> existing = Files.list(dir)) {
+                if (existing.findAny().isPresent()) {
+                    throw new IOException("Not splitting into " + dir + ": it already holds partitions");
+                }
+            }
+        }
+
+        // Leftovers of an interrupted split are ours to discard
+        Path tmp = dir.resolveSibling(dir.getFileName() + ".splitting");
+        if (Files.isDirectory(tmp)) {
+            try (Stream<Path> stale = Files.walk(tmp)) {
+                for (Path f : (Iterable<Path>) stale.sorted(Comparator.reverseOrder())::iterator) Files.delete(f);
+            }
+        }
+        Files.createDirectories(tmp);
+        List<String> ids = new ArrayList<>();
+
+        String nl = System.lineSeparator();
+        Map<String, BufferedWriter> writers = new HashMap<>();
+        IOException[] failure = new IOException[1];
+
+        try {
+            new AppointmentRepository(csvPath, mode).forEachRow(r -> {
+                if (failure[0] != null || r.get(0).isBlank()) return;
+                ids.add(r.get(0));
+                try {
+                    String key = keyOf(r.get(AppointmentRepository.COL_DATE));
+                    BufferedWriter w = writers.get(key);
+                    if (w == null) {
+                        w = openPartition(tmp.resolve(key + CSV));
+                        writers.put(key, w);
+                    }
+                    w.write(nl);
+                    w.write(CsvUtil.toCsvLine(r.toArray()));
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+        } finally {
+            for (BufferedWriter w : writers.values()) w.close();
+        }
+        if (failure[0] != null) throw failure[0];
+
+        splitArchive(csvPath, tmp, writers.keySet(), ids);
+        IdSequence.seed(dir, csvPath, "A", 3, () -> ids);
+
+        Files.deleteIfExists(dir); // empty (checked above)
+        Files.move(tmp, dir, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Copies the archived rows of csvPath into the month archives under tmp, ARCHIVE_BATCH rows per
+     * segment at most; a month with no current rows gets a header-only partition.
+     */
+    private static void splitArchive(Path csvPath, Path tmp, Set<String> existing, List<String> ids) throws IOException {
+        Map<String, List<String[]>> pending = new HashMap<>();
+        Set<String> created = new HashSet<>(existing);
+        IOException[] failure = new IOException[1];
+
+        ArchiveStore.forTable(csvPath).forEachRow(Projection.ALL, r -> {
+            if (failure[0] != null) return;
+            String[] row = r.toArray();
+            ids.add(row[0]);
+            String key = keyOf(r.get(AppointmentRepository.COL_DATE));
+            List<String[]> rows = pending.computeIfAbsent(key, k -> new ArrayList<>());
+            rows.add(row);
+            if (rows.size() >= ARCHIVE_BATCH) {
+                try {
+                    archiveInto(tmp, key, rows, created);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        if (failure[0] != null) throw failure[0];
+
+        for (Map.Entry<String, List<String[]>> e : pending.entrySet()) archiveInto(tmp, e.getKey(), e.getValue(), created);
+    }
+
+    private static void archiveInto(Path tmp, String key, List<String[]> rows, Set<String> created) throws IOException {
+        if (rows.isEmpty()) return;
+        Path file = tmp.resolve(key + CSV);
+        if (created.add(key)) openPartition(file).close();
+        ArchiveStore.unshared(file).append(rows);
+        rows.clear();
+    }
+
+    /** Writer for a new partition file, header written. */
+    private static BufferedWriter openPartition(Path file) throws IOException {
+        BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        w.write(CsvUtil.toCsvLine(AppointmentRepository.HEADER));
+        return w;
+    }
+}
@@ -0,0 +1,231 @@
+package repository;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * PatientIndex (hash indexes over patients.csv, owned by PatientRepository)
+ * - byId        : 64-bit hash of patient_id -> row slot (LongLongMap; the row read back is checked)
+ * - byNhsNumber : NHS number as a primitive long -> row slot (LongLongMap)
+ * - A slot is the row's byte offset and length packed into one long, so the index holds no
+ *   Patient objects or Strings: a 3M-patient registry costs two arrays of longs, and a lookup is
+ *   one hash probe plus one positional read of that row.
+ *
+ * Built in one byte-level pass on first use. Kept in step with the CSV through its FileStamp:
+ * appended rows are indexed from the old end of the file; any other change rebuilds.
+ * Not thread-safe on its own; PatientRepository guards it.
+ */
+final class PatientIndex {
+
+    private static final int COL_ID = 0;
+    private static final int COL_NHS = 4;
+
+    // Slot = offset << LENGTH_BITS | length
+    private static final int LENGTH_BITS = 24;
+    private static final long LENGTH_MASK = (1L << LENGTH_BITS) - 1;
+
+    private final Path csvPath;
+
+    private final LongLongMap byId = new LongLongMap(1024);
+    private final LongLongMap byNhs = new LongLongMap(1024);
+
+    // The (astronomically rare) patient_ids whose 64-bit hash is already taken by another ID
+    private final Map<String, Long> idCollisions = new HashMap<>();
+
+    private FileStamp stamp;
+    private long tailHash;
+
+    // Read channel on the file the index describes (reopened whenever the stamp moves)
+    private FileChannel channel;
+
+    PatientIndex(Path csvPath) {
+        this.csvPath = csvPath;
+    }
+
+    // ------------------- lookups -------------------
+
+    /** Row of the patient with this ID, or null. */
+    String[] byId(String patientId) throws IOException {
+        refresh();
+        Long collided = idCollisions.get(patientId);
+        long slot = collided != null ? collided : byId.get(hash(patientId));
+        if (slot == LongLongMap.MISSING) return null;
+
+        String[] row = readRow(slot);
+        return row != null && row[COL_ID].equals(patientId) ? row : null;
+    }
+
+    /** Row of the patient with this NHS number (the last one in the file if repeated), or null. */
+    String[] byNhsNumber(long nhsNumber) throws IOException {
+        refresh();
+        long slot = byNhs.get(nhsNumber);
+        return slot == LongLongMap.MISSING ? null : readRow(slot);
+    }
+
+    int size() throws IOException {
+        refresh();
+        return byId.size() + idCollisions.size();
+    }
+
+    /** "485 777 3456" / "4857773456" -> 4857773456; -1 unless it is exactly 10 digits. */
+    static long parseNhsNumber(String text) {
+        if (text == null) return -1;
+        long n = 0;
+        int digits = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                n = n * 10 + (c - '0');
+                digits++;
+            } else if (c != ' ' && c != '-') {
+                return -1;
+            }
+        }
+        return digits == 10 ? n : -1;
+    }
+
+    // ------------------- freshness -------------------
+
+    /** Catches up with patients.csv (PatientRepository.warmUp calls it ahead of a lookup). */
+    void refresh() throws IOException {
+        FileStamp now = FileStamp.of(csvPath);
+        if (now.equals(stamp)) return;
+        closeChannel();
+
+        if (stamp != null && now.size > stamp.size && now.sameLogsAndRewrites(stamp)
+                && TableCache.hashBefore(csvPath, stamp.size) == tailHash) {
+            scan(stamp.size, false); // appended rows only
+        } else {
+            byId.clear();
+            byNhs.clear();
+            idCollisions.clear();
+            scan(0, true);
+        }
+        stamp = now;
+        tailHash = TableCache.hashBefore(csvPath, now.size);
+    }
+
+    /** Indexes every row starting at byte 'from' (a row boundary) up to the current end of the file. */
+    private void scan(long from, boolean skipHeader) throws IOException {
+        try (FileChannel ch = FileChannel.open(csvPath, StandardOpenOption.READ)) {
+            long size = ch.size();
+            ByteBuffer buf = ByteBuffer.allocate(256 * 1024);
+
+            long pos = from;
+            long rowStart = from;
+            boolean header = skipHeader;
+            boolean inQuotes = false;
+            byte prev = 0;
+            int cell = 0;
+            StringBuilder id = new StringBuilder();
+            long nhs = 0;      // NHS digits parsed on the fly (no String per row)
+            int nhsDigits = 0; // -1 once the cell holds anything but digits/spaces/dashes
+            byte[] bytes = buf.array();
+
+            while (pos < size) {
+                buf.clear();
+                int n = ch.read(buf, pos);
+                if (n <= 0) break;
+
+                for (int i = 0; i < n; i++) {
+                    byte b = bytes[i];
+                    if (b == '"') {
+                        inQuotes = !inQuotes;
+                    } else if (b == '\n' && !inQuotes) {
+                        long end = prev == '\r' ? pos + i - 1 : pos + i;
+                        if (!header) add(ch, id, nhsDigits == 10 ? nhs : -1, rowStart, end);
+                        header = false;
+                        rowStart = pos + i + 1;
+                        cell = 0;
+                        id.setLength(0);
+                        nhs = 0;
+                        nhsDigits = 0;
+                    } else if (b == ',' && !inQuotes) {
+                        cell++;
+                    } else if (cell == COL_ID) {
+                        if (b != '\r') id.append((char) b);
+                    } else if (cell == COL_NHS && nhsDigits >= 0) {
+                        if (b >= '0' && b <= '9') {
+                            nhs = nhs * 10 + (b - '0');
+                            nhsDigits++;
+                        } else if (b != ' ' && b != '-') {
+                            nhsDigits = -1;
+                        }
+                    }
+                    prev = b;
+                }
+                pos += n;
+            }
+            if (rowStart < size && !header) {
+                add(ch, id, nhsDigits == 10 ? nhs : -1, rowStart, prev == '\r' ? size - 1 : size);
+            }
+        }
+    }
+
+    private void add(FileChannel ch, StringBuilder idCell, long nhs, long start, long end) throws IOException {
+        int length = (int) (end - start);
+        String id = idCell.toString().trim();
+        if (length <= 0 || length > LENGTH_MASK || id.isEmpty()) return;
+
+        long slot = start << LENGTH_BITS | length;
+        long previous = byId.put(hash(id), slot);
+        if (previous != LongLongMap.MISSING) {
+            // Same hash: the same patient appended again (newer row wins), or a different ID
+            String[] other = readRow(ch, previous);
+            if (other != null && !other[COL_ID].equals(id)) {
+                byId.put(hash(id), previous);
+                idCollisions.put(id, slot);
+            }
+        }
+
+        if (nhs >= 0) byNhs.put(nhs, slot);
+    }
+
+    // ------------------- rows -------------------
+
+    private String[] readRow(long slot) throws IOException {
+        if (channel == null) channel = FileChannel.open(csvPath, StandardOpenOption.READ);
+        return readRow(channel, slot);
+    }
+
+    private void closeChannel() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // reopened on next read
+        }
+        channel = null;
+    }
+
+    private static String[] readRow(FileChannel ch, long slot) throws IOException {
+        long offset = slot >>> LENGTH_BITS;
+        ByteBuffer buf = ByteBuffer.allocate((int) (slot & LENGTH_MASK));
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, offset + buf.position()) < 0) return null;
+        }
+        buf.flip();
+        String line = StandardCharsets.UTF_8.decode(buf).toString();
+        try (CsvReader reader = new CsvReader(new StringReader(line), Projection.ALL, line.length() + 1)) {
+            CsvRow row = reader.next();
+            return row == null ? null : row.toArray();
+        }
+    }
+
+    /** 64-bit FNV-1a of the ID's chars (String.hashCode is only 32 bits: too many collisions at 3M). */
+    private static long hash(String id) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            h ^= id.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
@@ -12,6 +12,8 @@ import java.util.List;
  * - Reads patients.csv
  * - Converts rows into Patient objects
  * - Returns List<Patient>
+ * - findById / findByNhsNumber: hash-index lookups (PatientIndex), no scan of the file
+ * - search: surname/first-name prefix + typo, date of birth and postcode (PatientSearchIndex)
  *
  * MVC note: Repositories handle data access only. No GUI code here.
  */
@@ -19,31 +21,104 @@ public class PatientRepository {
 
     private final Path patientsCsvPath;
 
+    // patient_id / NHS number -> row, built on first lookup (guarded by this)
+    private final PatientIndex index;
+
+    // Name/date of birth/postcode search, built on first search. Read-only once built: a stale
+    // one is replaced under searchBuild, never under this, so lookups don't wait for a rebuild
+    private volatile PatientSearchIndex searchIndex;
+    private final Object searchBuild = new Object();
+
     public PatientRepository(Path patientsCsvPath) {
         this.patientsCsvPath = patientsCsvPath;
+        this.index = new PatientIndex(patientsCsvPath);
     }
 
     public List<Patient> loadAll() throws IOException {
-        List<String[]> rows = CsvUtil.readAll(patientsCsvPath);
+        // mapRows skips the header; large files use the snapshot / parallel loaders
+        return CsvUtil.mapRows(patientsCsvPath, this::toPatient);
+    }
+
+    /** Rows appended after byte offset 'from' (TableCache tail reload). */
+    List<Patient> loadFrom(long from) throws IOException {
+        return CsvUtil.mapRowsFrom(patientsCsvPath, from, Projection.ALL, this::toPatient);
+    }
+
+    // ------------------- indexed lookups -------------------
+
+    /** Patient with this ID, or null. */
+    public synchronized Patient findById(String patientId) throws IOException {
+        String[] r = index.byId(patientId);
+        return r == null ? null : toPatient(CsvRow.of(r));
+    }
+
+    /** Patient with this NHS number ("485 777 3456" or "4857773456"), or null. */
+    public Patient findByNhsNumber(String nhsNumber) throws IOException {
+        long n = PatientIndex.parseNhsNumber(nhsNumber);
+        return n < 0 ? null : findByNhsNumber(n);
+    }
 
-        List<Patient> patients = new ArrayList<>();
+    /** Patient with this NHS number, or null. */
+    public synchronized Patient findByNhsNumber(long nhsNumber) throws IOException {
+        String[] r = index.byNhsNumber(nhsNumber);
+        return r == null ? null : toPatient(CsvRow.of(r));
+    }
 
-        // rows[0] is the header. Start from 1.
-        for (int i = 1; i < rows.size(); i++) {
-            String[] r = rows.get(i);
+    // ------------------- search -------------------
 
-            // Defensive check: skip malformed rows
-            if (r.length < 14) continue;
+    /**
+     * Builds (or catches up) both indexes now, so the first lookup or search does not pay for it.
+     * Slow on a large file: call it off the EDT.
+     */
+    public void warmUp() throws IOException {
+        synchronized (this) {
+            index.refresh();
+        }
+        searchIndex();
+    }
 
-            Patient p = new Patient(
-                    r[0], r[1], r[2], r[3],
-                    r[4], r[5], r[6], r[7],
-                    r[8], r[9], r[10], r[11],
-                    r[12], r[13]
-            );
-            patients.add(p);
+    /**
+     * Best matches for a front-desk query, best first, at most 'limit'.
+     * E.g. "smi 1985-03-15", "jonson", "emma 22/07/1990", "smith B1 1AA": name tokens match the
+     * start of the last or first name (or the whole name with a typo or two), a date must equal
+     * date_of_birth, tokens with digits are a postcode prefix.
+     */
+    public List<Patient> search(String query, int limit) throws IOException {
+        List<Patient> out = new ArrayList<>();
+        if (query == null) return out;
+        for (String id : searchIndex().search(query, limit)) {
+            Patient p = findById(id);
+            if (p != null) out.add(p);
         }
+        return out;
+    }
+
+    /** The search index for the current patients.csv; one thread rebuilds, the others wait for it. */
+    private PatientSearchIndex searchIndex() throws IOException {
+        PatientSearchIndex current = searchIndex;
+        if (current != null && current.isCurrent()) return current;
+        synchronized (searchBuild) {
+            current = searchIndex;
+            if (current == null || !current.isCurrent()) {
+                current = PatientSearchIndex.load(patientsCsvPath);
+                searchIndex = current;
+            }
+            return current;
+        }
+    }
+
+    /**
+     * Maps one CSV row -> Patient. Returns null for malformed rows (skipped).
+     * Stateless, so the parallel loaders can call it from several threads.
+     */
+    private Patient toPatient(CsvRow r) {
+        if (r.size() < 14) return null;
 
-        return patients;
+        return new Patient(
+                r.get(0), r.get(1), r.get(2), r.get(3),
+                r.get(4), r.get(5), r.get(6), r.get(7),
+                r.get(8), r.get(9), r.get(10), r.get(11),
+                r.get(12), r.get(13)
+        );
     }
 }
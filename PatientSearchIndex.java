@@ -0,0 +1,642 @@
+package repository;
+
+import model.Appointment;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * PatientSearchIndex (front-desk search over patients.csv, owned by PatientRepository)
+ * - Three term dictionaries: last_name, first_name, postcode. Each is a SORTED array of the
+ *   distinct normalized values (a sorted prefix array: a prefix is one binary-searched range)
+ *   with CSR postings term -> patient ordinals.
+ * - Name dictionaries also carry a trigram index (term ids per 3-gram) for typos: candidates
+ *   must share enough trigrams with the query (q-gram lemma), then a bounded edit distance
+ *   (Levenshtein + adjacent swaps, the commonest typing slip) ranks them. Both run over
+ *   distinct names, not over patients.
+ * - Per patient: last/first/postcode term id and date_of_birth (epoch day) side by side in one
+ *   int[] (a candidate check is one cache line, not four), patient_ids in one byte[];
+ *   patients sorted by date of birth for date-only searches.
+ *
+ * Query: free text like "smi 1985-03-15", "jonson b2", "emma 22/07/1990". Date tokens filter
+ * date_of_birth, tokens with digits are a postcode prefix, every other token must match the last
+ * or first name (exact < prefix < typo; a surname match beats the same first-name match).
+ * Candidates come from the most selective token only, visited cheapest match first (and
+ * surnames in sorted order), so the scan stops as soon as the top-k can no longer change.
+ * Returns the top-k patient_ids by (score, last name, first name).
+ *
+ * Built in one pass and never changed afterwards, so any number of threads can search one
+ * instance. When patients.csv changes, PatientRepository builds a new one (off its monitor, so
+ * findById stays quick) and swaps it in.
+ */
+final class PatientSearchIndex {
+
+    private static final int COL_ID = 0;
+    private static final int COL_FIRST_NAME = 1;
+    private static final int COL_LAST_NAME = 2;
+    private static final int COL_DOB = 3;
+    private static final int COL_POSTCODE = 9;
+
+    // Score of one name token against a name (doubled; +1 when it is the first name)
+    private static final int EXACT = 0;
+    private static final int PREFIX = 1;
+    private static final int TYPO = 2; // + edit distance
+
+    // Per-patient fields, interleaved
+    private static final int FIELDS = 4;
+    private static final int F_LAST = 0;
+    private static final int F_FIRST = 1;
+    private static final int F_POSTCODE = 2;
+    private static final int F_DOB = 3;
+
+    // Name drivers stop early (cheapest matches first); a date/postcode driver must be this much smaller
+    private static final int DRIVER_BIAS = 8;
+
+    private final Path csvPath;
+    private final FileStamp stamp; // patients.csv as of the build (taken before reading it)
+
+    private int size;
+    private byte[] idBytes;
+    private int[] idStart;   // patient ordinal -> start in idBytes (size + 1 entries)
+    private int[] fields;    // fields[o * FIELDS + F_LAST / F_FIRST / F_POSTCODE / F_DOB]
+    private int[] byDob;     // ordinals sorted by date of birth
+    private int[] dobSorted; // date of birth of byDob[i]
+
+    private Terms lastNames;
+    private Terms firstNames;
+    private Terms postcodes;
+
+    private PatientSearchIndex(Path csvPath) throws IOException {
+        this.csvPath = csvPath;
+        this.stamp = FileStamp.of(csvPath);
+        build();
+    }
+
+    /** Reads patients.csv and builds a new index over it. */
+    static PatientSearchIndex load(Path csvPath) throws IOException {
+        return new PatientSearchIndex(csvPath);
+    }
+
+    /** True while patients.csv is unchanged since this index was built. */
+    boolean isCurrent() throws IOException {
+        return FileStamp.of(csvPath).equals(stamp);
+    }
+
+    // ------------------- search -------------------
+
+    /** patient_ids of the best 'limit' matches for the query, best first. */
+    List<String> search(String query, int limit) {
+        Query q = Query.parse(query);
+        if (q.isEmpty() || limit <= 0) return List.of();
+
+        List<TokenMatch> tokens = new ArrayList<>();
+        for (String t : q.names) tokens.add(new TokenMatch(lastNames.match(t), firstNames.match(t)));
+        int[] postcodeRange = q.postcode == null ? null : postcodes.prefixRange(q.postcode);
+
+        // Drive from the most selective token
+        int best = Integer.MAX_VALUE;
+        TokenMatch driver = null;
+        for (TokenMatch t : tokens) {
+            int n = t.candidateCount();
+            if (n < best) {
+                best = n;
+                driver = t;
+            }
+        }
+        int[] dobRange = q.dob == Appointment.NO_DATE ? null : dobRange(q.dob);
+        if (dobRange != null && (long) (dobRange[1] - dobRange[0]) * DRIVER_BIAS < best) {
+            best = dobRange[1] - dobRange[0];
+            driver = null;
+        }
+        boolean byPostcode = postcodeRange != null
+                && (long) postcodes.count(postcodeRange) * (driver != null ? DRIVER_BIAS : 1) < best;
+
+        PriorityQueue<Hit> top = new PriorityQueue<>(limit + 1, Collections.reverseOrder(this::compare));
+        Candidates out = o -> {
+            int score = score(o, tokens, q.dob, postcodeRange);
+            if (score < 0) return;
+            Hit h = new Hit(o, score, fields[o * FIELDS + F_LAST], fields[o * FIELDS + F_FIRST]);
+            if (top.size() < limit) {
+                top.add(h);
+            } else if (compare(h, top.peek()) < 0) {
+                top.poll();
+                top.add(h);
+            }
+        };
+
+        if (byPostcode) {
+            postcodes.forEachPatient(postcodeRange[0], postcodeRange[1], out);
+        } else if (driver != null) {
+            drive(driver, top, limit, out);
+        } else if (dobRange != null) {
+            for (int i = dobRange[0]; i < dobRange[1]; i++) out.accept(byDob[i]);
+        } else if (postcodeRange != null) {
+            postcodes.forEachPatient(postcodeRange[0], postcodeRange[1], out);
+        }
+
+        Hit[] hits = top.toArray(new Hit[0]);
+        Arrays.sort(hits, this::compare);
+        List<String> ids = new ArrayList<>(hits.length);
+        for (Hit h : hits) {
+            String id = patientId(h.ordinal);
+            if (!ids.contains(id)) ids.add(id); // a patient re-appended after an edit
+        }
+        return ids;
+    }
+
+    /**
+     * Feeds the driver token's patients cheapest match first. A patient first reached in a tier
+     * scores at least the tier's cost, so once the heap is full of better hits the rest is skipped;
+     * surname tiers are also in name order, the first tie-break.
+     */
+    private void drive(TokenMatch driver, PriorityQueue<Hit> top, int limit, Candidates out) {
+        BitSet seen = new BitSet(size);
+        for (Tier tier : driver.tiers()) {
+            if (top.size() == limit && top.peek().score < tier.cost) return;
+            for (int term = tier.lo; term < tier.hi; term++) {
+                if (tier.surname && top.size() == limit) {
+                    Hit worst = top.peek();
+                    if (worst.score < tier.cost || (worst.score == tier.cost && worst.lastTerm < term)) break;
+                }
+                Terms terms = tier.surname ? lastNames : firstNames;
+                for (int i = terms.offsets[term]; i < terms.offsets[term + 1]; i++) {
+                    int o = terms.patients[i];
+                    if (!seen.get(o)) {
+                        seen.set(o);
+                        out.accept(o);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Total score of a patient, or -1 if some part of the query does not match. */
+    private int score(int o, List<TokenMatch> tokens, int qDob, int[] postcodeRange) {
+        int at = o * FIELDS;
+        if (qDob != Appointment.NO_DATE && fields[at + F_DOB] != qDob) return -1;
+        if (postcodeRange != null) {
+            int pc = fields[at + F_POSTCODE];
+            if (pc < postcodeRange[0] || pc >= postcodeRange[1]) return -1;
+        }
+        int score = 0;
+        for (TokenMatch t : tokens) {
+            int c = t.cost(fields[at + F_LAST], fields[at + F_FIRST]);
+            if (c < 0) return -1;
+            score += c;
+        }
+        return score;
+    }
+
+    private int compare(Hit a, Hit b) {
+        if (a.score != b.score) return Integer.compare(a.score, b.score);
+        if (a.lastTerm != b.lastTerm) return Integer.compare(a.lastTerm, b.lastTerm);
+        if (a.firstTerm != b.firstTerm) return Integer.compare(a.firstTerm, b.firstTerm);
+        return Integer.compare(a.ordinal, b.ordinal);
+    }
+
+    private int[] dobRange(int day) {
+        return new int[]{lowerBound(dobSorted, day), lowerBound(dobSorted, day + 1)};
+    }
+
+    private String patientId(int o) {
+        return new String(idBytes, idStart[o], idStart[o + 1] - idStart[o], StandardCharsets.UTF_8);
+    }
+
+    // ------------------- build -------------------
+
+    private void build() throws IOException {
+        TermsBuilder last = new TermsBuilder();
+        TermsBuilder first = new TermsBuilder();
+        TermsBuilder post = new TermsBuilder();
+        IntList dobs = new IntList();
+        IntList starts = new IntList();
+        ByteArrayOutputStream ids = new ByteArrayOutputStream(1 << 16);
+
+        CsvUtil.forEachRow(csvPath, Projection.of(COL_ID, COL_FIRST_NAME, COL_LAST_NAME, COL_DOB, COL_POSTCODE), r -> {
+            if (r.size() <= COL_POSTCODE || r.get(COL_ID).isBlank()) return;
+            starts.add(ids.size());
+            byte[] id = r.get(COL_ID).trim().getBytes(StandardCharsets.UTF_8);
+            ids.write(id, 0, id.length);
+            last.add(normalizeName(r.get(COL_LAST_NAME)));
+            first.add(normalizeName(r.get(COL_FIRST_NAME)));
+            post.add(normalizePostcode(r.get(COL_POSTCODE)));
+            dobs.add(Appointment.parseDate(r.get(COL_DOB).trim()));
+        });
+
+        size = dobs.size;
+        starts.add(ids.size());
+        idStart = starts.toArray();
+        idBytes = ids.toByteArray();
+        int[] dob = dobs.toArray();
+
+        lastNames = last.build(true);
+        firstNames = first.build(true);
+        postcodes = post.build(false);
+        fields = new int[size * FIELDS];
+        for (int o = 0; o < size; o++) {
+            fields[o * FIELDS + F_LAST] = last.termOf[o];
+            fields[o * FIELDS + F_FIRST] = first.termOf[o];
+            fields[o * FIELDS + F_POSTCODE] = post.termOf[o];
+            fields[o * FIELDS + F_DOB] = dob[o];
+        }
+
+        // Sort ordinals by date of birth: (dob, ordinal) packed into one long
+        long[] packed = new long[size];
+        for (int o = 0; o < size; o++) packed[o] = (long) dob[o] << 32 | o;
+        Arrays.sort(packed);
+        byDob = new int[size];
+        dobSorted = new int[size];
+        for (int i = 0; i < size; i++) {
+            byDob[i] = (int) packed[i];
+            dobSorted[i] = (int) (packed[i] >> 32);
+        }
+    }
+
+    // ------------------- normalization / query -------------------
+
+    /** Lower-case letters only: "O'Brien-Smith" -> "obriensmith". */
+    static String normalizeName(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isLetter(c)) sb.append(Character.toLowerCase(c));
+        }
+        return sb.toString();
+    }
+
+    /** Upper-case, no spaces: "b1 1aa" -> "B11AA". */
+    static String normalizePostcode(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isLetterOrDigit(c)) sb.append(Character.toUpperCase(c));
+        }
+        return sb.toString();
+    }
+
+    /** A parsed search box entry. */
+    private static final class Query {
+        final List<String> names = new ArrayList<>();
+        int dob = Appointment.NO_DATE;
+        String postcode;
+
+        static Query parse(String text) {
+            Query q = new Query();
+            StringBuilder postcode = new StringBuilder();
+            for (String token : text.trim().split("[\\s,]+")) {
+                if (token.isEmpty()) continue;
+                int day = parseDay(token);
+                if (day != Appointment.NO_DATE) {
+                    q.dob = day;
+                } else if (token.chars().anyMatch(Character::isDigit)) {
+                    postcode.append(normalizePostcode(token)); // "B1 1AA" arrives as two tokens
+                } else {
+                    String name = normalizeName(token);
+                    if (!name.isEmpty()) q.names.add(name);
+                }
+            }
+            if (postcode.length() > 0) q.postcode = postcode.toString();
+            return q;
+        }
+
+        /** yyyy-MM-dd, or dd/MM/yyyy as typed at UK front desks. */
+        private static int parseDay(String token) {
+            int day = Appointment.parseDate(token);
+            if (day != Appointment.NO_DATE) return day;
+            String[] p = token.split("[/.-]");
+            if (p.length != 3 || p[2].length() != 4) return Appointment.NO_DATE;
+            String d = p[0].length() == 1 ? "0" + p[0] : p[0];
+            String m = p[1].length() == 1 ? "0" + p[1] : p[1];
+            return Appointment.parseDate(p[2] + "-" + m + "-" + d);
+        }
+
+        boolean isEmpty() {
+            return names.isEmpty() && dob == Appointment.NO_DATE && postcode == null;
+        }
+    }
+
+    /** Receives candidate patient ordinals. */
+    @FunctionalInterface
+    private interface Candidates {
+        void accept(int ordinal);
+    }
+
+    /** A scored patient; carries its name term ids so heap comparisons touch no big array. */
+    private static final class Hit {
+        final int ordinal;
+        final int score;
+        final int lastTerm;
+        final int firstTerm;
+
+        Hit(int ordinal, int score, int lastTerm, int firstTerm) {
+            this.ordinal = ordinal;
+            this.score = score;
+            this.lastTerm = lastTerm;
+            this.firstTerm = firstTerm;
+        }
+    }
+
+    /** Term ids [lo, hi) of one dictionary whose patients all score at least 'cost' for a token. */
+    private static final class Tier {
+        final boolean surname;
+        final int lo;
+        final int hi;
+        final int cost;
+
+        Tier(boolean surname, int lo, int hi, int cost) {
+            this.surname = surname;
+            this.lo = lo;
+            this.hi = hi;
+            this.cost = cost;
+        }
+    }
+
+    /** One name token matched against the last-name and first-name dictionaries. */
+    private static final class TokenMatch {
+        final TermMatch last;
+        final TermMatch first;
+
+        TokenMatch(TermMatch last, TermMatch first) {
+            this.last = last;
+            this.first = first;
+        }
+
+        int candidateCount() {
+            return last.candidateCount() + first.candidateCount();
+        }
+
+        /** Best score against the patient's last or first name, -1 if neither matches. */
+        int cost(int lastTerm, int firstTerm) {
+            int a = last.cost(lastTerm);
+            int b = first.cost(firstTerm);
+            if (a >= 0) a = 2 * a;
+            if (b >= 0) b = 2 * b + 1;
+            if (a < 0) return b;
+            if (b < 0) return a;
+            return Math.min(a, b);
+        }
+
+        /** Every matching term range, cheapest first. */
+        List<Tier> tiers() {
+            List<Tier> out = new ArrayList<>();
+            last.addTiers(true, out);
+            first.addTiers(false, out);
+            out.sort((a, b) -> Integer.compare(a.cost, b.cost));
+            return out;
+        }
+    }
+
+    /** A token's matches in one dictionary: a prefix range (exact term included) plus typo terms. */
+    private static final class TermMatch {
+        final Terms terms;
+        final int exact; // term id, or -1 (when present it is lo: the prefix itself sorts first)
+        final int lo;
+        final int hi;
+        final Map<Integer, Integer> typos; // term id -> edit distance (terms outside lo..hi)
+
+        TermMatch(Terms terms, int exact, int lo, int hi, Map<Integer, Integer> typos) {
+            this.terms = terms;
+            this.exact = exact;
+            this.lo = lo;
+            this.hi = hi;
+            this.typos = typos;
+        }
+
+        int cost(int term) {
+            if (term == exact) return EXACT;
+            if (term >= lo && term < hi) return PREFIX;
+            Integer d = typos.get(term);
+            return d == null ? -1 : TYPO + d;
+        }
+
+        int candidateCount() {
+            int n = terms.count(new int[]{lo, hi});
+            for (int t : typos.keySet()) n += terms.offsets[t + 1] - terms.offsets[t];
+            return n;
+        }
+
+        void addTiers(boolean surname, List<Tier> out) {
+            int extra = surname ? 0 : 1;
+            int from = lo;
+            if (exact >= 0) {
+                out.add(new Tier(surname, exact, exact + 1, 2 * EXACT + extra));
+                from++;
+            }
+            if (from < hi) out.add(new Tier(surname, from, hi, 2 * PREFIX + extra));
+            for (Map.Entry<Integer, Integer> e : typos.entrySet()) {
+                out.add(new Tier(surname, e.getKey(), e.getKey() + 1, 2 * (TYPO + e.getValue()) + extra));
+            }
+        }
+    }
+
+    // ------------------- term dictionaries -------------------
+
+    /** Sorted distinct terms + CSR postings (term id -> patient ordinals) + optional trigram index. */
+    private static final class Terms {
+        final String[] terms;
+        final int[] offsets;   // postings of term t: patients[offsets[t] .. offsets[t + 1])
+        final int[] patients;
+        final Map<Long, int[]> grams; // trigram -> term ids (null: no typo matching)
+
+        Terms(String[] terms, int[] offsets, int[] patients, Map<Long, int[]> grams) {
+            this.terms = terms;
+            this.offsets = offsets;
+            this.patients = patients;
+            this.grams = grams;
+        }
+
+        /** [first term >= prefix, first term past the prefix): two binary searches. */
+        int[] prefixRange(String prefix) {
+            int lo = lowerBound(terms, prefix);
+            int hi = lowerBound(terms, prefix + Character.MAX_VALUE); // terms are letters, never '\uffff'
+            return new int[]{lo, hi};
+        }
+
+        int count(int[] range) {
+            return offsets[range[1]] - offsets[range[0]];
+        }
+
+        void forEachPatient(int fromTerm, int toTerm, Candidates out) {
+            for (int i = offsets[fromTerm]; i < offsets[toTerm]; i++) out.accept(patients[i]);
+        }
+
+        TermMatch match(String token) {
+            int[] range = prefixRange(token);
+            int exact = range[0] < terms.length && terms[range[0]].equals(token) ? range[0] : -1;
+            return new TermMatch(this, exact, range[0], range[1], typos(token, range));
+        }
+
+        /** Terms within the edit budget of the token (outside its prefix range), via trigram counts. */
+        private Map<Integer, Integer> typos(String token, int[] prefix) {
+            Map<Integer, Integer> out = new HashMap<>();
+            if (grams == null || token.length() < 3) return out;
+
+            int maxEdits = token.length() <= 7 ? 1 : 2;
+            long[] qGrams = trigrams(token);
+            int needed = qGrams.length - 4 * maxEdits; // an edit touches at most 4 trigrams (a swap)
+            if (needed <= 0) return out;
+
+            // Count shared trigrams per term; only terms reaching 'needed' get the edit distance
+            int[] shared = new int[terms.length];
+            for (long g : qGrams) {
+                int[] ids = grams.get(g);
+                if (ids == null) continue;
+                for (int id : ids) {
+                    if (++shared[id] != needed || (id >= prefix[0] && id < prefix[1])) continue;
+                    int d = editDistance(token, terms[id], maxEdits);
+                    if (d <= maxEdits) out.put(id, d);
+                }
+            }
+            return out;
+        }
+    }
+
+    /** Collects terms while loading, then sorts them into a Terms. */
+    private static final class TermsBuilder {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> terms = new ArrayList<>();
+        private final IntList ordinalTerm = new IntList();
+        int[] termOf; // patient ordinal -> sorted term id, set by build()
+
+        void add(String term) {
+            Integer id = ids.get(term);
+            if (id == null) {
+                id = terms.size();
+                ids.put(term, id);
+                terms.add(term);
+            }
+            ordinalTerm.add(id);
+        }
+
+        Terms build(boolean withGrams) {
+            // Sort the distinct terms; remap load-order ids to sorted ids
+            Integer[] order = new Integer[terms.size()];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> terms.get(a).compareTo(terms.get(b)));
+            String[] sorted = new String[order.length];
+            int[] remap = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                sorted[i] = terms.get(order[i]);
+                remap[order[i]] = i;
+            }
+
+            termOf = ordinalTerm.toArray();
+            int[] offsets = new int[sorted.length + 1];
+            for (int o = 0; o < termOf.length; o++) {
+                termOf[o] = remap[termOf[o]];
+                offsets[termOf[o] + 1]++;
+            }
+            for (int t = 0; t < sorted.length; t++) offsets[t + 1] += offsets[t];
+            int[] patients = new int[termOf.length];
+            int[] fill = Arrays.copyOf(offsets, sorted.length);
+            for (int o = 0; o < termOf.length; o++) patients[fill[termOf[o]]++] = o;
+
+            return new Terms(sorted, offsets, patients, withGrams ? gramIndex(sorted) : null);
+        }
+
+        private static Map<Long, int[]> gramIndex(String[] sorted) {
+            Map<Long, IntList> lists = new HashMap<>();
+            for (int id = 0; id < sorted.length; id++) {
+                for (long g : trigrams(sorted[id])) lists.computeIfAbsent(g, k -> new IntList()).addIfNotLast(id);
+            }
+            Map<Long, int[]> out = new HashMap<>(lists.size() * 2);
+            for (Map.Entry<Long, IntList> e : lists.entrySet()) out.put(e.getKey(), e.getValue().toArray());
+            return out;
+        }
+    }
+
+    // ------------------- helpers -------------------
+
+    /** Trigrams of "$$term$$" packed 3 x 16 bits into a long. */
+    private static long[] trigrams(String term) {
+        String padded = "$$" + term + "$$";
+        long[] out = new long[padded.length() - 2];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = (long) padded.charAt(i) << 32 | (long) padded.charAt(i + 1) << 16 | padded.charAt(i + 2);
+        }
+        return out;
+    }
+
+    /**
+     * Edit distance with adjacent swaps ("smtih" -> "smith" is 1; optimal string alignment),
+     * or max + 1 as soon as it must exceed max.
+     */
+    static int editDistance(String a, String b, int max) {
+        if (Math.abs(a.length() - b.length()) > max) return max + 1;
+        int[] prev2 = new int[b.length() + 1];
+        int[] prev = new int[b.length() + 1];
+        int[] cur = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) prev[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            cur[0] = i;
+            int rowMin = cur[0];
+            for (int j = 1; j <= b.length(); j++) {
+                char ca = a.charAt(i - 1);
+                char cb = b.charAt(j - 1);
+                int d = Math.min(prev[j - 1] + (ca == cb ? 0 : 1), Math.min(prev[j] + 1, cur[j - 1] + 1));
+                if (i > 1 && j > 1 && ca == b.charAt(j - 2) && a.charAt(i - 2) == cb) {
+                    d = Math.min(d, prev2[j - 2] + 1);
+                }
+                cur[j] = d;
+                rowMin = Math.min(rowMin, d);
+            }
+            if (rowMin > max) return max + 1;
+            int[] t = prev2;
+            prev2 = prev;
+            prev = cur;
+            cur = t;
+        }
+        return prev[b.length()];
+    }
+
+    private static int lowerBound(String[] a, String key) {
+        int lo = 0;
+        int hi = a.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid].compareTo(key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static int lowerBound(int[] a, int key) {
+        int lo = 0;
+        int hi = a.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /** Growable int array (build time only). */
+    private static final class IntList {
+        int[] a = new int[16];
+        int size;
+
+        void add(int v) {
+            if (size == a.length) a = Arrays.copyOf(a, size * 2);
+            a[size++] = v;
+        }
+
+        void addIfNotLast(int v) {
+            if (size == 0 || a[size - 1] != v) add(v);
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(a, size);
+        }
+    }
+}
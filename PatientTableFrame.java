@@ -2,22 +2,33 @@ package view;
 
 import model.Patient;
 
+import javax.swing.JButton;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
+import javax.swing.JTextField;
 import javax.swing.table.DefaultTableModel;
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
 import java.util.List;
 
 /**
  * PatientTableFrame (VIEW only)
  * - Builds UI
  * - Exposes setPatients() for Controller to inject data
+ * - Search box (surname / first name / date of birth / postcode) + Show All
  * - Does NOT read files or apply business rules
  */
 public class PatientTableFrame extends JFrame {
 
     private final DefaultTableModel tableModel;
 
+    private final JTextField searchField = new JTextField(24);
+    private final JButton searchButton = new JButton("Search");
+    private final JButton showAllButton = new JButton("Show All");
+    private final JLabel statusLabel = new JLabel("Ready");
 
     public PatientTableFrame() {
         setTitle("Patients");
@@ -31,7 +42,19 @@ public class PatientTableFrame extends JFrame {
         );
 
         JTable table = new JTable(tableModel);
-        add(new JScrollPane(table));
+
+        // Search bar (Enter in the box searches too)
+        JPanel searchBar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        searchBar.add(new JLabel("Surname, name, DOB or postcode"));
+        searchBar.add(searchField);
+        searchBar.add(searchButton);
+        searchBar.add(showAllButton);
+        getRootPane().setDefaultButton(searchButton);
+
+        setLayout(new BorderLayout());
+        add(searchBar, BorderLayout.NORTH);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+        add(statusLabel, BorderLayout.SOUTH);
     }
 
     /** Controller calls this to push data into the view */
@@ -49,4 +72,15 @@ public class PatientTableFrame extends JFrame {
             });
         }
     }
+
+    public void setStatus(String message) {
+        statusLabel.setText(message);
+    }
+
+    public String getSearchInput() { return searchField.getText().trim(); }
+
+    public void clearSearchInput() { searchField.setText(""); }
+
+    public JButton getSearchButton() { return searchButton; }
+    public JButton getShowAllButton() { return showAllButton; }
 }
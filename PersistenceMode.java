@@ -0,0 +1,16 @@
+package repository;
+
+/**
+ * PersistenceMode:
+ * - DIRECT     : mutations write to the CSV itself (append / in-place patch / rewrite).
+ * - CHANGE_LOG : mutations are appended to "<file>.csv.log"; reads merge CSV + log and
+ *                LogCompactor folds the log back into the CSV in the background.
+ *
+ * In both modes the CSV files remain the canonical export format.
+ * Switching a table back to DIRECT requires ChangeLog.compactNow() first, otherwise
+ * un-folded log records are not visible to DIRECT reads.
+ */
+public enum PersistenceMode {
+    DIRECT,
+    CHANGE_LOG
+}
@@ -1,6 +1,7 @@
 package controller;
 
 import model.Prescription;
+import repository.DataContext;
 import repository.PrescriptionRepository;
 import view.PrescriptionTableFrame;
 
@@ -10,14 +11,17 @@ import javax.swing.JOptionPane;
  * PrescriptionController (MVC)
  * - Refresh: loads prescriptions from CSV and shows them in the table
  * - Create: reads form -> appends to CSV via repository -> refreshes table
+ * - Mark Collected: sets the selected prescription's status and collection date (row updated in place)
  */
 public class PrescriptionController {
 
+    private final DataContext data;
     private final PrescriptionRepository prescriptionRepository;
     private final PrescriptionTableFrame prescriptionView;
 
-    public PrescriptionController(PrescriptionRepository prescriptionRepository, PrescriptionTableFrame prescriptionView) {
-        this.prescriptionRepository = prescriptionRepository;
+    public PrescriptionController(DataContext data, PrescriptionTableFrame prescriptionView) {
+        this.data = data;
+        this.prescriptionRepository = data.getPrescriptionRepository();
         this.prescriptionView = prescriptionView;
         wireActions();
     }
@@ -25,6 +29,7 @@ public class PrescriptionController {
     private void wireActions() {
         prescriptionView.getRefreshButton().addActionListener(e -> refresh());
         prescriptionView.getCreateButton().addActionListener(e -> createFromForm());
+        prescriptionView.getCollectButton().addActionListener(e -> markSelectedCollected());
     }
 
     public void start() {
@@ -34,7 +39,7 @@ public class PrescriptionController {
 
     private void refresh() {
         try {
-            prescriptionView.setPrescriptions(prescriptionRepository.loadAll());
+            prescriptionView.setPrescriptions(data.prescriptionTable());
             prescriptionView.setStatus("Loaded prescriptions from CSV");
         } catch (Exception e) {
             JOptionPane.showMessageDialog(
@@ -131,4 +136,34 @@ public class PrescriptionController {
             );
         }
     }
+
+    private void markSelectedCollected() {
+        String prescriptionId = prescriptionView.getSelectedPrescriptionId();
+        if (prescriptionId == null) {
+            JOptionPane.showMessageDialog(
+                    prescriptionView,
+                    "Please select a prescription row first.",
+                    "No selection",
+                    JOptionPane.WARNING_MESSAGE
+            );
+            return;
+        }
+
+        try {
+            switch (prescriptionRepository.markCollected(prescriptionId)) {
+                case COLLECTED -> prescriptionView.setStatus("Marked collected: " + prescriptionId);
+                case ALREADY_COLLECTED -> prescriptionView.setStatus("Already collected: " + prescriptionId);
+                case NOT_FOUND -> prescriptionView.setStatus("Prescription no longer exists: " + prescriptionId);
+            }
+            refresh();
+
+        } catch (Exception e) {
+            JOptionPane.showMessageDialog(
+                    prescriptionView,
+                    "Failed to update prescription:\n" + e.getMessage(),
+                    "Error",
+                    JOptionPane.ERROR_MESSAGE
+            );
+        }
+    }
 }
@@ -1,49 +1,143 @@
 package repository;
 
 import model.Prescription;
-import service.IdGenerator;
 
 import java.io.IOException;
 import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * PrescriptionRepository:
  * - Loads prescriptions from prescriptions.csv
  * - Appends new prescription records (no DB allowed)
+ * - Updates single prescriptions in place (row-offset index) under a per-record lock
+ * - markCollected: read-check-write of the status under that lock (two desks cannot both collect)
+ * - In PersistenceMode.CHANGE_LOG, creates go to prescriptions.csv.log instead
  *
- * IDs are generated using IdGenerator based on existing prescription_id values.
+ * IDs come from IdSequence (prescriptions.csv.seq), seeded from existing prescription_id values.
  */
 public class PrescriptionRepository {
 
+    // Column indexes (header order) usable in Where predicates
+    public static final int COL_PATIENT_ID = 1;
+    public static final int COL_CLINICIAN_ID = 2;
+    public static final int COL_APPOINTMENT_ID = 3;
+    public static final int COL_DATE = 4;
+    public static final int COL_STATUS = 12;
+    public static final int COL_COLLECTION_DATE = 14;
+
+    /** Outcome of markCollected. */
+    public enum CollectResult { COLLECTED, ALREADY_COLLECTED, NOT_FOUND }
+
+    // Columns shown by PrescriptionTableFrame (id, patient, clinician, appointment, medication .. quantity, status)
+    public static final Projection TABLE_COLUMNS = Projection.of(0, 1, 2, 3, 5, 6, 7, 8, 9, 12);
+
     private final Path prescriptionsCsvPath;
 
+    // Canonical Strings for low-cardinality columns (shared by every repository on this file)
+    private final SymbolTable symbols;
+
+    // prescription_id -> byte offset/length of its row (sidecar prescriptions.csv.idx)
+    private final RowOffsetIndex offsetIndex;
+
+    // Structure lock (create/import) + striped record locks (update), shared per file
+    private final TableLocks locks;
+
+    // Only used in PersistenceMode.CHANGE_LOG (null in DIRECT mode)
+    private final ChangeLog changeLog;
+
     public PrescriptionRepository(Path prescriptionsCsvPath) {
+        this(prescriptionsCsvPath, PersistenceMode.DIRECT);
+    }
+
+    public PrescriptionRepository(Path prescriptionsCsvPath, PersistenceMode mode) {
         this.prescriptionsCsvPath = prescriptionsCsvPath;
+        this.symbols = SymbolTable.forTable(prescriptionsCsvPath);
+        this.offsetIndex = RowOffsetIndex.forTable(prescriptionsCsvPath);
+        this.locks = TableLocks.forTable(prescriptionsCsvPath);
+
+        if (mode == PersistenceMode.CHANGE_LOG) {
+            this.changeLog = ChangeLog.forTable(prescriptionsCsvPath);
+            LogCompactor.register(changeLog);
+        } else {
+            this.changeLog = null;
+        }
     }
 
     public List<Prescription> loadAll() throws IOException {
-        List<String[]> rows = CsvUtil.readAll(prescriptionsCsvPath);
+        return loadAll(Projection.ALL);
+    }
 
-        List<Prescription> prescriptions = new ArrayList<>();
+    /**
+     * Loads prescriptions with only the projected columns filled in
+     * (the other getters return ""). Use for read-only views that show a few columns.
+     */
+    public List<Prescription> loadAll(Projection projection) throws IOException {
+        return mapRows(projection, this::toPrescription);
+    }
 
-        // Skip header
-        for (int i = 1; i < rows.size(); i++) {
-            String[] r = rows.get(i);
-            if (r.length < 15) continue;
+    /**
+     * Rows appended after byte offset 'from' (TableCache tail reload).
+     * Returns null in CHANGE_LOG mode, where the CSV alone is not the current state.
+     */
+    List<Prescription> loadFrom(long from, Projection projection) throws IOException {
+        if (changeLog != null) return null;
+        return CsvUtil.mapRowsFrom(prescriptionsCsvPath, from, projection, this::toPrescription);
+    }
 
-            Prescription p = new Prescription(
-                    r[0], r[1], r[2], r[3], r[4],
-                    r[5], r[6], r[7], r[8], r[9],
-                    r[10], r[11], r[12], r[13], r[14]
-            );
+    /**
+     * Loads only the prescriptions matching the predicate. The predicate runs on each raw row
+     * while the file is parsed, so rejected rows never become objects.
+     */
+    public List<Prescription> loadWhere(Where where) throws IOException {
+        return loadWhere(where, Projection.ALL);
+    }
 
-            prescriptions.add(p);
+    /** Same as loadWhere(Where) with a projection (widened to the predicate's columns). */
+    public List<Prescription> loadWhere(Where where, Projection projection) throws IOException {
+        return mapRows(where.widen(projection), where.filter(this::toPrescription));
+    }
+
+    /**
+     * Small files stream through CsvReader; large ones are mapped and parsed in parallel.
+     * In CHANGE_LOG mode the log is merged over the CSV.
+     */
+    private <T> List<T> mapRows(Projection projection, RowMapper<T> mapper) throws IOException {
+        if (changeLog != null) return changeLog.mapRows(projection, mapper);
+        return CsvUtil.mapRows(prescriptionsCsvPath, projection, mapper);
+    }
+
+    /**
+     * Prescription with this ID, or null.
+     * DIRECT: one row read through the row-offset index; CHANGE_LOG: the merged state is scanned.
+     */
+    public Prescription findById(String prescriptionId) throws IOException {
+        if (changeLog == null) {
+            String[] r = offsetIndex.read(prescriptionId);
+            return r == null ? null : toPrescription(CsvRow.of(r));
         }
+        List<Prescription> found = loadWhere(Where.eq(0, prescriptionId));
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * Maps one CSV row -> Prescription. Returns null for malformed rows (skipped).
+     * Stateless, so MappedCsvLoader can call it from several threads.
+     */
+    private Prescription toPrescription(CsvRow r) {
+        if (r.size() < 15) return null;
 
-        return prescriptions;
+        // Clinician, medication, dosage, frequency, duration, quantity, pharmacy and status repeat
+        // heavily -> interned; IDs, dates and instructions do not.
+        // collection_date is last: a row shortened by an in-place update is padded with spaces
+        return new Prescription(
+                r.get(0), r.get(1), symbols.intern(r, 2), r.get(3), r.get(4),
+                symbols.intern(r, 5), symbols.intern(r, 6), symbols.intern(r, 7), symbols.intern(r, 8), symbols.intern(r, 9),
+                r.get(10), symbols.intern(r, 11), symbols.intern(r, 12), r.get(13), r.get(14).trim()
+        );
     }
 
     /**
@@ -51,40 +145,173 @@ public class PrescriptionRepository {
      * Returns the generated ID.
      */
     public String createPrescription(Prescription newPrescription) throws IOException {
-        List<String[]> rows = CsvUtil.readAll(prescriptionsCsvPath);
+        // O(1): counter file prescriptions.csv.seq (the CSV is only scanned if it is missing)
+        String nextId = idSequence().next();
+
+        // Set dates consistently (simple approach)
+        String today = LocalDate.now().toString();
+
+        Prescription toSave = withId(nextId, newPrescription, today);
 
-        // Collect existing IDs
-        List<String> ids = new ArrayList<>();
-        for (int i = 1; i < rows.size(); i++) {
-            if (rows.get(i).length > 0) ids.add(rows.get(i)[0]);
+        locks.lockStructure();
+        try {
+            if (changeLog != null) {
+                changeLog.logCreate(toCsvRow(toSave));
+            } else {
+                CsvUtil.appendRow(prescriptionsCsvPath, toCsvRow(toSave));
+            }
+        } finally {
+            locks.unlockStructure();
         }
+        return nextId;
+    }
 
-        String nextId = IdGenerator.nextId(ids);
+    /**
+     * Replaces the prescription row with the same prescription_id (e.g. status -> Collected).
+     * Returns false if the ID is not found.
+     *
+     * DIRECT: the row is patched in place through the row-offset index.
+     * CHANGE_LOG: the new row is appended to the log.
+     * Only this record is locked; updates of other prescriptions run in parallel.
+     */
+    public boolean updatePrescription(Prescription updated) throws IOException {
+        String id = updated.getPrescriptionId();
+        locks.lockRecord(id);
+        try {
+            if (changeLog != null) {
+                if (!offsetIndex.contains(id) && !changeLog.wasCreated(id)) return false;
+                changeLog.logUpdate(toCsvRow(updated));
+                return true;
+            }
+            return offsetIndex.update(id, toCsvRow(updated));
+        } finally {
+            locks.unlockRecord(id);
+        }
+    }
 
-        // Set dates consistently (simple approach)
+    /**
+     * Sets status=Collected and collection_date=today, unless the prescription is already collected.
+     * The read, the check and the write all happen under the record lock, so a concurrent update of
+     * this prescription cannot slip in between and be overwritten.
+     *
+     * DIRECT: the row is re-checked under its OS range lock (compareAndUpdate) and re-read if
+     * another process changed it meanwhile. CHANGE_LOG: a status/collection_date patch is logged.
+     */
+    public CollectResult markCollected(String prescriptionId) throws IOException {
+        String today = LocalDate.now().toString();
+
+        locks.lockRecord(prescriptionId);
+        try {
+            if (changeLog != null) {
+                Prescription p = findById(prescriptionId);
+                if (p == null) return CollectResult.NOT_FOUND;
+                if (isCollected(p.getStatus())) return CollectResult.ALREADY_COLLECTED;
+                changeLog.logPatch(prescriptionId,
+                        new int[]{COL_STATUS, COL_COLLECTION_DATE},
+                        new String[]{"Collected", today});
+                return CollectResult.COLLECTED;
+            }
+
+            while (true) {
+                String[] read = offsetIndex.read(prescriptionId);
+                if (read == null) return CollectResult.NOT_FOUND;
+                if (read.length > COL_STATUS && isCollected(read[COL_STATUS])) return CollectResult.ALREADY_COLLECTED;
+
+                String[] row = Arrays.copyOf(read, Math.max(read.length, COL_COLLECTION_DATE + 1));
+                for (int i = read.length; i < row.length; i++) row[i] = "";
+                row[COL_STATUS] = "Collected";
+                row[COL_COLLECTION_DATE] = today;
+                String[] current = offsetIndex.compareAndUpdate(prescriptionId, r -> Arrays.equals(r, read), row);
+                if (current == null) return CollectResult.NOT_FOUND;
+                if (Arrays.equals(current, read)) return CollectResult.COLLECTED;
+                // Another process wrote the row after we read it: decide again on its new content
+            }
+        } finally {
+            locks.unlockRecord(prescriptionId);
+        }
+    }
+
+    private static boolean isCollected(String status) {
+        return "Collected".equalsIgnoreCase(status.trim());
+    }
+
+    /**
+     * Bulk import (e.g. onboarding a surgery's historic prescriptions).
+     * - Rows missing required fields are rejected in the report; the rest are imported
+     *   with the same defaults as createPrescription.
+     * - IDs for every accepted row are reserved in ONE IdSequence step.
+     * - DIRECT: rows are appended in one sequential buffered pass; CHANGE_LOG: one log append.
+     */
+    public ImportReport importPrescriptions(List<Prescription> batch) throws IOException {
+        ImportReport.Builder report = new ImportReport.Builder(batch.size());
+
+        List<Integer> accepted = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            String error = importError(batch.get(i));
+            if (error != null) report.rejected(i, error);
+            else accepted.add(i);
+        }
+
+        List<String> ids = idSequence().next(accepted.size());
         String today = LocalDate.now().toString();
+        List<String[]> rows = new ArrayList<>(accepted.size());
+        for (int k = 0; k < accepted.size(); k++) {
+            rows.add(toCsvRow(withId(ids.get(k), batch.get(accepted.get(k)), today)));
+        }
+
+        locks.lockStructure();
+        try {
+            if (changeLog != null) {
+                changeLog.logCreateAll(rows);
+            } else {
+                CsvUtil.appendRows(prescriptionsCsvPath, rows);
+            }
+        } finally {
+            locks.unlockStructure();
+        }
+
+        for (int k = 0; k < accepted.size(); k++) report.imported(accepted.get(k), ids.get(k));
+        return report.build();
+    }
 
-        // Force the generated ID into an immutable object
-        Prescription toSave = new Prescription(
-                nextId,
-                newPrescription.getPatientId(),
-                newPrescription.getClinicianId(),
-                newPrescription.getAppointmentId(),           // can be blank
-                blankIfEmpty(newPrescription.getPrescriptionDate(), today),
-                newPrescription.getMedicationName(),
-                newPrescription.getDosage(),
-                newPrescription.getFrequency(),
-                newPrescription.getDurationDays(),
-                newPrescription.getQuantity(),
-                newPrescription.getInstructions(),
-                newPrescription.getPharmacyName(),
-                blankIfEmpty(newPrescription.getStatus(), "Issued"),
-                blankIfEmpty(newPrescription.getIssueDate(), today),
-                blankIfEmpty(newPrescription.getCollectionDate(), "") // can be empty
+    /** Why a row cannot be imported, or null. */
+    private static String importError(Prescription p) {
+        if (p == null) return "missing row";
+        if (isBlank(p.getPatientId())) return "patient_id is blank";
+        if (isBlank(p.getClinicianId())) return "clinician_id is blank";
+        if (isBlank(p.getMedicationName())) return "medication_name is blank";
+        return null;
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isBlank();
+    }
+
+    /** Copy carrying the generated ID, with defaults filled in (Prescription is immutable). */
+    private Prescription withId(String id, Prescription p, String today) {
+        return new Prescription(
+                id,
+                p.getPatientId(),
+                p.getClinicianId(),
+                p.getAppointmentId(),           // can be blank
+                blankIfEmpty(p.getPrescriptionDate(), today),
+                p.getMedicationName(),
+                p.getDosage(),
+                p.getFrequency(),
+                p.getDurationDays(),
+                p.getQuantity(),
+                p.getInstructions(),
+                p.getPharmacyName(),
+                blankIfEmpty(p.getStatus(), "Issued"),
+                blankIfEmpty(p.getIssueDate(), today),
+                blankIfEmpty(p.getCollectionDate(), "") // can be empty
         );
+    }
 
-        CsvUtil.appendRow(prescriptionsCsvPath, toCsvRow(toSave));
-        return nextId;
+    /** Shared counter for prescription_id, seeded from the file only if the counter file is missing. */
+    private IdSequence idSequence() {
+        return IdSequence.forTable(prescriptionsCsvPath, "RX", 3,
+                () -> mapRows(Projection.ID_ONLY, r -> r.get(0)));
     }
 
     private String blankIfEmpty(String value, String fallback) {
@@ -11,6 +11,7 @@ import java.util.List;
  * PrescriptionTableFrame (VIEW)
  * - Displays prescriptions in JTable
  * - Create form for new prescription
+ * - Mark Collected for the selected row
  * - Exposes getters + buttons for Controller
  */
 public class PrescriptionTableFrame extends JFrame {
@@ -20,6 +21,7 @@ public class PrescriptionTableFrame extends JFrame {
 
     private final JButton refreshButton;
     private final JButton createButton;
+    private final JButton collectButton;
 
     private final JLabel statusLabel;
 
@@ -58,12 +60,14 @@ public class PrescriptionTableFrame extends JFrame {
 
         refreshButton = new JButton("Refresh");
         createButton = new JButton("Create Prescription");
+        collectButton = new JButton("Mark Collected");
 
         statusLabel = new JLabel("Ready");
 
         // Buttons row
         JPanel topButtons = new JPanel(new FlowLayout(FlowLayout.LEFT));
         topButtons.add(refreshButton);
+        topButtons.add(collectButton);
 
         // Form panel
         JPanel form = new JPanel(new GridLayout(4, 6, 8, 6));
@@ -137,6 +141,14 @@ public class PrescriptionTableFrame extends JFrame {
         statusLabel.setText(msg);
     }
 
+    /** prescription_id of the selected row, or null */
+    public String getSelectedPrescriptionId() {
+        int row = table.getSelectedRow();
+        if (row == -1) return null;
+        Object id = tableModel.getValueAt(row, 0);
+        return id == null ? null : id.toString();
+    }
+
     // Form getters (Controller reads these)
     public String getPatientIdInput() { return patientIdField.getText().trim(); }
     public String getClinicianIdInput() { return clinicianIdField.getText().trim(); }
@@ -168,4 +180,5 @@ public class PrescriptionTableFrame extends JFrame {
     // Buttons exposed for Controller
     public JButton getRefreshButton() { return refreshButton; }
     public JButton getCreateButton() { return createButton; }
+    public JButton getCollectButton() { return collectButton; }
 }
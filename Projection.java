@@ -0,0 +1,58 @@
+package repository;
+
+import java.util.Arrays;
+
+/**
+ * Projection:
+ * - The set of CSV columns (by index) a caller actually needs.
+ * - Parsers still walk over the other cells but do not copy or decode them,
+ *   so they read back as "" and never become Strings.
+ *
+ * Column 0 (the record ID) is always included: change-log overlays and
+ * indexes look rows up by it.
+ */
+public final class Projection {
+
+    /** Every column (no projection). */
+    public static final Projection ALL = new Projection(null);
+
+    /** Only the record ID (column 0), e.g. for ID generation. */
+    public static final Projection ID_ONLY = Projection.of();
+
+    private final boolean[] keep; // null = all columns
+
+    private Projection(boolean[] keep) {
+        this.keep = keep;
+    }
+
+    /** Projection of the given column indexes (plus column 0). */
+    public static Projection of(int... columns) {
+        int max = 0;
+        for (int c : columns) max = Math.max(max, c);
+
+        boolean[] keep = new boolean[max + 1];
+        keep[0] = true;
+        for (int c : columns) keep[c] = true;
+        return new Projection(keep);
+    }
+
+    /** This projection plus the given columns (ALL stays ALL). */
+    public Projection with(int... columns) {
+        if (keep == null || columns.length == 0) return this;
+
+        int max = keep.length - 1;
+        for (int c : columns) max = Math.max(max, c);
+
+        boolean[] wider = Arrays.copyOf(keep, max + 1);
+        for (int c : columns) wider[c] = true;
+        return new Projection(wider);
+    }
+
+    public boolean includes(int column) {
+        return keep == null || (column < keep.length && keep[column]);
+    }
+
+    public boolean isAll() {
+        return keep == null;
+    }
+}
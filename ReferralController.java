@@ -1,6 +1,7 @@
 package controller;
 
 import model.Referral;
+import repository.DataContext;
 import repository.ReferralRepository;
 import service.ReferralManager;
 import view.ReferralTableFrame;
@@ -17,14 +18,16 @@ import java.nio.file.Path;
  */
 public class ReferralController {
 
+    private final DataContext data;
     private final ReferralRepository referralRepository;
     private final ReferralTableFrame referralView;
 
     // Singleton manager (single instance)
     private final ReferralManager referralManager;
 
-    public ReferralController(ReferralRepository referralRepository, ReferralTableFrame referralView, Path outDir) throws Exception {
-        this.referralRepository = referralRepository;
+    public ReferralController(DataContext data, ReferralTableFrame referralView, Path outDir) throws Exception {
+        this.data = data;
+        this.referralRepository = data.getReferralRepository();
         this.referralView = referralView;
 
         // Create/get singleton instance
@@ -45,7 +48,7 @@ public class ReferralController {
 
     private void refresh() {
         try {
-            referralView.setReferrals(referralRepository.loadAll());
+            referralView.setReferrals(data.referralTable());
             referralView.setStatus("Loaded referrals from CSV");
         } catch (Exception e) {
             JOptionPane.showMessageDialog(
@@ -1,14 +1,15 @@
 package service;
 
 import model.Referral;
+import repository.GroupCommitWriter;
 import repository.ReferralRepository;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.file.*;
 import java.time.LocalDateTime;
 import java.util.ArrayDeque;
 import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * ReferralManager (Singleton)
@@ -73,10 +74,14 @@ public final class ReferralManager {
     /**
      * Create referral + enqueue + persist communications + audit.
      * Returns generated referral ID.
+     *
+     * Not synchronized as a whole: the repository locks its own table, and only the queue
+     * operation holds this object's monitor, so concurrent callers overlap their file I/O.
      */
-    public synchronized String createAndQueueReferral(Referral referral) throws IOException {
+    public String createAndQueueReferral(Referral referral) throws IOException {
 
-        // 1) Persist referral record into referrals.csv (generates ID)
+        // 1) Persist referral record into referrals.csv (generates ID; also adds it to the
+        //    repository's text index, so searchText finds it straight away)
         String newId = referralRepository.createReferral(referral);
 
         // 2) Enqueue (use a new Referral object with the generated ID for queue)
@@ -99,14 +104,17 @@ public final class ReferralManager {
                 referral.getLastUpdated()
         );
 
-        referralQueue.addLast(queued);
+        synchronized (this) {
+            referralQueue.addLast(queued);
+        }
 
-        // 3) Simulate communications
-        writeEmailSimulation(queued);
-        writeEhrUpdateSimulation(queued);
+        // 3) Simulate communications + 4) Audit
+        // Queued on each file's long-lived group-commit writer; wait for all three together
+        CompletableFuture<Void> email = writeEmailSimulation(queued);
+        CompletableFuture<Void> ehr = writeEhrUpdateSimulation(queued);
+        CompletableFuture<Void> audit = audit("CREATED_AND_QUEUED", queued);
 
-        // 4) Audit
-        audit("CREATED_AND_QUEUED", queued);
+        GroupCommitWriter.await(CompletableFuture.allOf(email, ehr, audit));
 
         return newId;
     }
@@ -115,11 +123,14 @@ public final class ReferralManager {
      * Processes next referral in queue and records audit.
      * Returns the referral processed, or null if queue is empty.
      */
-    public synchronized Referral processNextReferral() throws IOException {
-        Referral r = referralQueue.pollFirst();
+    public Referral processNextReferral() throws IOException {
+        Referral r;
+        synchronized (this) {
+            r = referralQueue.pollFirst();
+        }
         if (r == null) return null;
 
-        audit("PROCESSED", r);
+        GroupCommitWriter.await(audit("PROCESSED", r));
         return r;
     }
 
@@ -129,7 +140,7 @@ public final class ReferralManager {
 
     // ------------------- persistence outputs -------------------
 
-    private void writeEmailSimulation(Referral r) throws IOException {
+    private CompletableFuture<Void> writeEmailSimulation(Referral r) {
         String timestamp = LocalDateTime.now().toString();
 
         String emailBlock =
@@ -145,20 +156,20 @@ public final class ReferralManager {
                         "Referral ID: " + r.getReferralId() + "\n" +
                         "-------------------------------------\n\n";
 
-        appendText(emailOutPath, emailBlock);
+        return appendText(emailOutPath, emailBlock);
     }
 
-    private void writeEhrUpdateSimulation(Referral r) throws IOException {
+    private CompletableFuture<Void> writeEhrUpdateSimulation(Referral r) {
         String line = LocalDateTime.now() +
                 " | EHR_UPDATE | referral_id=" + r.getReferralId() +
                 " | patient_id=" + r.getPatientId() +
                 " | status=" + r.getStatus() +
                 " | referred_to=" + r.getReferredToClinicianId() + "\n";
 
-        appendText(ehrOutPath, line);
+        return appendText(ehrOutPath, line);
     }
 
-    private void audit(String action, Referral r) throws IOException {
+    private CompletableFuture<Void> audit(String action, Referral r) {
         String line = LocalDateTime.now() +
                 " | " + action +
                 " | referral_id=" + r.getReferralId() +
@@ -167,15 +178,10 @@ public final class ReferralManager {
                 " | to=" + r.getReferredToClinicianId() +
                 " | urgency=" + r.getUrgencyLevel() + "\n";
 
-        appendText(auditOutPath, line);
+        return appendText(auditOutPath, line);
     }
 
-    private void appendText(Path file, String text) throws IOException {
-        try (BufferedWriter bw = Files.newBufferedWriter(
-                file,
-                StandardOpenOption.APPEND
-        )) {
-            bw.write(text);
-        }
+    private CompletableFuture<Void> appendText(Path file, String text) {
+        return GroupCommitWriter.forFile(file).append(text);
     }
 }
@@ -1,49 +1,222 @@
 package repository;
 
 import model.Referral;
-import service.IdGenerator;
 
 import java.io.IOException;
 import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * ReferralRepository:
  * - Loads referrals from referrals.csv
  * - Appends new referrals (no DB)
+ * - In PersistenceMode.CHANGE_LOG, creates go to referrals.csv.log instead
+ * - archiveBefore moves finished old referrals into an ArchiveStore (referrals.csv.archive/);
+ *   findById and loadHistory still reach them
+ * - searchText: word queries over reason / clinical summary / requested investigations
+ *   (ReferralTextIndex, updated by createReferral and importReferrals as they append)
  *
  * Singleton requirement is NOT here. This is pure persistence.
  */
 public class ReferralRepository {
 
+    // Column indexes (header order) usable in Where predicates
+    public static final int COL_PATIENT_ID = 1;
+    public static final int COL_REFERRING_CLINICIAN_ID = 2;
+    public static final int COL_REFERRED_TO_CLINICIAN_ID = 3;
+    public static final int COL_DATE = 6;
+    public static final int COL_URGENCY = 7;
+    public static final int COL_STATUS = 11;
+
+    // Columns shown by ReferralTableFrame (id, patient, clinicians, facilities, date, urgency, status, reason)
+    public static final Projection TABLE_COLUMNS = Projection.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 11);
+
+    // searchText reads matches by ID up to this fraction (1/n) of the table, then scans instead
+    private static final int SEARCH_SCAN_SHARE = 50;
+
     private final Path referralsCsvPath;
 
+    // Canonical Strings for low-cardinality columns (shared by every repository on this file)
+    private final SymbolTable symbols;
+
+    // Structure lock for creates/imports, shared per file
+    private final TableLocks locks;
+
+    // Cold rows moved out of the CSV (referrals.csv.archive/)
+    private final ArchiveStore archive;
+
+    // Free-text index over reason / clinical summary / investigations, shared per file
+    private final ReferralTextIndex textIndex;
+
+    // Only used in PersistenceMode.CHANGE_LOG (null in DIRECT mode)
+    private final ChangeLog changeLog;
+
     public ReferralRepository(Path referralsCsvPath) {
+        this(referralsCsvPath, PersistenceMode.DIRECT);
+    }
+
+    public ReferralRepository(Path referralsCsvPath, PersistenceMode mode) {
         this.referralsCsvPath = referralsCsvPath;
+        this.symbols = SymbolTable.forTable(referralsCsvPath);
+        this.locks = TableLocks.forTable(referralsCsvPath);
+        this.archive = ArchiveStore.forTable(referralsCsvPath);
+        this.textIndex = ReferralTextIndex.forTable(referralsCsvPath);
+
+        if (mode == PersistenceMode.CHANGE_LOG) {
+            this.changeLog = ChangeLog.forTable(referralsCsvPath);
+            LogCompactor.register(changeLog);
+        } else {
+            this.changeLog = null;
+        }
     }
 
     public List<Referral> loadAll() throws IOException {
-        List<String[]> rows = CsvUtil.readAll(referralsCsvPath);
+        return loadAll(Projection.ALL);
+    }
+
+    /**
+     * Loads referrals with only the projected columns filled in
+     * (the other getters return ""). Use for read-only views that show a few columns.
+     */
+    public List<Referral> loadAll(Projection projection) throws IOException {
+        return mapRows(projection, this::toReferral);
+    }
 
-        List<Referral> referrals = new ArrayList<>();
+    /**
+     * Rows appended after byte offset 'from' (TableCache tail reload).
+     * Returns null in CHANGE_LOG mode, where the CSV alone is not the current state.
+     */
+    List<Referral> loadFrom(long from, Projection projection) throws IOException {
+        if (changeLog != null) return null;
+        return CsvUtil.mapRowsFrom(referralsCsvPath, from, projection, this::toReferral);
+    }
+
+    /**
+     * Loads only the referrals matching the predicate. The predicate runs on each raw row
+     * while the file is parsed, so rejected rows never become objects.
+     */
+    public List<Referral> loadWhere(Where where) throws IOException {
+        return loadWhere(where, Projection.ALL);
+    }
+
+    /** Same as loadWhere(Where) with a projection (widened to the predicate's columns). */
+    public List<Referral> loadWhere(Where where, Projection projection) throws IOException {
+        return mapRows(where.widen(projection), where.filter(this::toReferral));
+    }
+
+    /** Referral with this ID, current or archived, or null. */
+    public Referral findById(String referralId) throws IOException {
+        List<Referral> hot = loadWhere(Where.eq(0, referralId));
+        if (!hot.isEmpty()) return hot.get(0);
+        String[] r = archive.find(referralId);
+        return r == null ? null : toReferral(CsvRow.of(r));
+    }
+
+    /** Referrals whose reason, clinical summary or requested investigations match the query. */
+    public List<Referral> searchText(String query) throws IOException {
+        return searchText(query, Where.ANY);
+    }
+
+    /**
+     * Text search plus a row predicate, e.g. pending referrals mentioning murmur or MRI:
+     *   searchText("murmur OR mri", Where.eqIgnoreCase(COL_STATUS, "Pending"))
+     * Adjacent words must all occur (AND), OR separates alternatives; matching is on whole
+     * lower-cased words. Current referrals only (not the archive), in file order.
+     * A few matches are read by ID (RowOffsetIndex); many, or any in CHANGE_LOG mode, in one pass
+     * over the rows that only maps the matching IDs.
+     */
+    public List<Referral> searchText(String query, Where where) throws IOException {
+        List<String> ids = textIndex.search(query, changeLog);
+        List<Referral> out = new ArrayList<>(ids.size());
+        if (ids.isEmpty()) return out;
+
+        RowMapper<Referral> mapper = where.filter(this::toReferral);
+        if (changeLog != null || ids.size() > textIndex.size(changeLog) / SEARCH_SCAN_SHARE) {
+            Set<String> wanted = new HashSet<>(ids);
+            return mapRows(where.widen(Projection.ALL), r -> wanted.contains(r.get(0)) ? mapper.map(r) : null);
+        }
+        RowOffsetIndex rows = RowOffsetIndex.forTable(referralsCsvPath);
+        for (String id : ids) {
+            String[] r = rows.read(id);
+            Referral ref = r == null ? null : mapper.map(CsvRow.of(r));
+            if (ref != null) out.add(ref);
+        }
+        return out;
+    }
+
+    /** Like loadWhere, but also searches the archive (decompresses every segment). */
+    public List<Referral> loadHistory(Where where, Projection projection) throws IOException {
+        List<Referral> out = new ArrayList<>(loadWhere(where, projection));
+        out.addAll(archive.mapRows(where.widen(projection), where.filter(this::toReferral)));
+        return out;
+    }
 
-        for (int i = 1; i < rows.size(); i++) {
-            String[] r = rows.get(i);
-            if (r.length < 16) continue;
+    /**
+     * Moves referrals that are finished (Completed/Cancelled) with referral_date before 'cutoff'
+     * into the archive, then removes them from the CSV (DIRECT: one rewrite; CHANGE_LOG: one delete append).
+     * Called by the Archiver. Returns the number of rows moved.
+     */
+    public int archiveBefore(LocalDate cutoff) throws IOException {
+        String before = cutoff.toString();
 
-            Referral ref = new Referral(
-                    r[0], r[1], r[2], r[3],
-                    r[4], r[5], r[6], r[7],
-                    r[8], r[9], r[10], r[11],
-                    r[12], r[13], r[14], r[15]
-            );
+        locks.lockStructure();
+        try {
+            List<String[]> cold = new ArrayList<>();
+            RowHandler collect = r -> {
+                if (r.size() < 16) return;
+                String status = r.get(COL_STATUS);
+                boolean finished = status.equalsIgnoreCase("Completed") || status.equalsIgnoreCase("Cancelled");
+                String date = r.get(COL_DATE);
+                if (finished && date.length() == 10 && date.compareTo(before) < 0) cold.add(r.toArray());
+            };
+            if (changeLog != null) changeLog.forEachRow(collect);
+            else CsvUtil.forEachRow(referralsCsvPath, collect);
+            if (cold.isEmpty()) return 0;
 
-            referrals.add(ref);
+            // Archive first (durable), then drop from the CSV: a crash in between only leaves a duplicate
+            archive.append(cold);
+            Set<String> moved = new HashSet<>();
+            for (String[] r : cold) moved.add(r[0]);
+            if (changeLog != null) {
+                changeLog.logDeleteAll(moved);
+            } else {
+                RowOffsetIndex.forTable(referralsCsvPath).rewrite(r -> moved.contains(r[0]) ? RowOffsetIndex.DROP : null);
+            }
+            return moved.size();
+        } finally {
+            locks.unlockStructure();
         }
+    }
+
+    /**
+     * Small files stream through CsvReader; large ones are mapped and parsed in parallel.
+     * In CHANGE_LOG mode the log is merged over the CSV.
+     */
+    private <T> List<T> mapRows(Projection projection, RowMapper<T> mapper) throws IOException {
+        if (changeLog != null) return changeLog.mapRows(projection, mapper);
+        return CsvUtil.mapRows(referralsCsvPath, projection, mapper);
+    }
+
+    /**
+     * Maps one CSV row -> Referral. Returns null for malformed rows (skipped).
+     * Stateless, so MappedCsvLoader can call it from several threads.
+     */
+    private Referral toReferral(CsvRow r) {
+        if (r.size() < 16) return null;
 
-        return referrals;
+        // Clinicians/facilities/urgency/status are interned (few distinct values); IDs, dates and
+        // reason, summary, investigations and notes (free text) are not
+        return new Referral(
+                r.get(0), r.get(1), symbols.intern(r, 2), symbols.intern(r, 3),
+                symbols.intern(r, 4), symbols.intern(r, 5), r.get(6), symbols.intern(r, 7),
+                r.get(8), r.get(9), r.get(10), symbols.intern(r, 11),
+                r.get(12), r.get(13), r.get(14), r.get(15)
+        );
     }
 
     /**
@@ -51,38 +224,111 @@ public class ReferralRepository {
      * Returns generated ID.
      */
     public String createReferral(Referral newReferral) throws IOException {
-        List<String[]> rows = CsvUtil.readAll(referralsCsvPath);
+        // O(1): counter file referrals.csv.seq (the CSV is only scanned if it is missing)
+        String nextId = idSequence().next();
+
+        String today = LocalDate.now().toString();
 
-        List<String> ids = new ArrayList<>();
-        for (int i = 1; i < rows.size(); i++) {
-            if (rows.get(i).length > 0) ids.add(rows.get(i)[0]);
+        Referral toSave = withId(nextId, newReferral, today);
+
+        locks.lockStructure();
+        try {
+            String[] row = toCsvRow(toSave);
+            FileStamp before = FileStamp.of(referralsCsvPath);
+            if (changeLog != null) {
+                changeLog.logCreate(row);
+            } else {
+                CsvUtil.appendRow(referralsCsvPath, row);
+            }
+            textIndex.add(Collections.singletonList(row), before);
+        } finally {
+            locks.unlockStructure();
         }
+        return nextId;
+    }
 
-        String nextId = IdGenerator.nextId(ids);
+    /**
+     * Bulk import (e.g. onboarding a surgery's historic referrals).
+     * - Rows missing required fields are rejected in the report; the rest are imported
+     *   with the same defaults as createReferral.
+     * - IDs for every accepted row are reserved in ONE IdSequence step.
+     * - DIRECT: rows are appended in one sequential buffered pass; CHANGE_LOG: one log append.
+     */
+    public ImportReport importReferrals(List<Referral> batch) throws IOException {
+        ImportReport.Builder report = new ImportReport.Builder(batch.size());
+
+        List<Integer> accepted = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            String error = importError(batch.get(i));
+            if (error != null) report.rejected(i, error);
+            else accepted.add(i);
+        }
 
+        List<String> ids = idSequence().next(accepted.size());
         String today = LocalDate.now().toString();
+        List<String[]> rows = new ArrayList<>(accepted.size());
+        for (int k = 0; k < accepted.size(); k++) {
+            rows.add(toCsvRow(withId(ids.get(k), batch.get(accepted.get(k)), today)));
+        }
+
+        locks.lockStructure();
+        try {
+            FileStamp before = FileStamp.of(referralsCsvPath);
+            if (changeLog != null) {
+                changeLog.logCreateAll(rows);
+            } else {
+                CsvUtil.appendRows(referralsCsvPath, rows);
+            }
+            textIndex.add(rows, before);
+        } finally {
+            locks.unlockStructure();
+        }
+
+        for (int k = 0; k < accepted.size(); k++) report.imported(accepted.get(k), ids.get(k));
+        return report.build();
+    }
 
-        Referral toSave = new Referral(
-                nextId,
-                newReferral.getPatientId(),
-                newReferral.getReferringClinicianId(),
-                newReferral.getReferredToClinicianId(),
-                newReferral.getReferringFacilityId(),
-                newReferral.getReferredToFacilityId(),
-                blankIfEmpty(newReferral.getReferralDate(), today),
-                blankIfEmpty(newReferral.getUrgencyLevel(), "Routine"),
-                newReferral.getReferralReason(),
-                newReferral.getClinicalSummary(),
-                newReferral.getRequestedInvestigations(),
-                blankIfEmpty(newReferral.getStatus(), "Pending"),
-                blankIfEmpty(newReferral.getAppointmentId(), ""),
-                blankIfEmpty(newReferral.getNotes(), ""),
+    /** Why a row cannot be imported, or null. */
+    private static String importError(Referral r) {
+        if (r == null) return "missing row";
+        if (isBlank(r.getPatientId())) return "patient_id is blank";
+        if (isBlank(r.getReferringClinicianId())) return "referring_clinician_id is blank";
+        return null;
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isBlank();
+    }
+
+    /** Copy carrying the generated ID, with defaults filled in (Referral is immutable). */
+    private Referral withId(String id, Referral r, String today) {
+        return new Referral(
+                id,
+                r.getPatientId(),
+                r.getReferringClinicianId(),
+                r.getReferredToClinicianId(),
+                r.getReferringFacilityId(),
+                r.getReferredToFacilityId(),
+                blankIfEmpty(r.getReferralDate(), today),
+                blankIfEmpty(r.getUrgencyLevel(), "Routine"),
+                r.getReferralReason(),
+                r.getClinicalSummary(),
+                r.getRequestedInvestigations(),
+                blankIfEmpty(r.getStatus(), "Pending"),
+                blankIfEmpty(r.getAppointmentId(), ""),
+                blankIfEmpty(r.getNotes(), ""),
                 today,
                 today
         );
+    }
 
-        CsvUtil.appendRow(referralsCsvPath, toCsvRow(toSave));
-        return nextId;
+    /** Shared counter for referral_id, seeded from the file (and archive) only if the counter file is missing. */
+    private IdSequence idSequence() {
+        return IdSequence.forTable(referralsCsvPath, "R", 3, () -> {
+            List<String> ids = new ArrayList<>(mapRows(Projection.ID_ONLY, r -> r.get(0)));
+            ids.addAll(archive.ids());
+            return ids;
+        });
     }
 
     private String blankIfEmpty(String value, String fallback) {
@@ -0,0 +1,284 @@
+package repository;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * ReferralTextIndex (inverted index over referral free text, shared per referrals.csv)
+ * - Indexes referral_reason, clinical_summary and requested_investigations of every current
+ *   referral: term -> postings (the referrals containing it, in doc order).
+ * - Postings are gaps between doc numbers written as varints (1 byte for gaps < 128), so a
+ *   term used by 100k referrals costs ~100 KB instead of 400 KB of ints (or a List of Integers).
+ * - Tokens: lower-case runs of letters/digits; hyphens/apostrophes join ("x-ray" indexes "ray" and
+ *   "xray"); one-letter words and a few stop words are skipped.
+ *
+ * Query: "murmur OR mri", "chest pain" (= chest AND pain), "chest pain OR palpitations OR ecg".
+ * Words next to each other are ANDed, OR separates alternatives (AND binds tighter), "AND" may be
+ * written out (both operators in any case: "or"/"and" are stop words, never terms).
+ * Results are referral_ids in file order.
+ *
+ * Kept current through its FileStamp: ReferralRepository reports its own appends (add), so a new
+ * referral is searchable without a rescan; plain appends by others are indexed from the old end of
+ * the file; anything else (change log, rewrite, archiving) rebuilds. Archived referrals are not indexed.
+ */
+final class ReferralTextIndex {
+
+    private static final Map<Path, ReferralTextIndex> INSTANCES = new ConcurrentHashMap<>();
+
+    private static final int COL_ID = 0;
+    private static final int COL_REASON = 8;
+    private static final int COL_SUMMARY = 9;
+    private static final int COL_INVESTIGATIONS = 10;
+    private static final Projection TEXT_COLUMNS = Projection.of(COL_ID, COL_REASON, COL_SUMMARY, COL_INVESTIGATIONS);
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "an", "and", "are", "as", "at", "be", "but", "by", "for", "from", "has", "in", "is", "it",
+            "no", "not", "of", "on", "or", "the", "to", "was", "with");
+
+    private final Path csvPath;
+
+    private final Map<String, Postings> terms = new HashMap<>();
+    private final List<String> docIds = new ArrayList<>();      // doc number -> referral_id
+    private final Map<String, Integer> docOf = new HashMap<>(); // referral_id -> current doc
+    private final BitSet live = new BitSet();                   // docs not replaced since
+
+    private FileStamp stamp;
+    private long tailHash;
+
+    private ReferralTextIndex(Path csvPath) {
+        this.csvPath = csvPath;
+    }
+
+    /** Shared index of a referrals CSV (built on the first search). */
+    static ReferralTextIndex forTable(Path csvPath) {
+        Path key = csvPath.toAbsolutePath().normalize();
+        return INSTANCES.computeIfAbsent(key, ReferralTextIndex::new);
+    }
+
+    // ------------------- search -------------------
+
+    /** referral_ids matching the query, in file order (empty for a blank query). */
+    synchronized List<String> search(String query, ChangeLog changeLog) throws IOException {
+        refresh(changeLog);
+
+        BitSet hits = new BitSet();
+        for (List<String> group : parse(query)) {
+            int[] docs = matchAll(group);
+            for (int d : docs) hits.set(d);
+        }
+        hits.and(live);
+
+        List<String> ids = new ArrayList<>(hits.cardinality());
+        for (int d = hits.nextSetBit(0); d >= 0; d = hits.nextSetBit(d + 1)) ids.add(docIds.get(d));
+        return ids;
+    }
+
+    /** Number of indexed (current) referrals. */
+    synchronized int size(ChangeLog changeLog) throws IOException {
+        refresh(changeLog);
+        return live.cardinality();
+    }
+
+    /** Docs containing every term: the rarest list decoded, the others merged into it. */
+    private int[] matchAll(List<String> group) {
+        List<Postings> lists = new ArrayList<>(group.size());
+        for (String t : group) {
+            Postings p = terms.get(t);
+            if (p == null) return new int[0];
+            lists.add(p);
+        }
+        lists.sort((a, b) -> Integer.compare(a.count, b.count));
+
+        int[] docs = lists.get(0).decode();
+        int n = docs.length;
+        for (int i = 1; i < lists.size() && n > 0; i++) n = lists.get(i).retain(docs, n);
+        return Arrays.copyOf(docs, n);
+    }
+
+    /** "a b OR c AND d" -> [[a, b], [c, d]]; groups left empty by stop words are dropped. */
+    static List<List<String>> parse(String query) {
+        List<List<String>> groups = new ArrayList<>();
+        if (query == null) return groups;
+        List<String> group = new ArrayList<>();
+        for (String word : query.trim().split("\\s+")) {
+            if (word.equalsIgnoreCase("OR") || word.equals("|")) {
+                if (!group.isEmpty()) groups.add(group);
+                group = new ArrayList<>();
+            } else if (!word.equalsIgnoreCase("AND") && !word.equals("&")) {
+                tokenize(word, group::add);
+            }
+        }
+        if (!group.isEmpty()) groups.add(group);
+        return groups;
+    }
+
+    // ------------------- updates -------------------
+
+    /**
+     * Indexes rows this process just appended (DIRECT: to the CSV; CHANGE_LOG: to the log).
+     * 'before' is the table's stamp taken under the structure lock before the write; if the index
+     * was not current then, it is left stale and catches up on the next search.
+     */
+    synchronized void add(List<String[]> rows, FileStamp before) throws IOException {
+        if (stamp == null || !stamp.equals(before)) return;
+        for (String[] r : rows) index(CsvRow.of(r));
+        stamp = FileStamp.of(csvPath);
+        tailHash = TableCache.hashBefore(csvPath, stamp.size);
+    }
+
+    private void refresh(ChangeLog changeLog) throws IOException {
+        FileStamp now = FileStamp.of(csvPath);
+        if (now.equals(stamp)) return;
+
+        if (stamp != null && changeLog == null && now.size > stamp.size && now.sameLogsAndRewrites(stamp)
+                && TableCache.hashBefore(csvPath, stamp.size) == tailHash) {
+            CsvUtil.mapRowsFrom(csvPath, stamp.size, TEXT_COLUMNS, r -> {
+                index(r);
+                return null;
+            });
+        } else {
+            terms.clear();
+            docIds.clear();
+            docOf.clear();
+            live.clear();
+            if (changeLog != null) changeLog.forEachRow(this::index); // current state (creates/updates/deletes merged)
+            else CsvUtil.forEachRow(csvPath, TEXT_COLUMNS, this::index);
+        }
+        stamp = now;
+        tailHash = TableCache.hashBefore(csvPath, now.size);
+    }
+
+    /** Adds one row as the newest doc; a referral seen before keeps only its new text. */
+    private void index(CsvRow r) {
+        if (r.size() <= COL_INVESTIGATIONS) return;
+        String id = r.get(COL_ID).trim();
+        if (id.isEmpty()) return;
+
+        int doc = docIds.size();
+        docIds.add(id);
+        Integer previous = docOf.put(id, doc);
+        if (previous != null) live.clear(previous);
+        live.set(doc);
+
+        Set<String> seen = new HashSet<>();
+        Consumer<String> add = t -> {
+            if (seen.add(t)) terms.computeIfAbsent(t, k -> new Postings()).add(doc);
+        };
+        tokenize(r.get(COL_REASON), add);
+        tokenize(r.get(COL_SUMMARY), add);
+        tokenize(r.get(COL_INVESTIGATIONS), add);
+    }
+
+    // ------------------- tokens -------------------
+
+    /** Lower-case words of the text; "x-ray" -> "ray", "xray"; "35-year-old" -> "35", "year", "old", "35yearold". */
+    static void tokenize(String text, Consumer<String> out) {
+        StringBuilder part = new StringBuilder();
+        StringBuilder joined = new StringBuilder();
+        int parts = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                char lower = Character.toLowerCase(c);
+                part.append(lower);
+                joined.append(lower);
+            } else if ((c == '-' || c == '\'') && part.length() > 0) {
+                emit(part, out);
+                parts++;
+            } else {
+                if (part.length() > 0) {
+                    emit(part, out);
+                    parts++;
+                }
+                if (parts > 1) emit(joined, out);
+                joined.setLength(0);
+                parts = 0;
+            }
+        }
+    }
+
+    private static void emit(StringBuilder word, Consumer<String> out) {
+        if (word.length() > 1) {
+            String w = word.toString();
+            if (!STOP_WORDS.contains(w)) out.accept(w);
+        }
+        word.setLength(0);
+    }
+
+    // ------------------- postings -------------------
+
+    /** Ascending doc numbers as varint gaps (the first gap is doc + 1). */
+    private static final class Postings {
+        byte[] bytes = new byte[4];
+        int length;
+        int count;
+        int last = -1;
+
+        void add(int doc) {
+            if (length + 5 > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+            int gap = doc - last;
+            while ((gap & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((gap & 0x7F) | 0x80);
+                gap >>>= 7;
+            }
+            bytes[length++] = (byte) gap;
+            last = doc;
+            count++;
+        }
+
+        int[] decode() {
+            int[] docs = new int[count];
+            int pos = 0;
+            int doc = -1;
+            for (int i = 0; i < count; i++) {
+                int gap = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[pos++];
+                    gap |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                doc += gap;
+                docs[i] = doc;
+            }
+            return docs;
+        }
+
+        /** Keeps the docs[0..n) that are also in this list (both ascending); returns the new n. */
+        int retain(int[] docs, int n) {
+            int kept = 0;
+            int pos = 0;
+            int doc = -1;
+            int remaining = count;
+            for (int i = 0; i < n; i++) {
+                int want = docs[i];
+                while (doc < want && remaining > 0) {
+                    int gap = 0;
+                    int shift = 0;
+                    byte b;
+                    do {
+                        b = bytes[pos++];
+                        gap |= (b & 0x7F) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    doc += gap;
+                    remaining--;
+                }
+                if (doc == want) docs[kept++] = want;
+                else if (doc < want) break; // list exhausted
+            }
+            return kept;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package repository;
+
+/**
+ * RowHandler:
+ * - Callback used by CsvUtil.forEachRow() to receive rows one at a time.
+ * - The CsvRow is reused by the parser, so copy any values you want to keep.
+ */
+@FunctionalInterface
+public interface RowHandler {
+
+    void onRow(CsvRow row);
+}
@@ -0,0 +1,15 @@
+package repository;
+
+/**
+ * RowMapper:
+ * - Turns one parsed CSV row into a model object.
+ * - Return null to skip the row (e.g. malformed / too few columns).
+ *
+ * Mappers may be called from several threads at once by MappedCsvLoader,
+ * so they must not keep state between calls.
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+    T map(CsvRow row);
+}
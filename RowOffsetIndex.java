@@ -0,0 +1,691 @@
+package repository;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * RowOffsetIndex (sidecar "<file>.csv.idx")
+ * - Maps the first column (record ID) of a CSV to the byte offset + length of its row.
+ * - Lets a repository patch ONE row through a FileChannel instead of rewriting the file.
+ *
+ * Update rules:
+ * - New row fits in the old slot  -> written in place, remaining bytes padded with spaces
+ *                                    (readers trim the last cell, so padding is invisible).
+ * - New row is longer             -> old slot blanked with spaces (a one-cell row, skipped by loaders)
+ *                                    and the row appended at the end of the file (the overflow area).
+ * - compactIfNeeded()             -> once blanked bytes pass a threshold, the CSV is rewritten
+ *                                    without them and the index rebuilt.
+ * - compareAndUpdate()            -> read-check-write of one row under an OS lock on its byte range.
+ *
+ * Every writer takes OS locks, so writes from other processes cannot slip into a compareAndUpdate:
+ * update/delete lock the row's byte range (like compareAndUpdate), rewrite locks the whole file.
+ *
+ * The CSV stays a valid CSV at all times; the .idx file is only a cache.
+ * It is checked against the CSV size/mtime/tail hash and rebuilt (or extended for plain appends) when stale.
+ */
+public final class RowOffsetIndex {
+
+    private static final int MAGIC = 0x52494458; // "RIDX"
+    private static final int HEADER_BYTES = 4 + 8 + 8 + 8 + 8;
+    private static final int TAIL_HASH_BYTES = 64;
+
+    /** Compact once blanked slots exceed this share of the file (and MIN_COMPACT_BYTES). */
+    private static final double COMPACT_RATIO = 0.25;
+    private static final long MIN_COMPACT_BYTES = 1024 * 1024;
+
+    /** Returned by a rewrite() change to remove the row (e.g. moved to the archive). */
+    public static final String[] DROP = new String[0];
+
+    private final Path csvPath;
+    private final Path indexPath;
+
+    private final Map<String, Slot> slots = new HashMap<>();
+
+    // State of the CSV the in-memory index describes
+    private long csvSize;
+    private long csvMtime;
+    private long tailHash;
+    private long deadBytes;
+    private boolean loaded;
+
+    // Row reads/writes running outside the monitor, and whether any of them wrote
+    private int inFlight;
+    private boolean dirty;
+    private FileChannel channel;
+    private Object channelKey;
+
+    /** Position + capacity of one row inside the CSV (line break excluded). */
+    private static final class Slot {
+        final long offset;
+        final int length;
+
+        Slot(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static final Map<Path, RowOffsetIndex> INSTANCES = new ConcurrentHashMap<>();
+
+    private RowOffsetIndex(Path csvPath) {
+        this.csvPath = csvPath;
+        this.indexPath = csvPath.resolveSibling(csvPath.getFileName() + ".idx");
+    }
+
+    /**
+     * Shared index for a CSV. One instance per file, so every repository in the process
+     * shares the same slots and channel (and never takes overlapping OS locks on the file).
+     */
+    public static RowOffsetIndex forTable(Path csvPath) {
+        return INSTANCES.computeIfAbsent(csvPath.toAbsolutePath().normalize(), RowOffsetIndex::new);
+    }
+
+    // ------------------- public API -------------------
+
+    /** True if a row with this ID exists in the CSV. */
+    public synchronized boolean contains(String id) throws IOException {
+        refresh();
+        return slots.containsKey(id);
+    }
+
+    /** Every ID currently in the CSV. */
+    public synchronized List<String> ids() throws IOException {
+        refresh();
+        return new ArrayList<>(slots.keySet());
+    }
+
+    /**
+     * Removes a row by blanking its slot (same as the old slot of a moved row).
+     * Returns false if the ID is unknown. Compaction later drops the blank bytes.
+     */
+    public synchronized boolean delete(String id) throws IOException {
+        Slot slot;
+        while (true) {
+            refresh();
+            slot = slots.get(id);
+            if (slot == null) return false;
+
+            FileChannel ch = channel();
+            FileLock lock = lockRow(ch, slot);
+            try {
+                if (!stillAt(id, slot, channelKey)) continue;
+                slots.remove(id);
+                writeFully(ch, slot.offset, padded(new byte[0], slot.length));
+                ch.force(false);
+            } finally {
+                if (lock.isValid()) lock.release();
+            }
+            break;
+        }
+        deadBytes += slot.length;
+
+        afterWrite(null, null);
+        writeSidecar(); // the sidecar still lists the removed slot
+        FileStamp.markRewritten(csvPath);
+
+        compactIfNeeded();
+        return true;
+    }
+
+    /**
+     * Reads the current row for an ID (padding trimmed), or null if the ID is unknown.
+     */
+    public String[] read(String id) throws IOException {
+        Slot slot;
+        FileChannel ch;
+        synchronized (this) {
+            refresh();
+            slot = slots.get(id);
+            if (slot == null) return null;
+            ch = begin();
+        }
+        try {
+            return readRow(ch, slot);
+        } finally {
+            end(false);
+        }
+    }
+
+    /**
+     * Replaces the row whose first cell equals id.
+     * Returns false if the ID is not in the file.
+     *
+     * In-place writes run outside the monitor, so updates of DIFFERENT rows proceed in parallel;
+     * callers serialize updates of the same row (TableLocks record lock). The row's byte range is
+     * OS-locked while it is written, so another process's compareAndUpdate never interleaves.
+     */
+    public boolean update(String id, String[] newRow) throws IOException {
+        byte[] line = CsvUtil.toCsvLine(newRow).getBytes(StandardCharsets.UTF_8);
+
+        while (true) {
+            Slot slot;
+            FileChannel ch;
+            Object key;
+            synchronized (this) {
+                refresh();
+                slot = slots.get(id);
+                if (slot == null) return false;
+                if (line.length > slot.length) {
+                    FileLock lock = lockRow(channel(), slot);
+                    try {
+                        if (!stillAt(id, slot, channelKey)) continue;
+                        relocate(id, slot, line);
+                    } finally {
+                        if (lock.isValid()) lock.release();
+                    }
+                    FileStamp.markRewritten(csvPath);
+                    compactIfNeeded();
+                    return true;
+                }
+                ch = begin();
+                key = channelKey;
+            }
+
+            boolean wrote = false;
+            try {
+                FileLock lock = lockRow(ch, slot);
+                try {
+                    if (!stillAt(id, slot, key)) continue;
+                    writeFully(ch, slot.offset, padded(line, slot.length));
+                    ch.force(false);
+                    wrote = true;
+                } finally {
+                    if (lock.isValid()) lock.release();
+                }
+            } finally {
+                end(wrote);
+            }
+            FileStamp.markRewritten(csvPath);
+            return true;
+        }
+    }
+
+    /**
+     * Atomic read-compare-write of one row (optimistic concurrency).
+     * The row's byte range is locked with an OS lock while it is read, checked against
+     * 'expected' and, only if the check passes, replaced by newRow. Other rows stay writable
+     * and other processes doing the same on this row wait for the range lock.
+     *
+     * Returns the row as it was when checked (null if the ID is unknown);
+     * the caller re-tests it to tell "updated" from "conflict".
+     */
+    public String[] compareAndUpdate(String id, Predicate<String[]> expected, String[] newRow) throws IOException {
+        byte[] line = CsvUtil.toCsvLine(newRow).getBytes(StandardCharsets.UTF_8);
+
+        while (true) {
+            Slot slot;
+            FileChannel ch;
+            Object key;
+            synchronized (this) {
+                refresh();
+                slot = slots.get(id);
+                if (slot == null) return null;
+                ch = begin();
+                key = channelKey;
+            }
+
+            boolean wrote = false;
+            String[] current;
+            try {
+                FileLock lock = lockRow(ch, slot);
+                try {
+                    if (!stillAt(id, slot, key)) continue;
+
+                    current = readRow(ch, slot);
+                    if (current == null || !expected.test(current)) return current;
+
+                    if (line.length <= slot.length) {
+                        writeFully(ch, slot.offset, padded(line, slot.length));
+                        ch.force(false);
+                    } else {
+                        synchronized (this) {
+                            relocate(id, slot, line);
+                        }
+                    }
+                    wrote = true;
+                } finally {
+                    if (lock.isValid()) lock.release();
+                }
+            } finally {
+                end(wrote);
+            }
+            FileStamp.markRewritten(csvPath);
+
+            synchronized (this) {
+                compactIfNeeded();
+            }
+            return current;
+        }
+    }
+
+    /** Exclusive OS lock on a row's bytes (blocks while another process holds it). */
+    private static FileLock lockRow(FileChannel ch, Slot slot) throws IOException {
+        return ch.lock(slot.offset, slot.length, false);
+    }
+
+    /**
+     * True if the row is still in that slot of the file the channel was opened on. Checked once the
+     * row lock is held: another process may have moved the row, or swapped in a compacted file,
+     * while we waited for it.
+     */
+    private synchronized boolean stillAt(String id, Slot slot, Object key) throws IOException {
+        if (key != null && !key.equals(fileKey())) return false;
+        refresh();
+        Slot now = slots.get(id);
+        return now != null && now.offset == slot.offset && now.length == slot.length;
+    }
+
+    // ------------------- shared channel / in-flight rows -------------------
+
+    /**
+     * Registers an in-flight row read/write and returns the shared channel. Caller holds the monitor.
+     * While rows are in flight, refresh() treats same-size changes as our own and structural
+     * work (compaction, rewrite) waits.
+     */
+    private FileChannel begin() throws IOException {
+        FileChannel ch = channel();
+        inFlight++;
+        return ch;
+    }
+
+    /** Ends an in-flight row operation; the last one out re-stamps the index if anything was written. */
+    private synchronized void end(boolean wrote) throws IOException {
+        if (wrote) dirty = true;
+        if (--inFlight > 0) return;
+        notifyAll();
+        if (dirty) {
+            dirty = false;
+            afterWrite(null, null);
+        }
+    }
+
+    /** Waits until no row operation is in flight. Caller holds the monitor. */
+    private void awaitQuiet() throws IOException {
+        try {
+            while (inFlight > 0) wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for row writes on " + csvPath);
+        }
+    }
+
+    /** Long-lived READ/WRITE channel on the CURRENT file (reopened if the file was replaced). */
+    private FileChannel channel() throws IOException {
+        Object key = fileKey();
+        if (channel != null && channel.isOpen() && key != null && key.equals(channelKey)) return channel;
+        closeChannel();
+        channel = FileChannel.open(csvPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channelKey = key;
+        return channel;
+    }
+
+    private void closeChannel() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // reopened on next use
+        }
+        channel = null;
+    }
+
+    private Object fileKey() throws IOException {
+        return Files.readAttributes(csvPath, BasicFileAttributes.class).fileKey();
+    }
+
+    private static String[] readRow(FileChannel ch, Slot slot) throws IOException {
+        String line = StandardCharsets.UTF_8.decode(readFully(ch, slot.offset, slot.length)).toString();
+        try (CsvReader reader = new CsvReader(new StringReader(line))) {
+            CsvRow row = reader.next();
+            if (row == null) return null;
+            String[] cells = row.toArray();
+            cells[cells.length - 1] = stripTrailing(cells[cells.length - 1]);
+            return cells;
+        }
+    }
+
+    /** Overflow: blanks the old slot and appends the row at the end of the file. Caller holds the monitor. */
+    private void relocate(String id, Slot slot, byte[] line) throws IOException {
+        FileChannel ch = channel();
+        writeFully(ch, slot.offset, padded(new byte[0], slot.length));
+
+        long end = ch.size();
+        byte[] appended = new byte[line.length + 1];
+        appended[0] = '\n';
+        System.arraycopy(line, 0, appended, 1, line.length);
+        writeFully(ch, end, appended);
+        ch.force(false);
+
+        deadBytes += slot.length;
+        Slot moved = new Slot(end + 1, line.length);
+        slots.put(id, moved);
+        afterWrite(id, moved);
+    }
+
+    /**
+     * Rewrites the CSV without blanked slots once they are a large share of the file.
+     * Uses a temp file + atomic rename, then rebuilds the index.
+     */
+    public synchronized void compactIfNeeded() throws IOException {
+        if (deadBytes < MIN_COMPACT_BYTES || deadBytes < csvSize * COMPACT_RATIO) return;
+        if (inFlight > 0) return; // next write tries again
+        compact();
+    }
+
+    public synchronized void compact() throws IOException {
+        rewrite(row -> null);
+    }
+
+    /**
+     * Rewrites the CSV in ONE sequential pass (batch updates): every data row is offered to
+     * 'change', which returns the replacement row, null to keep it or DROP to remove it. Blanked slots are dropped,
+     * the temp file is swapped in with an atomic rename and the index is rebuilt.
+     * Returns the number of rows changed.
+     * The whole file is OS-locked until the new one is in place, so no other process patches a row
+     * that the rewrite would then copy over with its old content.
+     */
+    public synchronized int rewrite(UnaryOperator<String[]> change) throws IOException {
+        awaitQuiet();
+        while (true) {
+            FileLock fileLock = channel().lock();
+            if (channelKey == null || channelKey.equals(fileKey())) break;
+            fileLock.release(); // replaced by another process's rewrite while we waited
+            closeChannel();
+        }
+
+        Path tmp = csvPath.resolveSibling(csvPath.getFileName() + ".compact.tmp");
+        int changed = 0;
+
+        try {
+            try (CsvReader reader = new CsvReader(new InputStreamReader(Files.newInputStream(csvPath), StandardCharsets.UTF_8));
+                 BufferedWriter bw = Files.newBufferedWriter(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+                boolean first = true;
+                CsvRow row;
+                while ((row = reader.next()) != null) {
+                    if (row.get(0).isBlank()) continue; // blanked slot
+
+                    String[] cells = row.toArray();
+                    cells[cells.length - 1] = stripTrailing(cells[cells.length - 1]);
+
+                    if (!first) {
+                        String[] replaced = change.apply(cells);
+                        if (replaced != null) {
+                            changed++;
+                            if (replaced == DROP) continue;
+                            cells = replaced;
+                        }
+                        bw.newLine();
+                    }
+                    bw.write(CsvUtil.toCsvLine(cells));
+                    first = false;
+                }
+            }
+            Files.move(tmp, csvPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            closeChannel(); // releases the file lock; waiting processes then find the new file
+        }
+        FileStamp.markRewritten(csvPath);
+        rebuild();
+        return changed;
+    }
+
+    // ------------------- freshness -------------------
+
+    /**
+     * Makes sure the in-memory index matches the CSV on disk:
+     * - first use: load the .idx sidecar if it still matches, else rebuild
+     * - CSV only grew (e.g. CsvUtil.appendRow): index just the new tail
+     * - anything else changed: full rebuild
+     */
+    private void refresh() throws IOException {
+        long size = Files.size(csvPath);
+        long mtime = Files.getLastModifiedTime(csvPath).toMillis();
+
+        if (!loaded) {
+            loaded = true;
+            loadSidecar();
+        }
+
+        if (size == csvSize && inFlight > 0) return; // our own in-place writes (slots unchanged)
+        // Same size/mtime is not enough: a rewrite within the mtime resolution keeps both
+        if (size == csvSize && mtime == csvMtime && tailHash == hashBefore(size)) return;
+
+        if (csvSize > 0 && size > csvSize && tailHash == hashBefore(csvSize)) {
+            // Appended rows only: index the tail and append those entries to the sidecar
+            List<String> added = scan(csvSize, false);
+            if (Files.exists(indexPath)) {
+                for (String id : added) appendSidecarEntry(id, slots.get(id));
+                writeSidecarHeader();
+            } else {
+                writeSidecar();
+            }
+            return;
+        }
+
+        rebuild();
+    }
+
+    private void rebuild() throws IOException {
+        slots.clear();
+        deadBytes = 0;
+        scan(0, true);
+        writeSidecar();
+    }
+
+    /**
+     * Scans rows from 'from' to EOF (quote-aware) and records each row's slot.
+     * Row boundaries are unquoted '\n'; a trailing '\r' is not part of the slot.
+     * Returns the IDs that were (re)indexed.
+     */
+    private List<String> scan(long from, boolean skipHeader) throws IOException {
+        List<String> added = new ArrayList<>();
+        try (FileChannel ch = FileChannel.open(csvPath, StandardOpenOption.READ)) {
+            long size = ch.size();
+            ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+
+            long pos = from;
+            long rowStart = from;
+            boolean inQuotes = false;
+            boolean header = skipHeader;
+            byte prev = 0;
+            StringBuilder id = new StringBuilder();
+            boolean idDone = false;
+
+            while (pos < size) {
+                buf.clear();
+                int n = ch.read(buf, pos);
+                if (n <= 0) break;
+
+                for (int i = 0; i < n; i++) {
+                    byte b = buf.get(i);
+
+                    if (b == '"') {
+                        inQuotes = !inQuotes;
+                    } else if (b == '\n' && !inQuotes) {
+                        long end = (prev == '\r') ? pos + i - 1 : pos + i;
+                        if (!header) addSlot(added, id, rowStart, end);
+                        header = false;
+                        rowStart = pos + i + 1;
+                        id.setLength(0);
+                        idDone = false;
+                        prev = b;
+                        continue;
+                    }
+
+                    if (!idDone) {
+                        if (b == ',' && !inQuotes) idDone = true;
+                        else if (b != '"' && b != '\r') id.append((char) b);
+                    }
+                    prev = b;
+                }
+                pos += n;
+            }
+            if (rowStart < size && !header) {
+                addSlot(added, id, rowStart, (prev == '\r') ? size - 1 : size);
+            }
+
+            csvSize = size;
+        }
+        csvMtime = Files.getLastModifiedTime(csvPath).toMillis();
+        tailHash = hashBefore(csvSize);
+        return added;
+    }
+
+    private void addSlot(List<String> added, StringBuilder id, long start, long end) {
+        int length = (int) (end - start);
+        if (length <= 0) return;
+
+        String key = id.toString().trim();
+        if (key.isEmpty()) {
+            deadBytes += length;   // blanked slot left by an overflow move
+        } else {
+            slots.put(key, new Slot(start, length));
+            added.add(key);
+        }
+    }
+
+    private void afterWrite(String movedId, Slot moved) throws IOException {
+        csvSize = Files.size(csvPath);
+        csvMtime = Files.getLastModifiedTime(csvPath).toMillis();
+        tailHash = hashBefore(csvSize);
+
+        if (movedId != null && Files.exists(indexPath)) {
+            appendSidecarEntry(movedId, moved);
+        }
+        if (Files.exists(indexPath)) {
+            writeSidecarHeader();
+        } else {
+            writeSidecar();
+        }
+    }
+
+    // ------------------- sidecar file -------------------
+
+    private void loadSidecar() throws IOException {
+        if (!Files.exists(indexPath)) return;
+
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(indexPath));
+        if (buf.remaining() < HEADER_BYTES || buf.getInt() != MAGIC) return;
+
+        csvSize = buf.getLong();
+        csvMtime = buf.getLong();
+        tailHash = buf.getLong();
+        deadBytes = buf.getLong();
+
+        // Later entries override earlier ones (moved rows are appended)
+        while (buf.remaining() >= 2) {
+            byte[] idBytes = new byte[buf.getShort()];
+            buf.get(idBytes);
+            long offset = buf.getLong();
+            int length = buf.getInt();
+            slots.put(new String(idBytes, StandardCharsets.UTF_8), new Slot(offset, length));
+        }
+    }
+
+    private void writeSidecar() throws IOException {
+        Path tmp = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ch.write(header());
+            ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+            for (Map.Entry<String, Slot> e : slots.entrySet()) {
+                ByteBuffer entry = entry(e.getKey(), e.getValue());
+                if (buf.remaining() < entry.remaining()) {
+                    buf.flip();
+                    ch.write(buf);
+                    buf.clear();
+                }
+                buf.put(entry);
+            }
+            buf.flip();
+            ch.write(buf);
+        }
+        Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void writeSidecarHeader() throws IOException {
+        try (FileChannel ch = FileChannel.open(indexPath, StandardOpenOption.WRITE)) {
+            writeFully(ch, 0, header().array());
+        }
+    }
+
+    private void appendSidecarEntry(String id, Slot slot) throws IOException {
+        try (FileChannel ch = FileChannel.open(indexPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ch.write(entry(id, slot));
+        }
+    }
+
+    private ByteBuffer header() {
+        ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES);
+        h.putInt(MAGIC).putLong(csvSize).putLong(csvMtime).putLong(tailHash).putLong(deadBytes);
+        h.flip();
+        return h;
+    }
+
+    private static ByteBuffer entry(String id, Slot slot) {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer e = ByteBuffer.allocate(2 + idBytes.length + 8 + 4);
+        e.putShort((short) idBytes.length).put(idBytes).putLong(slot.offset).putInt(slot.length);
+        e.flip();
+        return e;
+    }
+
+    // ------------------- byte helpers -------------------
+
+    /** Hash of the last bytes before 'end', used to detect "file only grew by appends". */
+    private long hashBefore(long end) throws IOException {
+        long start = Math.max(0, end - TAIL_HASH_BYTES);
+        try (FileChannel ch = FileChannel.open(csvPath, StandardOpenOption.READ)) {
+            ByteBuffer b = readFully(ch, start, (int) (end - start));
+            long h = 1125899906842597L;
+            while (b.hasRemaining()) h = 31 * h + b.get();
+            return h;
+        }
+    }
+
+    private static byte[] padded(byte[] line, int length) {
+        byte[] out = new byte[length];
+        System.arraycopy(line, 0, out, 0, line.length);
+        for (int i = line.length; i < length; i++) out[i] = ' ';
+        return out;
+    }
+
+    private static ByteBuffer readFully(FileChannel ch, long pos, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, pos + buf.position()) < 0) break;
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static void writeFully(FileChannel ch, long pos, byte[] bytes) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        while (buf.hasRemaining()) {
+            ch.write(buf, pos + buf.position());
+        }
+    }
+
+    private static String stripTrailing(String s) {
+        int end = s.length();
+        while (end > 0 && s.charAt(end - 1) == ' ') end--;
+        return s.substring(0, end);
+    }
+}
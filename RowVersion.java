@@ -0,0 +1,37 @@
+package repository;
+
+/**
+ * RowVersion:
+ * - Version of a CSV row for optimistic concurrency, computed from the row itself
+ *   (no version column needed): a 64-bit FNV-1a hash over every cell, last_modified included.
+ * - Any edit to the row changes its version; an edit that restores the exact old content does not
+ *   (the row is then indistinguishable, so there is nothing to conflict with).
+ *
+ * Trailing padding of the last cell (RowOffsetIndex in-place writes) is ignored.
+ */
+public final class RowVersion {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private RowVersion() {
+    }
+
+    public static long of(String[] row) {
+        long h = FNV_OFFSET;
+        for (int i = 0; i < row.length; i++) {
+            String cell = row[i] == null ? "" : row[i];
+            int len = cell.length();
+            if (i == row.length - 1) {
+                while (len > 0 && cell.charAt(len - 1) == ' ') len--;
+            }
+            for (int j = 0; j < len; j++) {
+                char c = cell.charAt(j);
+                h = (h ^ (c & 0xff)) * FNV_PRIME;
+                h = (h ^ (c >>> 8)) * FNV_PRIME;
+            }
+            h = (h ^ 0x1f) * FNV_PRIME; // cell separator, so "ab","c" != "a","bc"
+        }
+        return h;
+    }
+}
@@ -0,0 +1,214 @@
+package repository;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SymbolTable (one per CSV table, shared by every repository object for that file)
+ * - Interns low-cardinality cells (status, type, clinician/facility IDs, pharmacy names...) so
+ *   a million rows share a handful of String instances instead of a million copies.
+ *   Not meant for IDs or dates: those fill a column to MAX_DISTINCT without saving anything.
+ * - Lookups hash the cell straight from the CsvRow buffer, so a repeated value never
+ *   allocates a String; only the first occurrence does.
+ * - Every value also gets a small int code (code() / symbol()) for callers that want to
+ *   store codes instead of references.
+ *
+ * Columns stop taking new values after MAX_DISTINCT (they are not low-cardinality after all);
+ * known values are still returned canonical, new ones are returned as plain Strings.
+ *
+ * Safe for the parallel loaders: reads are lock-free (including misses on a full column),
+ * inserts synchronize per column.
+ */
+public final class SymbolTable {
+
+    private static final Map<Path, SymbolTable> INSTANCES = new ConcurrentHashMap<>();
+
+    /** Per-column cap on distinct values. */
+    static final int MAX_DISTINCT = 1 << 16;
+
+    private final Path csvPath;
+    private final Map<Integer, Column> columns = new ConcurrentHashMap<>();
+
+    private SymbolTable(Path csvPath) {
+        this.csvPath = csvPath;
+    }
+
+    /** Shared SymbolTable for a CSV file. */
+    public static SymbolTable forTable(Path csvPath) {
+        return INSTANCES.computeIfAbsent(csvPath.toAbsolutePath().normalize(), SymbolTable::new);
+    }
+
+    // ------------------- lookups -------------------
+
+    /** Canonical String for cell i of the row (allocates only the first time a value is seen). */
+    public String intern(CsvRow row, int i) {
+        Entry e = column(i).lookup(row, i);
+        return e != null ? e.value : row.get(i);
+    }
+
+    /** Small int code for cell i (stable for the life of the process), or -1 if the column is full. */
+    public int code(CsvRow row, int i) {
+        Entry e = column(i).lookup(row, i);
+        return e != null ? e.code : -1;
+    }
+
+    /** Value for a code returned by code(). */
+    public String symbol(int column, int code) {
+        return column(column).values[code];
+    }
+
+    /** Number of distinct values seen in a column so far. */
+    public int cardinality(int column) {
+        Column c = columns.get(column);
+        return c == null ? 0 : c.size;
+    }
+
+    // ------------------- reporting -------------------
+
+    /**
+     * One line per interned column: distinct values, lookups, and how many
+     * String copies interning avoided.
+     */
+    public String report() {
+        String[] header = readHeader();
+        StringBuilder sb = new StringBuilder(csvPath.getFileName().toString()).append(System.lineSeparator());
+
+        for (Map.Entry<Integer, Column> e : new TreeMap<>(columns).entrySet()) {
+            int i = e.getKey();
+            Column c = e.getValue();
+            long lookups = c.lookups.sum();
+            String name = i < header.length ? header[i] : "col " + i;
+
+            sb.append(String.format("  %-26s %5d distinct%s  %10d lookups  %10d copies avoided%n",
+                    name, c.size, c.full ? "+" : " ", lookups, Math.max(0, lookups - c.allocated.sum())));
+        }
+        return sb.toString();
+    }
+
+    /** report() for every table interned so far. */
+    public static String reportAll() {
+        StringBuilder sb = new StringBuilder();
+        for (SymbolTable t : INSTANCES.values()) sb.append(t.report());
+        return sb.toString();
+    }
+
+    private String[] readHeader() {
+        try (CsvReader reader = new CsvReader(new InputStreamReader(Files.newInputStream(csvPath), StandardCharsets.UTF_8))) {
+            CsvRow row = reader.next();
+            return row == null ? new String[0] : row.toArray();
+        } catch (IOException e) {
+            return new String[0];
+        }
+    }
+
+    private Column column(int i) {
+        Column c = columns.get(i);
+        return c != null ? c : columns.computeIfAbsent(i, k -> new Column());
+    }
+
+    // ------------------- per-column hash table -------------------
+
+    /** Immutable (final fields), so it can be published through a plain array slot. */
+    private static final class Entry {
+        final String value;
+        final int hash;
+        final int code;
+
+        Entry(String value, int hash, int code) {
+            this.value = value;
+            this.hash = hash;
+            this.code = code;
+        }
+    }
+
+    private static final class Column {
+        volatile Entry[] slots = new Entry[64]; // open addressing, power of two
+        volatile String[] values = new String[16]; // code -> value
+        volatile int size;
+        volatile boolean full;
+
+        final LongAdder lookups = new LongAdder();
+        final LongAdder allocated = new LongAdder(); // Strings created (new values + misses on a full column)
+
+        Entry lookup(CsvRow row, int i) {
+            lookups.increment();
+            int hash = row.cellHash(i);
+
+            Entry e = find(slots, row, i, hash);
+            if (e != null) return e;
+
+            // A full column takes no new values: no need to queue on the monitor for that
+            if (full) {
+                allocated.increment();
+                return null;
+            }
+
+            synchronized (this) {
+                e = find(slots, row, i, hash);
+                if (e != null) return e;
+
+                allocated.increment();
+                if (size >= MAX_DISTINCT) {
+                    full = true;
+                    return null;
+                }
+                return insert(row.get(i), hash);
+            }
+        }
+
+        private static Entry find(Entry[] table, CsvRow row, int i, int hash) {
+            int mask = table.length - 1;
+            for (int s = spread(hash) & mask; ; s = (s + 1) & mask) {
+                Entry e = table[s];
+                if (e == null) return null;
+                if (e.hash == hash && row.cellEquals(i, e.value)) return e;
+            }
+        }
+
+        /** Caller holds the monitor. */
+        private Entry insert(String value, int hash) {
+            Entry e = new Entry(value, hash, size);
+
+            String[] v = values;
+            if (size == v.length) {
+                v = Arrays.copyOf(v, size * 2);
+            }
+            v[size] = value;
+            values = v;
+
+            Entry[] table = slots;
+            if ((size + 1) * 2 > table.length) {
+                Entry[] bigger = new Entry[table.length * 2];
+                for (Entry old : table) {
+                    if (old != null) put(bigger, old);
+                }
+                put(bigger, e);
+                slots = bigger;
+            } else {
+                put(table, e);
+            }
+
+            size++;
+            return e;
+        }
+
+        private static void put(Entry[] table, Entry e) {
+            int mask = table.length - 1;
+            int s = spread(e.hash) & mask;
+            while (table[s] != null) s = (s + 1) & mask;
+            table[s] = e;
+        }
+
+        private static int spread(int h) {
+            return h ^ (h >>> 16);
+        }
+    }
+}
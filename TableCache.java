@@ -0,0 +1,129 @@
+package repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * TableCache (parsed rows of one CSV, kept in memory between refreshes)
+ * - get() returns the cached list while the table is unchanged: an unchanged file costs two stat calls.
+ * - A table is considered changed when
+ *     * FileWatcher reported an event for the CSV or its change log, or
+ *     * size / mtime of the CSV or its change log differ from the last load, or
+ *     * this process rewrote rows in place (FileStamp.markRewritten, called by the writers).
+ * - If the CSV only grew (appends) and nothing was rewritten, only the new tail is parsed
+ *   and appended to the cached list; otherwise the table is reloaded in full.
+ * - A partitioned table (directory) is stamped and watched through its partition files and is
+ *   always reloaded in full when one of them changed.
+ *
+ * The returned list is unmodifiable and must not be mutated by callers.
+ */
+public final class TableCache<T> {
+
+    /** Full load of the table. */
+    @FunctionalInterface
+    public interface Loader<T> {
+        List<T> load() throws IOException;
+    }
+
+    /** Rows starting at a byte offset of the CSV (offset is at a row boundary), or null if unsupported. */
+    @FunctionalInterface
+    public interface TailLoader<T> {
+        List<T> loadFrom(long offset) throws IOException;
+    }
+
+    private static final int TAIL_HASH_BYTES = 64;
+
+    private final Path csvPath;
+    private final Loader<T> loader;
+    private final TailLoader<T> tailLoader;
+    private final boolean directory;
+
+    private volatile boolean dirty = true;
+
+    private List<T> rows;
+    private FileStamp stamp;
+    private long tailHash; // hash of the last bytes of the CSV at stamp.size
+
+    public TableCache(Path csvPath, Loader<T> loader, TailLoader<T> tailLoader) {
+        this.csvPath = csvPath.toAbsolutePath().normalize();
+        this.loader = loader;
+        this.tailLoader = tailLoader;
+        this.directory = Files.isDirectory(this.csvPath);
+
+        if (directory) {
+            FileWatcher.watchDirectory(this.csvPath, this::invalidate);
+        } else {
+            FileWatcher.watch(this.csvPath, this::invalidate);
+            for (Path log : FileStamp.logPaths(this.csvPath)) FileWatcher.watch(log, this::invalidate);
+        }
+    }
+
+    /** Forces the next get() to check the file again. */
+    public void invalidate() {
+        dirty = true;
+    }
+
+    /** Current rows, reloaded (fully or just the appended tail) only if the table changed. */
+    public synchronized List<T> get() throws IOException {
+        FileStamp now = FileStamp.of(csvPath);
+        if (!dirty && rows != null && now.equals(stamp)) return rows;
+
+        dirty = false;
+        List<T> tail = appendedTail(now);
+        if (tail != null) {
+            List<T> merged = new ArrayList<>(rows.size() + tail.size());
+            merged.addAll(rows);
+            merged.addAll(tail);
+            rows = Collections.unmodifiableList(merged);
+        } else {
+            rows = Collections.unmodifiableList(loader.load());
+        }
+
+        // If the file moved on while we were reading, don't trust the stamp for a tail load next time
+        FileStamp after = FileStamp.of(csvPath);
+        if (!after.equals(now)) {
+            dirty = true;
+            stamp = null;
+        } else {
+            stamp = now;
+            tailHash = directory ? 0 : hashBefore(csvPath, now.size);
+        }
+        return rows;
+    }
+
+    /** Rows appended since the last load, or null if a full reload is needed. */
+    private List<T> appendedTail(FileStamp now) throws IOException {
+        if (directory || tailLoader == null || rows == null || stamp == null) return null;
+        if (!now.sameLogsAndRewrites(stamp)) return null;
+        if (now.size <= stamp.size) return null;
+
+        // The bytes just before the old end must be the same, otherwise it's not a pure append
+        if (hashBefore(csvPath, stamp.size) != tailHash) return null;
+
+        return tailLoader.loadFrom(stamp.size);
+    }
+
+    /** Hash of the last bytes before 'end' (used to tell a pure append from a rewrite). */
+    static long hashBefore(Path file, long end) throws IOException {
+        if (end <= 0) return 0;
+        int len = (int) Math.min(TAIL_HASH_BYTES, end);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(len);
+            while (buf.hasRemaining()) {
+                if (ch.read(buf, end - len + buf.position()) < 0) break;
+            }
+            return Arrays.hashCode(buf.array());
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+    }
+}
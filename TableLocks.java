@@ -0,0 +1,71 @@
+package repository;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * TableLocks (one per CSV file, shared by every repository in the JVM)
+ * - Structure lock (read/write) for changes to the table as a whole:
+ *   creates/appends, bulk imports, batch rewrites. Taken as WRITE (exclusive).
+ * - Striped record locks keyed by record ID for in-place updates of ONE row.
+ *   A record lock also holds the structure lock as READ, so updates to different
+ *   records run in parallel but never overlap a structural change.
+ *
+ * Same ID -> same stripe, so two updates of one record are serialized; different IDs usually
+ * land on different stripes (a shared stripe only costs some parallelism, never correctness).
+ *
+ * Lock order: structure before stripe (lockRecord does this). Never take two record locks.
+ * Stripes: -Dtablelocks.stripes (default 64, rounded up to a power of two).
+ */
+public final class TableLocks {
+
+    private static final Map<Path, TableLocks> INSTANCES = new ConcurrentHashMap<>();
+
+    private final ReentrantReadWriteLock structure = new ReentrantReadWriteLock();
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    private TableLocks(int stripeCount) {
+        int n = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        this.stripes = new ReentrantLock[n];
+        for (int i = 0; i < n; i++) stripes[i] = new ReentrantLock();
+        this.mask = n - 1;
+    }
+
+    /** Shared locks for a CSV file. */
+    public static TableLocks forTable(Path csvPath) {
+        return INSTANCES.computeIfAbsent(csvPath.toAbsolutePath().normalize(),
+                p -> new TableLocks(Integer.getInteger("tablelocks.stripes", 64)));
+    }
+
+    // ------------------- structural changes -------------------
+
+    public void lockStructure() {
+        structure.writeLock().lock();
+    }
+
+    public void unlockStructure() {
+        structure.writeLock().unlock();
+    }
+
+    // ------------------- single-record updates -------------------
+
+    public void lockRecord(String id) {
+        structure.readLock().lock();
+        stripe(id).lock();
+    }
+
+    public void unlockRecord(String id) {
+        stripe(id).unlock();
+        structure.readLock().unlock();
+    }
+
+    private ReentrantLock stripe(String id) {
+        int h = id == null ? 0 : id.hashCode();
+        h ^= (h >>> 16); // IDs differ mostly in the low digits; spread them
+        return stripes[h & mask];
+    }
+}
@@ -0,0 +1,35 @@
+package repository;
+
+/**
+ * VersionConflictException:
+ * - Thrown by a compare-and-set update when the row changed since the caller read it
+ *   (its RowVersion no longer matches). Nothing was written.
+ * - The caller should reload the record and let the user re-apply the edit.
+ */
+public class VersionConflictException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String id;
+    private final long expectedVersion;
+    private final long currentVersion;
+
+    public VersionConflictException(String id, long expectedVersion, long currentVersion) {
+        super("Record " + id + " was changed by someone else since it was loaded");
+        this.id = id;
+        this.expectedVersion = expectedVersion;
+        this.currentVersion = currentVersion;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getExpectedVersion() {
+        return expectedVersion;
+    }
+
+    public long getCurrentVersion() {
+        return currentVersion;
+    }
+}
@@ -0,0 +1,93 @@
+package repository;
+
+import java.util.Arrays;
+
+/**
+ * Where:
+ * - A row predicate on CSV columns (by index), evaluated on the raw CsvRow while parsing.
+ * - Rows that fail are dropped before any model object (or cell String) is created.
+ *
+ * Build with the static factories and combine with and()/or(), e.g.
+ *   Where.eq(COL_CLINICIAN_ID, "C001").and(Where.between(COL_DATE, "2025-09-01", "2025-09-30"))
+ *
+ * Comparisons are plain text; dates/times stored as ISO strings compare chronologically.
+ */
+public final class Where {
+
+    /** Matches every row. */
+    public static final Where ANY = new Where(r -> true, new int[0]);
+
+    private interface Test {
+        boolean test(CsvRow row);
+    }
+
+    private final Test test;
+    private final int[] columns; // columns the predicate reads (so projections can include them)
+
+    private Where(Test test, int[] columns) {
+        this.test = test;
+        this.columns = columns;
+    }
+
+    // ------------------- factories -------------------
+
+    /** column == value (exact). */
+    public static Where eq(int column, String value) {
+        return new Where(r -> r.cellEquals(column, value), new int[]{column});
+    }
+
+    /** column == value, ignoring case (e.g. status). */
+    public static Where eqIgnoreCase(int column, String value) {
+        return new Where(r -> r.cellEqualsIgnoreCase(column, value), new int[]{column});
+    }
+
+    /** column is one of the values (exact). */
+    public static Where in(int column, String... values) {
+        String[] copy = values.clone();
+        return new Where(r -> {
+            for (String v : copy) {
+                if (r.cellEquals(column, v)) return true;
+            }
+            return false;
+        }, new int[]{column});
+    }
+
+    /** from <= column <= to (text order). Either bound may be null for an open range. */
+    public static Where between(int column, String from, String to) {
+        return new Where(r -> (from == null || r.compareCell(column, from) >= 0)
+                && (to == null || r.compareCell(column, to) <= 0), new int[]{column});
+    }
+
+    // ------------------- combinators -------------------
+
+    public Where and(Where other) {
+        return new Where(r -> test.test(r) && other.test.test(r), concat(columns, other.columns));
+    }
+
+    public Where or(Where other) {
+        return new Where(r -> test.test(r) || other.test.test(r), concat(columns, other.columns));
+    }
+
+    public Where negate() {
+        return new Where(r -> !test.test(r), columns);
+    }
+
+    // ------------------- used by repositories -------------------
+
+    /** Wraps a mapper so only matching rows reach it (non-matching rows map to null = skipped). */
+    public <T> RowMapper<T> filter(RowMapper<T> mapper) {
+        if (this == ANY) return mapper;
+        return r -> test.test(r) ? mapper.map(r) : null;
+    }
+
+    /** The projection widened with the columns this predicate needs. */
+    public Projection widen(Projection projection) {
+        return projection.with(columns);
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        int[] out = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, out, a.length, b.length);
+        return out;
+    }
+}